@@ -0,0 +1,573 @@
+package com.kiwi.mobile.retrograph.processor
+
+import javax.annotation.processing.*
+import javax.lang.model.*
+import javax.lang.model.element.*
+import javax.lang.model.type.*
+import javax.lang.model.util.*
+import javax.tools.*
+
+/**
+ * Generates metadata of model classes, so selection sets and arguments are built without
+ * reflection.
+ *
+ * Models are response and arguments types of methods annotated with `GraphQL`, classes annotated
+ * with `GraphQLModel` and all the classes selected by their fields. The generated class is named
+ * after the model with `_GraphQL` suffix, names of nested classes are joined by `_`.
+ */
+class GraphQLProcessor:
+  AbstractProcessor() {
+
+  // region Private Types
+
+  private companion object {
+    private const val ANNOTATION_PACKAGE = "com.kiwi.mobile.retrograph.annotation"
+    private const val EXTENSION_PACKAGE = "com.kiwi.mobile.retrograph.extension"
+
+    private const val GRAPH_QL = "$ANNOTATION_PACKAGE.GraphQL"
+    private const val GRAPH_QL_MODEL = "$ANNOTATION_PACKAGE.GraphQLModel"
+    private const val ARGUMENTS = "$ANNOTATION_PACKAGE.Arguments"
+    private const val ALIAS = "$ANNOTATION_PACKAGE.Alias"
+    private const val INLINE_FRAGMENT = "$ANNOTATION_PACKAGE.InlineFragment"
+    private const val SCALAR = "$ANNOTATION_PACKAGE.Scalar"
+    private const val IGNORE_NULLS = "$ANNOTATION_PACKAGE.IgnoreNulls"
+
+    private const val GENERATED_MODEL = "$EXTENSION_PACKAGE.GeneratedModel"
+    private const val FIELD_DESCRIPTOR = "$EXTENSION_PACKAGE.FieldDescriptor"
+    private const val GENERATED_MODEL_SUFFIX = "_GraphQL"
+
+    private const val KOTLIN_METADATA = "kotlin.Metadata"
+    private const val NULLABLE = "org.jetbrains.annotations.Nullable"
+
+    private val WRAPPER_TYPES = setOf(
+      "java.lang.Boolean",
+      "java.lang.Character",
+      "java.lang.String",
+      "java.lang.Byte",
+      "java.lang.Short",
+      "java.lang.Integer",
+      "java.lang.Long",
+      "java.lang.Float",
+      "java.lang.Double",
+      "java.lang.Void",
+      "kotlin.Unit"
+    )
+
+    /**
+     * Types wrapping the response model in return types of `GraphQL` methods.
+     */
+    private val RESPONSE_WRAPPER_TYPES = setOf(
+      "io.reactivex.Observable",
+      "io.reactivex.Flowable",
+      "io.reactivex.Single",
+      "io.reactivex.Maybe",
+      "retrofit2.Call",
+      "retrofit2.Response",
+      "retrofit2.adapter.rxjava2.Result",
+      "com.kiwi.mobile.retrograph.model.Response"
+    )
+
+    private val SKIPPED_PACKAGES = arrayOf("java.", "javax.", "kotlin.")
+  }
+
+  private enum class Kind(
+    val isScalar: Boolean
+  ) {
+    PRIMITIVE(true),
+    ENUM(true),
+    ARRAY(false),
+    LIST(false),
+    OBJECT(false)
+  }
+
+  /**
+   * Model class field mirroring the runtime field descriptor.
+   *
+   * @param selectionType Type of the field selection set, `null` for scalars.
+   * @param accessor Java expression reading the field of `model` variable, `null` if the field is
+   * not accessible.
+   * @param variableType GraphQL type of the field, `null` if it is resolved at runtime.
+   */
+  private class ModelField(
+    val name: String,
+    val aliasOrName: String,
+    val nameOrEmpty: String,
+    val hasInlineFragment: Boolean,
+    val type: TypeMirror,
+    val componentType: TypeMirror,
+    val selectionType: TypeMirror?,
+    val accessor: String?,
+    val variableType: String?
+  )
+
+  /**
+   * Writes Java source of the generated model.
+   */
+  private class GeneratedModelWriter(
+    private val packageName: String,
+    private val simpleName: String,
+    private val modelType: String,
+    private val selection: String,
+    private val ignoreNulls: Boolean,
+    private val fields: List<ModelField>
+  ) {
+
+    fun write() =
+      buildString {
+        appendln("// Generated by Retrograph annotation processor, do not edit.")
+        if (packageName.isNotEmpty()) {
+          appendln("package $packageName;")
+          appendln()
+        }
+        appendln("import $FIELD_DESCRIPTOR;")
+        appendln("import $GENERATED_MODEL;")
+        appendln()
+        appendln("import java.util.Arrays;")
+        appendln("import java.util.Collections;")
+        appendln("import java.util.List;")
+        appendln()
+        appendln("public final class $simpleName implements GeneratedModel {")
+        appendln()
+        appendln("  private static final List<FieldDescriptor> FIELDS =")
+        appendln("    Collections.unmodifiableList(Arrays.<FieldDescriptor>asList(")
+        fields.forEachIndexed { index, field ->
+          writeField(field)
+          appendln(if (index < fields.lastIndex) "," else "")
+        }
+        appendln("    ));")
+        appendln()
+        appendln("  @Override")
+        appendln("  public String getSelection() {")
+        appendln("    return ${selection.literal};")
+        appendln("  }")
+        appendln()
+        appendln("  @Override")
+        appendln("  public boolean getIgnoreNulls() {")
+        appendln("    return $ignoreNulls;")
+        appendln("  }")
+        appendln()
+        appendln("  @Override")
+        appendln("  public List<FieldDescriptor> getFields() {")
+        appendln("    return FIELDS;")
+        appendln("  }")
+        appendln("}")
+      }
+
+    private fun StringBuilder.writeField(field: ModelField) {
+      append("      new FieldDescriptor(")
+      append("${field.name.literal}, ${field.aliasOrName.literal}, ${field.nameOrEmpty.literal}, ")
+      append("${field.hasInlineFragment}, ${field.type}.class, ${field.componentType}.class")
+      appendln(") {")
+      if (field.variableType != null) {
+        appendln("        @Override")
+        appendln("        public String getVariableType() {")
+        appendln("          return ${field.variableType.literal};")
+        appendln("        }")
+      } else {
+        appendln("        private String variableType;")
+        appendln()
+        appendln("        @Override")
+        appendln("        public String getVariableType() {")
+        appendln("          if (variableType == null) {")
+        appendln("            variableType =")
+        append("              FieldDescriptor.variableTypeOf(")
+        appendln("$modelType.class, ${field.name.literal});")
+        appendln("          }")
+        appendln("          return variableType;")
+        appendln("        }")
+      }
+      appendln()
+      appendln("        @Override")
+      appendln("        public Object get(Object model) {")
+      appendln("          return (($modelType) model).${field.accessor};")
+      appendln("        }")
+      append("      }")
+    }
+
+    private val String.literal
+      get() =
+        buildString {
+          append('"')
+          this@literal.forEach {
+            when (it) {
+              '"' -> append("\\\"")
+              '\\' -> append("\\\\")
+              '\n' -> append("\\n")
+              '\r' -> append("\\r")
+              '\t' -> append("\\t")
+              else -> if (it < ' ') append(String.format("\\u%04x", it.toInt())) else append(it)
+            }
+          }
+          append('"')
+        }
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val elements: Elements
+    get() = processingEnv.elementUtils
+
+  private val types: Types
+    get() = processingEnv.typeUtils
+
+  private val objectType by lazy {
+    elements.getTypeElement("java.lang.Object").asType()
+  }
+
+  private val listType by lazy {
+    types.erasure(elements.getTypeElement("java.util.List").asType())
+  }
+
+  private val processedModels = mutableSetOf<String>()
+
+  private val selections = mutableMapOf<String, String?>()
+
+  private val selectionStack = mutableSetOf<String>()
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  override fun getSupportedAnnotationTypes() = setOf(GRAPH_QL, GRAPH_QL_MODEL)
+
+  override fun getSupportedSourceVersion(): SourceVersion = SourceVersion.latestSupported()
+
+  override fun process(
+    annotations: Set<TypeElement>,
+    roundEnvironment: RoundEnvironment
+  ): Boolean {
+    val models = LinkedHashMap<String, TypeElement>()
+    val addModel = { type: TypeMirror? ->
+      type?.typeElement?.let { models.putIfAbsent(it.qualifiedName.toString(), it) }
+    }
+
+    annotations.forEach { annotation ->
+      roundEnvironment.getElementsAnnotatedWith(annotation).forEach { element ->
+        when (annotation.qualifiedName.toString()) {
+          GRAPH_QL_MODEL -> addModel(element.asType())
+          GRAPH_QL -> (element as? ExecutableElement)?.let { method ->
+            addModel(method.returnType.responseModel)
+            method.parameters
+              .filter { it.hasAnnotation(ARGUMENTS) }
+              .forEach { addModel(it.asType()) }
+          }
+        }
+      }
+    }
+
+    val queue = ArrayDeque(models.values)
+    while (queue.isNotEmpty()) {
+      val model = queue.removeFirst()
+      if (!processedModels.add(model.qualifiedName.toString())) {
+        continue
+      }
+
+      val fields = model.modelFields
+      fields.mapNotNull { it.selectionType?.typeElement }
+        .forEach { queue.add(it) }
+      generate(model, fields)
+    }
+    return false
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun generate(model: TypeElement, fields: List<ModelField>) {
+    val qualifiedName = model.qualifiedName.toString()
+    if (SKIPPED_PACKAGES.any { qualifiedName.startsWith(it) }) {
+      return
+    }
+
+    val generatedName = elements.getBinaryName(model)
+      .toString()
+      .replace('$', '_') + GENERATED_MODEL_SUFFIX
+    if (elements.getTypeElement(generatedName) != null) {
+      return
+    }
+
+    val reason = when {
+      model.kind != ElementKind.CLASS ->
+        "it is not a class"
+      !model.isAccessible ->
+        "it is not accessible"
+      fields.any { it.accessor == null } ->
+        "some of its fields have no accessible getter"
+      fields.any { !it.type.isAccessible || !it.componentType.isAccessible } ->
+        "some of its field types are not accessible"
+      else ->
+        null
+    }
+    val selection = model.asType().selection
+    if (reason != null || selection == null) {
+      note(model, "Model metadata not generated, ${reason ?: "the model is recursive"}.")
+      return
+    }
+
+    val source = GeneratedModelWriter(
+      packageName = elements.getPackageOf(model).qualifiedName.toString(),
+      simpleName = generatedName.substringAfterLast('.'),
+      modelType = types.erasure(model.asType()).toString(),
+      selection = selection,
+      ignoreNulls = model.hasAnnotation(IGNORE_NULLS),
+      fields = fields
+    )
+      .write()
+
+    processingEnv.filer
+      .createSourceFile(generatedName, model)
+      .openWriter()
+      .use { it.write(source) }
+  }
+
+  private fun note(element: Element, message: String) {
+    processingEnv.messager
+      .printMessage(Diagnostic.Kind.NOTE, message, element)
+  }
+
+  /**
+   * Fields of the model class, they are read the same way as the runtime reads them.
+   */
+  private val TypeElement.modelFields: List<ModelField>
+    get() {
+      val isKotlin = hasAnnotation(KOTLIN_METADATA)
+      val methods = ElementFilter.methodsIn(enclosedElements)
+      return ElementFilter.fieldsIn(enclosedElements)
+        .filter {
+          Modifier.STATIC !in it.modifiers
+            && Modifier.TRANSIENT !in it.modifiers
+            && !it.simpleName.endsWith("\$delegate")
+        }
+        .map { modelField(it, isKotlin, methods) }
+    }
+
+  private fun modelField(
+    field: VariableElement,
+    isKotlin: Boolean,
+    methods: List<ExecutableElement>
+  ): ModelField {
+    val name = field.simpleName.toString()
+    val alias = field.annotationValue(ALIAS, "name") as? String
+    val hasInlineFragment = field.hasAnnotation(INLINE_FRAGMENT)
+    val scalar = field.annotationValue(SCALAR, "name") as? String
+    val type = types.erasure(field.asType())
+    val componentType = field.asType().componentType
+    val kind = type.fieldKind
+    val componentKind = componentType.fieldKind
+
+    val selectionType = when {
+      hasInlineFragment && (kind == Kind.LIST || kind == Kind.ARRAY) -> componentType
+      hasInlineFragment -> type
+      kind.isScalar -> null
+      kind == Kind.LIST || kind == Kind.ARRAY -> if (componentKind.isScalar) null else componentType
+      else -> type
+    }
+
+    // Only nullability of Kotlin properties is known at compile time, nullability of Java fields
+    // and of type arguments is resolved at runtime.
+    val isNullable = field.hasAnnotation(NULLABLE)
+    val variableType = when {
+      !isKotlin ->
+        null
+      kind != Kind.LIST && kind != Kind.ARRAY ->
+        (scalar ?: type.graphQLTypeName) + if (isNullable) "" else "!"
+      componentType.isPrimitive ->
+        "[${scalar ?: componentType.graphQLTypeName}!]" + if (isNullable) "" else "!"
+      else ->
+        null
+    }
+
+    return ModelField(
+      name = name,
+      aliasOrName = alias ?: name,
+      nameOrEmpty = if (alias != null) name else "",
+      hasInlineFragment = hasInlineFragment,
+      type = type,
+      componentType = componentType,
+      selectionType = selectionType,
+      accessor = accessorOf(field, methods),
+      variableType = variableType
+    )
+  }
+
+  private fun accessorOf(field: VariableElement, methods: List<ExecutableElement>): String? {
+    val name = field.simpleName.toString()
+    if (Modifier.PUBLIC in field.modifiers) {
+      return name
+    }
+
+    val getterNames = listOfNotNull(
+      "get${name.capitalize()}",
+      name.takeIf { it.startsWith("is") && it.length > 2 && !it[2].isLowerCase() }
+    )
+    return methods
+      .firstOrNull {
+        it.simpleName.toString() in getterNames
+          && it.parameters.isEmpty()
+          && Modifier.PRIVATE !in it.modifiers
+          && Modifier.STATIC !in it.modifiers
+      }
+      ?.let { "${it.simpleName}()" }
+  }
+
+  /**
+   * Text of the type selection set, `null` for recursive models.
+   */
+  private val TypeMirror.selection: String?
+    get() {
+      val element = typeElement
+        ?: return ""
+      val name = element.qualifiedName.toString()
+      if (name in selections) {
+        return selections[name]
+      }
+      if (!selectionStack.add(name)) {
+        return null
+      }
+
+      val texts = element.modelFields
+        .map { it.selection ?: return null.also { selectionStack.remove(name) } }
+      selectionStack.remove(name)
+      return texts.joinToString(separator = ", ")
+        .also { selections[name] = it }
+    }
+
+  private val ModelField.selection: String?
+    get() {
+      val alias = if (nameOrEmpty.isNotEmpty()) "$nameOrEmpty: " else ""
+      val selectionType = selectionType
+        ?: return "$alias$aliasOrName"
+      val selection = selectionType.selection
+        ?: return null
+      val selectionSet = if (selection.isNotEmpty()) " { $selection }" else ""
+      return if (hasInlineFragment) {
+        "$alias$aliasOrName { ... on ${selectionType.simpleName}$selectionSet }"
+      } else {
+        "$alias$aliasOrName$selectionSet"
+      }
+    }
+
+  /**
+   * Model of the `GraphQL` method response, wrappers like `Observable` or `Response` are skipped.
+   */
+  private val TypeMirror.responseModel: TypeMirror?
+    get() {
+      var type = this
+      while (type is DeclaredType && type.qualifiedName in RESPONSE_WRAPPER_TYPES) {
+        type = type.typeArguments.firstOrNull()?.upperBound
+          ?: return null
+      }
+      return type
+    }
+
+  private val TypeMirror.upperBound: TypeMirror
+    get() = (this as? WildcardType)?.let { it.extendsBound ?: objectType } ?: this
+
+  /**
+   * Component type of arrays and the first type argument of other types, resolved the same way
+   * as the runtime resolves it.
+   */
+  private val TypeMirror.componentType: TypeMirror
+    get() = when {
+      this is ArrayType -> types.erasure(componentType)
+      this is DeclaredType && typeArguments.isNotEmpty() ->
+        typeArguments[0].upperBound
+          .takeIf { it.isClass }
+          ?.let { types.erasure(it) }
+          ?: objectType
+      else -> objectType
+    }
+
+  /**
+   * Whether the type is represented by `Class` in reflection.
+   */
+  private val TypeMirror.isClass: Boolean
+    get() = when (this) {
+      is DeclaredType -> typeArguments.isEmpty()
+      is ArrayType -> componentType.isClass
+      else -> isPrimitive
+    }
+
+  private val TypeMirror.fieldKind: Kind
+    get() = when {
+      isPrimitive || qualifiedName in WRAPPER_TYPES -> Kind.PRIMITIVE
+      typeElement?.kind == ElementKind.ENUM -> Kind.ENUM
+      this is ArrayType -> Kind.ARRAY
+      types.isAssignable(types.erasure(this), listType) -> Kind.LIST
+      else -> Kind.OBJECT
+    }
+
+  private val TypeMirror.isPrimitive
+    get() = kind.isPrimitive
+
+  private val TypeMirror.qualifiedName
+    get() = typeElement?.qualifiedName?.toString()
+
+  private val TypeMirror.simpleName: String
+    get() = when (this) {
+      is ArrayType -> "${componentType.simpleName}[]"
+      else -> typeElement?.simpleName?.toString() ?: toString()
+    }
+
+  private val TypeMirror.graphQLTypeName: String
+    get() {
+      val boxedName = if (isPrimitive) {
+        types.boxedClass(this as PrimitiveType).qualifiedName.toString()
+      } else {
+        qualifiedName
+      }
+      return when (boxedName) {
+        "java.lang.Boolean" -> "Boolean"
+        "java.lang.Byte", "java.lang.Short", "java.lang.Integer" -> "Int"
+        "java.lang.Long" -> "Long"
+        "java.lang.Float", "java.lang.Double" -> "Float"
+        "java.lang.Character", "java.lang.String" -> "String"
+        else -> simpleName
+      }
+    }
+
+  private val TypeMirror.typeElement
+    get() = (this as? DeclaredType)?.asElement() as? TypeElement
+
+  /**
+   * Whether the generated class in the package of the model can reference the type.
+   */
+  private val TypeMirror.isAccessible: Boolean
+    get() = when (this) {
+      is ArrayType -> componentType.isAccessible
+      is DeclaredType -> typeElement?.isAccessible ?: false
+      else -> true
+    }
+
+  private val TypeElement.isAccessible: Boolean
+    get() {
+      var element: Element = this
+      while (element is TypeElement) {
+        if (Modifier.PRIVATE in element.modifiers
+          || element.nestingKind == NestingKind.LOCAL
+          || element.nestingKind == NestingKind.ANONYMOUS
+        ) {
+          return false
+        }
+        element = element.enclosingElement
+      }
+      return true
+    }
+
+  private fun Element.hasAnnotation(name: String) =
+    annotationMirrors.any { it.annotationType.qualifiedName == name }
+
+  private fun Element.annotationValue(annotation: String, name: String) =
+    annotationMirrors
+      .firstOrNull { it.annotationType.qualifiedName == annotation }
+      ?.elementValues
+      ?.entries
+      ?.firstOrNull { it.key.simpleName.contentEquals(name) }
+      ?.value
+      ?.value
+
+  // endregion Private Methods
+}
@@ -0,0 +1,122 @@
+package com.kiwi.mobile.retrograph.benchmark
+
+import com.kiwi.mobile.retrograph.*
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.*
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.ResponseBody.Companion.toResponseBody
+
+import org.openjdk.jmh.annotations.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+/**
+ * Overhead of the Rx call adapters, the responses are served by an interceptor without network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class CallAdapterBenchmark {
+
+  // region Private Types
+
+  private companion object {
+
+    private val JSON = "application/json; charset=UTF-8".toMediaType()
+
+    private const val BODY = """{ "data": "Hi" }"""
+  }
+
+  interface GraphQLService {
+
+    @GraphQL
+    @POST("/")
+    fun hello(@Body request: Request): Single<String>
+  }
+
+  interface PlainService {
+
+    @POST("/")
+    fun hello(@Body request: Request): Single<String>
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val request = Request("query { hello }", mapOf())
+
+  private lateinit var client: OkHttpClient
+
+  private lateinit var graphQLSync: GraphQLService
+
+  private lateinit var graphQLAsync: GraphQLService
+
+  private lateinit var rxJava2Sync: PlainService
+
+  private lateinit var rxJava2Async: PlainService
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Setup
+  fun setUp() {
+    client = OkHttpClient.Builder()
+      .addInterceptor { chain ->
+        okhttp3.Response.Builder()
+          .request(chain.request())
+          .protocol(Protocol.HTTP_1_1)
+          .code(200)
+          .message("OK")
+          .body(BODY.toResponseBody(JSON))
+          .build()
+      }
+      .build()
+    graphQLSync = serviceOf(GraphQLCallAdapterFactory.create())
+    graphQLAsync = serviceOf(GraphQLCallAdapterFactory.createAsync())
+    rxJava2Sync = serviceOf(RxJava2CallAdapterFactory.create())
+    rxJava2Async = serviceOf(RxJava2CallAdapterFactory.createAsync())
+  }
+
+  @TearDown
+  fun tearDown() {
+    client.dispatcher.executorService.shutdown()
+  }
+
+  @Benchmark
+  fun graphQLSync() = graphQLSync.hello(request).blockingGet()
+
+  @Benchmark
+  fun graphQLAsync() = graphQLAsync.hello(request).blockingGet()
+
+  @Benchmark
+  fun rxJava2Sync() = rxJava2Sync.hello(request).blockingGet()
+
+  @Benchmark
+  fun rxJava2Async() = rxJava2Async.hello(request).blockingGet()
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private inline fun <reified T> serviceOf(factory: CallAdapter.Factory): T =
+    Retrofit.Builder()
+      .baseUrl("http://localhost/")
+      .client(client)
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(factory)
+      .build()
+      .create(T::class.java)
+
+  // endregion Private Methods
+}
@@ -0,0 +1,127 @@
+package com.kiwi.mobile.retrograph.benchmark
+
+import com.kiwi.mobile.retrograph.*
+import com.kiwi.mobile.retrograph.RealWorldTest.*
+import com.kiwi.mobile.retrograph.extension.GeneratedModelTest.*
+import com.kiwi.mobile.retrograph.model.*
+
+import org.openjdk.jmh.annotations.*
+
+import java.util.concurrent.*
+
+/**
+ * Building and rendering of requests for the flight models of [RealWorldTest].
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class RequestBuilderBenchmark {
+
+  // region Private Properties
+
+  private val arguments = GetFlightsArguments()
+
+  private val generatedArguments = FlightsArguments(
+    FlightsArguments.FlightsSourceArguments("london_gb", 20)
+  )
+
+  private lateinit var document: Document
+
+  private lateinit var variablesBuilder: RequestBuilder
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Setup
+  fun setUp() {
+    document = RequestBuilder()
+      .operation()
+      .fieldsOf(GetFlights::class, arguments)
+      .parent
+    variablesBuilder = RequestBuilder()
+      .operation()
+      .fieldsOf(GetFlights::class, arguments)
+      .finish()
+      .extractVariables()
+  }
+
+  /**
+   * Selection of the model read by reflection.
+   */
+  @Benchmark
+  fun fieldsOf() =
+    RequestBuilder()
+      .operation()
+      .fieldsOf(GetFlights::class, arguments)
+      .finish()
+      .build()
+
+  /**
+   * Selection of the model read from the metadata generated by the annotation processor.
+   */
+  @Benchmark
+  fun fieldsOfGenerated() =
+    RequestBuilder()
+      .operation()
+      .fieldsOf(Flights::class, generatedArguments)
+      .finish()
+      .build()
+
+  @Benchmark
+  fun manualChain(): Request {
+    val parameters = arguments.get_flights.parameters
+    val pagination = arguments.get_flights.pagination
+
+    // @formatter:off
+    return RequestBuilder()
+      .operation()
+      .objectField("get_flights")
+        .arguments()
+          .objectArgument("parameters")
+            .value("dateFrom", parameters.dateFrom)
+            .value("dateTo", parameters.dateTo)
+            .value("flyFrom", parameters.flyFrom)
+            .value("v", parameters.v)
+            .value("partner", parameters.partner)
+            .finish()
+          .objectArgument("pagination")
+            .value("limit", pagination.limit)
+            .value("offset", pagination.offset)
+            .finish()
+          .listArgument("providers")
+            .value(Provider.KIWI)
+            .finish()
+          .finish()
+        .objectField("data")
+          .field("id")
+            .finish()
+          .field("booking_token", "bookingToken")
+            .finish()
+          .field("flyFrom")
+            .finish()
+          .field("flyTo")
+            .finish()
+          .field("cityFrom")
+            .finish()
+          .field("cityTo")
+            .finish()
+          .finish()
+        .field("currency")
+          .finish()
+        .field("more_pending", "morePending")
+          .finish()
+        .finish()
+      .finish()
+      .build()
+    // @formatter:on
+  }
+
+  @Benchmark
+  fun documentToString() = document.toString()
+
+  @Benchmark
+  fun buildVariables() = variablesBuilder.build()
+
+  // endregion Public Methods
+}
@@ -0,0 +1,102 @@
+package com.kiwi.mobile.retrograph.benchmark
+
+import com.kiwi.mobile.retrograph.*
+import com.kiwi.mobile.retrograph.RealWorldTest.*
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.*
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.ResponseBody.Companion.toResponseBody
+
+import org.openjdk.jmh.annotations.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+/**
+ * Decoding of large flight payloads by [GraphQLConverterFactory] through the `Response` wrapper
+ * and by the streaming decoder.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+open class ResponseDecodingBenchmark {
+
+  // region Private Types
+
+  private companion object {
+    private val JSON = "application/json; charset=UTF-8".toMediaType()
+  }
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun flights(@Body request: Request): Single<GetFlights>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @Param("10", "1000")
+  var flightCount = 0
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private lateinit var payload: ByteArray
+
+  private lateinit var wrapperConverter: Converter<ResponseBody, GetFlights>
+
+  private lateinit var streamingConverter: Converter<ResponseBody, GetFlights>
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Setup
+  fun setUp() {
+    payload = (1..flightCount)
+      .joinToString(
+        prefix = """{ "data": { "get_flights": { "data": [ """,
+        postfix = """ ], "currency": "EUR", "morePending": false } } }"""
+      ) {
+        """{ "id": "$it", "bookingToken": "${"x".repeat(200)}", "flyFrom": "LHR", """ +
+          """"flyTo": "PRG", "cityFrom": "London", "cityTo": "Prague" }"""
+      }
+      .toByteArray()
+    wrapperConverter = converterOf(GraphQLConverterFactory.create())
+    streamingConverter = converterOf(GraphQLConverterFactory.createStreaming())
+  }
+
+  @Benchmark
+  fun wrapper() = wrapperConverter.convert(payload.toResponseBody(JSON))
+
+  @Benchmark
+  fun streaming() = streamingConverter.convert(payload.toResponseBody(JSON))
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun converterOf(factory: GraphQLConverterFactory): Converter<ResponseBody, GetFlights> =
+    Retrofit.Builder()
+      .baseUrl("http://localhost/")
+      .addConverterFactory(factory)
+      .addConverterFactory(GsonConverterFactory.create())
+      .build()
+      .responseBodyConverter(
+        GetFlights::class.java,
+        Service::class.java.getMethod("flights", Request::class.java).annotations
+      )
+
+  // endregion Private Methods
+}
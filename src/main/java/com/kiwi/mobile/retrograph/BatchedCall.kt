@@ -0,0 +1,119 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.model.Request
+
+import okhttp3.*
+
+import java.io.*
+import java.util.concurrent.*
+
+/**
+ * Call sending its [graphQLRequest] together with other calls in a batch of the [batcher].
+ *
+ * The [rawRequest] only provides the endpoint of the batch, the batch request is performed by the
+ * [callFactory] of its first call, see [CallDecorator]. Each call is completed, failed or canceled
+ * on its own, regardless of the other calls of the batch.
+ */
+internal class BatchedCall(
+  rawRequest: okhttp3.Request,
+  val graphQLRequest: Request,
+  callFactory: okhttp3.Call.Factory,
+  private val batcher: QueryBatcher
+):
+  DecoratingCall(rawRequest, callFactory) {
+
+  // region Private Properties
+
+  @Volatile
+  private var callback: okhttp3.Callback? = null
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Throws(IOException::class)
+  override fun execute(): okhttp3.Response {
+    val latch = CountDownLatch(1)
+    var result: okhttp3.Response? = null
+    var failure: IOException? = null
+
+    enqueue(object: okhttp3.Callback {
+
+      override fun onResponse(call: okhttp3.Call, response: okhttp3.Response) {
+        result = response
+        latch.countDown()
+      }
+
+      override fun onFailure(call: okhttp3.Call, exception: IOException) {
+        failure = exception
+        latch.countDown()
+      }
+    })
+
+    try {
+      latch.await()
+    } catch (exception: InterruptedException) {
+      cancel()
+      throw InterruptedIOException()
+    }
+
+    failure?.let { throw it }
+    return result!!
+  }
+
+  override fun enqueue(responseCallback: okhttp3.Callback) {
+    markExecuted()
+
+    callback = responseCallback
+    if (isCanceled()) {
+      responseCallback.onFailure(this, IOException("Canceled"))
+      return
+    }
+    batcher.add(this)
+  }
+
+  override fun cancel() {
+    if (isCanceled()) {
+      return
+    }
+
+    super.cancel()
+    if (batcher.cancel(this)) {
+      callback?.onFailure(this, IOException("Canceled"))
+    }
+  }
+
+  override fun clone() =
+    BatchedCall(rawRequest, graphQLRequest, callFactory, batcher)
+
+  // endregion Public Methods
+
+  // region Internal Methods
+
+  /**
+   * Returns raw call of the batch request, performed the same way as the single call would be.
+   */
+  internal fun newBatchCall(batchRequest: okhttp3.Request) = callFactory.newCall(batchRequest)
+
+  /**
+   * Delivers the response of this call split from the batch response.
+   */
+  internal fun complete(rawResponse: okhttp3.Response) {
+    batcher.done(this)
+    val callback = callback
+    if ((callback == null) || isCanceled()) {
+      rawResponse.close()
+      callback?.onFailure(this, IOException("Canceled"))
+      return
+    }
+
+    callback.onResponse(this, rawResponse)
+  }
+
+  internal fun fail(exception: IOException) {
+    batcher.done(this)
+    callback?.onFailure(this, if (isCanceled()) IOException("Canceled") else exception)
+  }
+
+  // endregion Internal Methods
+}
@@ -0,0 +1,109 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.cache.*
+
+import okhttp3.*
+import okhttp3.ResponseBody.Companion.toResponseBody
+
+import java.io.*
+
+/**
+ * Call answered from the [cache] when all the selection [fields] are cached, performing the
+ * [rawRequest] by the [callFactory] and storing `data` of its successful response otherwise.
+ */
+internal class CachedCall(
+  rawRequest: okhttp3.Request,
+  private val fields: List<CacheField>,
+  callFactory: okhttp3.Call.Factory,
+  private val cache: NormalizedCache
+):
+  DecoratingCall(rawRequest, callFactory) {
+
+  // region Public Methods
+
+  @Throws(IOException::class)
+  override fun execute(): okhttp3.Response {
+    markExecuted()
+
+    return cachedResponse()
+      ?: executeRaw(rawRequest).stored()
+  }
+
+  override fun enqueue(responseCallback: okhttp3.Callback) {
+    markExecuted()
+
+    val cached = try {
+      cachedResponse()
+    } catch (exception: IOException) {
+      responseCallback.onFailure(this, exception)
+      return
+    }
+    if (cached != null) {
+      responseCallback.onResponse(this, cached)
+      return
+    }
+
+    enqueueRaw(rawRequest, responseCallback)
+  }
+
+  override fun clone() =
+    CachedCall(rawRequest, fields, callFactory, cache)
+
+  // endregion Public Methods
+
+  // region Protected Methods
+
+  override fun onRawResponse(rawResponse: okhttp3.Response, callback: okhttp3.Callback) {
+    deliver(callback) { rawResponse.stored() }
+  }
+
+  // endregion Protected Methods
+
+  // region Private Methods
+
+  @Throws(IOException::class)
+  private fun cachedResponse(): okhttp3.Response? {
+    if (isCanceled()) {
+      throw IOException("Canceled")
+    }
+
+    val data = cache.read(fields)
+      ?: return null
+    return rawRequest.jsonResponse(JsonObject().apply { add("data", data) }.toString())
+  }
+
+  /**
+   * Stores `data` of the successful response without errors, the response body is read and
+   * replaced by the same content.
+   */
+  @Throws(IOException::class)
+  private fun okhttp3.Response.stored(): okhttp3.Response {
+    if (!isSuccessful) {
+      return this
+    }
+
+    val body = body!!
+    val contentType = body.contentType()
+    val json = body.use { it.string() }
+    val response = try {
+      JsonParser().parse(json)
+        .takeIf { it.isJsonObject }
+        ?.asJsonObject
+    } catch (exception: JsonParseException) {
+      null
+    }
+    val data = response?.get("data")
+    val errors = response?.get("errors")
+    if ((data != null) && data.isJsonObject && ((errors == null) || errors.isJsonNull)) {
+      cache.write(fields, data.asJsonObject)
+    }
+
+    return newBuilder()
+      .body(json.toResponseBody(contentType))
+      .build()
+  }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,438 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.model.Operation
+import com.kiwi.mobile.retrograph.model.Request
+
+import okhttp3.*
+import okhttp3.MediaType.Companion.toMediaType
+import okhttp3.ResponseBody.Companion.toResponseBody
+
+import okio.*
+
+import retrofit2.*
+import retrofit2.Call
+import retrofit2.Callback
+
+import java.io.*
+import java.util.*
+
+import retrofit2.Response as RetrofitResponse
+
+/**
+ * Changes how requests of [GraphQL][com.kiwi.mobile.retrograph.annotation.GraphQL] methods are
+ * sent.
+ *
+ * Decorators wrap the factory of the raw HTTP calls, so they can be stacked, each one performing
+ * its requests by the factory of the next one. The GraphQL request is read from the [Invocation]
+ * tag of the raw request, requests without it are passed on as they are. Queries are sent by GET
+ * if `getQueries` is given and the decorator supports it.
+ */
+internal interface CallDecorator {
+
+  fun decorate(callFactory: okhttp3.Call.Factory, getQueries: GetQueries?): okhttp3.Call.Factory
+}
+
+/**
+ * Base of the raw calls created by [CallDecorator]s.
+ *
+ * By default the [rawRequest] is performed by a call of the [callFactory] and its response is
+ * returned as it is, subclasses change which requests are performed and what is returned.
+ */
+internal abstract class DecoratingCall(
+  protected val rawRequest: okhttp3.Request,
+  protected val callFactory: okhttp3.Call.Factory
+):
+  okhttp3.Call {
+
+  // region Private Properties
+
+  @Volatile
+  private var canceled = false
+
+  @Volatile
+  private var rawCall: okhttp3.Call? = null
+
+  private var executed = false
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Throws(IOException::class)
+  override fun execute(): okhttp3.Response {
+    markExecuted()
+
+    return executeRaw(rawRequest)
+  }
+
+  override fun enqueue(responseCallback: okhttp3.Callback) {
+    markExecuted()
+
+    enqueueRaw(rawRequest, responseCallback)
+  }
+
+  @Synchronized
+  override fun isExecuted() = executed
+
+  override fun cancel() {
+    canceled = true
+    rawCall?.cancel()
+  }
+
+  override fun isCanceled() = canceled
+
+  override fun request() = rawRequest
+
+  override fun timeout() = rawCall?.timeout() ?: Timeout.NONE
+
+  // endregion Public Methods
+
+  // region Protected Methods
+
+  @Synchronized
+  protected fun markExecuted() {
+    check(!executed) { "Already executed." }
+    executed = true
+  }
+
+  /**
+   * Delivers the raw response of [enqueueRaw] to the [callback], as it is by default.
+   */
+  protected open fun onRawResponse(rawResponse: okhttp3.Response, callback: okhttp3.Callback) {
+    callback.onResponse(this, rawResponse)
+  }
+
+  /**
+   * Delivers the [response] to the [callback], or its failure.
+   */
+  protected fun deliver(callback: okhttp3.Callback, response: () -> okhttp3.Response) {
+    val result = try {
+      response()
+    } catch (exception: IOException) {
+      callback.onFailure(this, exception)
+      return
+    }
+    callback.onResponse(this, result)
+  }
+
+  /**
+   * Performs the [rawRequest] by the [callFactory], it is canceled together with this call.
+   */
+  @Throws(IOException::class)
+  protected fun executeRaw(rawRequest: okhttp3.Request): okhttp3.Response =
+    newRawCall(rawRequest)
+      .execute()
+
+  /**
+   * Enqueues the [rawRequest] by the [callFactory], its response is passed to [onRawResponse].
+   */
+  protected fun enqueueRaw(rawRequest: okhttp3.Request, callback: okhttp3.Callback) {
+    val call = try {
+      newRawCall(rawRequest)
+    } catch (exception: IOException) {
+      callback.onFailure(this, exception)
+      return
+    }
+
+    call.enqueue(object: okhttp3.Callback {
+
+      override fun onResponse(call: okhttp3.Call, response: okhttp3.Response) {
+        onRawResponse(response, callback)
+      }
+
+      override fun onFailure(call: okhttp3.Call, exception: IOException) {
+        callback.onFailure(this@DecoratingCall, exception)
+      }
+    })
+  }
+
+  // endregion Protected Methods
+
+  // region Private Methods
+
+  @Throws(IOException::class)
+  private fun newRawCall(rawRequest: okhttp3.Request): okhttp3.Call {
+    if (canceled) {
+      throw IOException("Canceled")
+    }
+
+    return callFactory.newCall(rawRequest)
+      .also {
+        rawCall = it
+        if (canceled) {
+          it.cancel()
+        }
+      }
+  }
+
+  // endregion Private Methods
+}
+
+/**
+ * Call performing the HTTP request of the [delegate] call by the [callFactory] of the decorators
+ * instead of the Retrofit one. The response is converted by the [converter] the same way Retrofit
+ * does.
+ */
+internal open class DecoratedCall<R>(
+  protected val delegate: Call<R>,
+  protected val callFactory: okhttp3.Call.Factory,
+  protected val converter: Converter<ResponseBody, R>
+):
+  Call<R> {
+
+  // region Private Properties
+
+  @Volatile
+  private var canceled = false
+
+  @Volatile
+  private var rawCall: okhttp3.Call? = null
+
+  private var executed = false
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Throws(IOException::class)
+  override fun execute(): RetrofitResponse<R> {
+    markExecuted()
+
+    return executeRaw()
+  }
+
+  override fun enqueue(callback: Callback<R>) {
+    markExecuted()
+
+    enqueueRaw(callback)
+  }
+
+  @Synchronized
+  override fun isExecuted() = executed
+
+  override fun cancel() {
+    canceled = true
+    rawCall?.cancel()
+  }
+
+  override fun isCanceled() = canceled
+
+  override fun clone(): Call<R> =
+    DecoratedCall(delegate.clone(), callFactory, converter)
+
+  override fun request(): okhttp3.Request = delegate.request()
+
+  // endregion Public Methods
+
+  // region Protected Methods
+
+  @Synchronized
+  protected fun markExecuted() {
+    check(!executed) { "Already executed." }
+    executed = true
+  }
+
+  /**
+   * Returns the HTTP request to perform, the request of the [delegate] by default.
+   */
+  protected open fun rawRequest(): okhttp3.Request = delegate.request()
+
+  /**
+   * Converts the raw response the same way Retrofit does.
+   */
+  @Throws(IOException::class)
+  protected open fun convert(rawResponse: okhttp3.Response): RetrofitResponse<R> =
+    rawResponse.toRetrofitResponse(converter)
+
+  /**
+   * Delivers the failure of the raw call of [enqueueRaw] to the [callback].
+   */
+  protected open fun onRawFailure(exception: IOException, callback: Callback<R>) {
+    callback.onFailure(this, exception)
+  }
+
+  /**
+   * Performs the HTTP request and returns its converted response.
+   */
+  @Throws(IOException::class)
+  protected fun executeRaw(): RetrofitResponse<R> =
+    convert(
+      newRawCall()
+        .execute()
+    )
+
+  /**
+   * Enqueues the HTTP request and delivers its converted response to the [callback].
+   */
+  protected fun enqueueRaw(callback: Callback<R>) {
+    val call = try {
+      newRawCall()
+    } catch (exception: IOException) {
+      callback.onFailure(this, exception)
+      return
+    }
+
+    call.enqueue(object: okhttp3.Callback {
+
+      override fun onResponse(call: okhttp3.Call, response: okhttp3.Response) {
+        val parsed = try {
+          convert(response)
+        } catch (throwable: Throwable) {
+          callback.onFailure(this@DecoratedCall, throwable)
+          return
+        }
+        callback.onResponse(this@DecoratedCall, parsed)
+      }
+
+      override fun onFailure(call: okhttp3.Call, exception: IOException) {
+        onRawFailure(exception, callback)
+      }
+    })
+  }
+
+  // endregion Protected Methods
+
+  // region Private Methods
+
+  @Throws(IOException::class)
+  private fun newRawCall(): okhttp3.Call {
+    if (canceled) {
+      throw IOException("Canceled")
+    }
+
+    return callFactory.newCall(rawRequest())
+      .also {
+        rawCall = it
+        if (canceled) {
+          it.cancel()
+        }
+      }
+  }
+
+  // endregion Private Methods
+}
+
+private val JSON = "application/json; charset=UTF-8".toMediaType()
+
+/**
+ * Replaces the body of converted responses, which is already consumed.
+ */
+private class NoContentResponseBody(
+  private val contentType: MediaType?,
+  private val contentLength: Long
+):
+  ResponseBody() {
+
+  override fun contentType() = contentType
+
+  override fun contentLength() = contentLength
+
+  override fun source(): BufferedSource =
+    throw IllegalStateException("Cannot read raw response body of a converted body.")
+}
+
+/**
+ * Requests built from [RequestBuilder] bodies, kept as long as the [Invocation] tag of the raw
+ * request is. The tag is shared by all the copies of the raw request made by the decorators, so
+ * the query of a call is rendered only once.
+ */
+private val builtRequests = WeakHashMap<Invocation, Request>()
+
+/**
+ * Returns [Request] or built [RequestBuilder] body of the raw request, `null` if it has no such
+ * body. The builder is built only once per raw request, together with its body.
+ */
+internal fun okhttp3.Request.graphQLRequest(): Request? {
+  val invocation = tag(Invocation::class.java)
+    ?: return null
+  val body = invocation.arguments()
+    .firstOrNull { (it is Request) || (it is RequestBuilder) }
+  return when (body) {
+    is Request -> body
+    is RequestBuilder -> built(invocation, body)
+    else -> null
+  }
+}
+
+/**
+ * Returns [Request] or built [RequestBuilder] body of the call, `null` if it has no such body.
+ */
+internal fun Call<*>.graphQLRequest() = request().graphQLRequest()
+
+/**
+ * Returns request built from the [builder], shared with the body of the raw request if it is not
+ * replaced yet.
+ */
+private fun okhttp3.Request.built(invocation: Invocation, builder: RequestBuilder): Request {
+  synchronized(builtRequests) { builtRequests[invocation] }
+    ?.let { return it }
+
+  val request = (body as? GraphQLRequestBody)?.built?.value ?: builder.build()
+  return synchronized(builtRequests) { builtRequests.getOrPut(invocation) { request } }
+}
+
+/**
+ * Returns whether the [Request] or [RequestBuilder] body of the raw request is a subscription, the
+ * builder is not built to find out.
+ */
+internal fun okhttp3.Request.isSubscription() =
+  tag(Invocation::class.java)
+    ?.arguments()
+    ?.any {
+      when (it) {
+        is Request -> it.isSubscription
+        is RequestBuilder -> it.operation().type == Operation.Type.SUBSCRIPTION
+        else -> false
+      }
+    } == true
+
+/**
+ * Returns [RequestBuilder] body of the raw request, `null` if it has no such body.
+ */
+internal fun okhttp3.Request.requestBuilder() =
+  tag(Invocation::class.java)
+    ?.arguments()
+    ?.filterIsInstance<RequestBuilder>()
+    ?.firstOrNull()
+
+/**
+ * Returns successful response of the request with the given JSON body, e.g. to convert responses
+ * which do not come from HTTP.
+ */
+internal fun okhttp3.Request.jsonResponse(json: String): okhttp3.Response =
+  okhttp3.Response.Builder()
+    .request(this)
+    .protocol(Protocol.HTTP_1_1)
+    .code(200)
+    .message("OK")
+    .body(json.toResponseBody(JSON))
+    .build()
+
+/**
+ * Converts the raw response the same way Retrofit does.
+ */
+@Throws(IOException::class)
+internal fun <R> okhttp3.Response.toRetrofitResponse(
+  converter: Converter<ResponseBody, R>
+): RetrofitResponse<R> {
+  val rawBody = body!!
+  val response = newBuilder()
+    .body(NoContentResponseBody(rawBody.contentType(), rawBody.contentLength()))
+    .build()
+
+  val code = response.code
+  if (code < 200 || code >= 300) {
+    return rawBody.use {
+      RetrofitResponse.error(it.bytes().toResponseBody(it.contentType()), response)
+    }
+  }
+
+  if (code == 204 || code == 205) {
+    rawBody.close()
+    return RetrofitResponse.success(null, response)
+  }
+
+  return rawBody.use {
+    RetrofitResponse.success(converter.convert(it), response)
+  }
+}
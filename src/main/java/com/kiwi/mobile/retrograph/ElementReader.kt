@@ -0,0 +1,202 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+import com.google.gson.stream.*
+
+import com.kiwi.mobile.retrograph.exception.*
+import com.kiwi.mobile.retrograph.extension.*
+import com.kiwi.mobile.retrograph.model.Response
+
+import io.reactivex.*
+
+import okhttp3.*
+import okhttp3.ResponseBody.Companion.asResponseBody
+
+import okio.*
+
+import retrofit2.*
+
+import java.io.*
+
+/**
+ * Reads elements of the list at the [path] of the response `data` one by one from the open
+ * [response] body. Each element is read by the [adapter] straight from the JSON reader if it is
+ * given, otherwise it is copied on its own and converted by the [converter].
+ *
+ * `null` elements of the list are skipped. `errors` of the response are reported once all the
+ * elements are read.
+ */
+internal class ElementReader<T>(
+  private val response: okhttp3.Response,
+  private val path: List<String>,
+  private val converter: Converter<ResponseBody, T>,
+  private val adapter: TypeAdapter<T>?
+):
+  Closeable {
+
+  // region Private Types
+
+  private companion object {
+
+    private const val DATA = "data"
+
+    private const val ERRORS = "errors"
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val reader = JsonReader(response.body!!.charStream())
+
+  private val errors = mutableListOf<String>()
+
+  private var isStarted = false
+
+  /**
+   * Number of objects under the root object opened on the way to the list.
+   */
+  private var depth = 0
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  /**
+   * Emits the next non-null element or terminates the [emitter] when there are no more elements.
+   */
+  @Throws(IOException::class)
+  fun next(emitter: Emitter<T>) {
+    if (!isStarted) {
+      isStarted = true
+      if (!openList()) {
+        finish(emitter)
+        return
+      }
+    }
+
+    while (reader.hasNext()) {
+      // Flowables cannot emit nulls, so null elements of the list are skipped.
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull()
+        continue
+      }
+
+      emitter.onNext(
+        readElement() ?: throw JsonParseException("Element at ${reader.path} was read as null")
+      )
+      return
+    }
+
+    reader.endArray()
+    finish(emitter)
+  }
+
+  override fun close() {
+    response.close()
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  @Throws(IOException::class)
+  private fun readElement(): T? {
+    if (adapter != null) {
+      return adapter.read(reader)
+    }
+
+    val element = Buffer()
+    JsonWriter(element.outputStream().writer()).use { reader.copyValueTo(it) }
+    return converter.convert(element.asResponseBody(response.body!!.contentType(), element.size))
+  }
+
+  /**
+   * Moves the reader into the list, returns `false` if there is no list at the path.
+   */
+  private fun openList(): Boolean {
+    reader.beginObject()
+    while (reader.hasNext()) {
+      when (reader.nextName()) {
+        DATA -> return openPath()
+        ERRORS -> errors.addAll(readErrors())
+        else -> reader.skipValue()
+      }
+    }
+    return false
+  }
+
+  private fun openPath(): Boolean {
+    path.forEach { name ->
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        reader.skipValue()
+        return false
+      }
+
+      reader.beginObject()
+      depth++
+      if (!skipTo(name)) {
+        return false
+      }
+    }
+
+    if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+      reader.skipValue()
+      return false
+    }
+    reader.beginArray()
+    return true
+  }
+
+  private fun skipTo(name: String): Boolean {
+    while (reader.hasNext()) {
+      if (reader.nextName() == name) {
+        return true
+      }
+      reader.skipValue()
+    }
+    return false
+  }
+
+  /**
+   * Skips the rest of the response reading only its `errors`.
+   */
+  private fun finish(emitter: Emitter<T>) {
+    repeat(depth) {
+      while (reader.hasNext()) {
+        reader.nextName()
+        reader.skipValue()
+      }
+      reader.endObject()
+    }
+    depth = 0
+
+    while (reader.hasNext()) {
+      if (reader.nextName() == ERRORS) {
+        errors.addAll(readErrors())
+      } else {
+        reader.skipValue()
+      }
+    }
+    reader.endObject()
+
+    if (errors.isNotEmpty()) {
+      emitter.onError(GraphQLException(Response<Any>(errors = errors)))
+    } else {
+      emitter.onComplete()
+    }
+  }
+
+  private fun readErrors(): List<String> {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull()
+      return listOf()
+    }
+
+    return JsonParser().parse(reader)
+      .asJsonArray
+      .map { if (it.isJsonPrimitive) it.asString else it.toString() }
+  }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,88 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import okhttp3.*
+
+/**
+ * Sends query operations by HTTP GET with the query, variables and persisted query extension
+ * encoded in the URL, see [GraphQL.method].
+ *
+ * Requests whose URL would be longer than [maxUrlLength], mutations and subscriptions are sent
+ * by POST.
+ */
+internal class GetQueries(
+  private val maxUrlLength: Int
+):
+  CallDecorator {
+
+  // region Public Types
+
+  companion object {
+
+    /**
+     * Returns instance for the method with the given annotations, `null` if the method does not
+     * send queries by GET.
+     */
+    fun of(annotations: Array<Annotation>) =
+      annotations.filterIsInstance<GraphQL>()
+        .firstOrNull()
+        ?.takeIf { it.method == GraphQL.Method.GET }
+        ?.let { GetQueries(it.maxUrlLength) }
+  }
+
+  // endregion Public Types
+
+  // region Public Methods
+
+  override fun decorate(callFactory: okhttp3.Call.Factory, getQueries: GetQueries?) =
+    object: okhttp3.Call.Factory {
+      override fun newCall(request: okhttp3.Request): okhttp3.Call {
+        val graphQLRequest = request.graphQLRequest()
+          ?.takeIf { it.isQuery }
+          ?: return callFactory.newCall(request)
+        return PersistedQueryCall(request, graphQLRequest, callFactory, null, this@GetQueries)
+      }
+    }
+
+  /**
+   * Returns GET variant of the [original] HTTP request of the GraphQL [request], `null` if the
+   * request has to be sent by POST.
+   */
+  fun rewrite(
+    original: okhttp3.Request,
+    request: Request,
+    persistedQueryHash: String?,
+    includeQuery: Boolean
+  ): okhttp3.Request? {
+    if (!request.isQuery) {
+      return null
+    }
+
+    val url = original.url
+      .newBuilder()
+      .apply {
+        if (includeQuery) {
+          addQueryParameter("query", request.query)
+        }
+        if (request.variables.isNotEmpty()) {
+          addQueryParameter("variables", request.variablesJson())
+        }
+        if (persistedQueryHash != null) {
+          addQueryParameter("extensions", request.extensionsJson(persistedQueryHash))
+        }
+      }
+      .build()
+    if (url.toString().length > maxUrlLength) {
+      return null
+    }
+
+    return original.newBuilder()
+      .url(url)
+      .get()
+      .build()
+  }
+
+  // endregion Public Methods
+}
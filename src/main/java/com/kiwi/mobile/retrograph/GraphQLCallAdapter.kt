@@ -20,10 +20,15 @@ typealias GraphQLObservable = Observable<RetrofitResponse<GraphQLResponse<Any>>>
 internal class GraphQLCallAdapter<R>(
   private val responseType: Type,
   private val scheduler: Scheduler?,
+  private val isAsync: Boolean,
   private val isResult: Boolean,
   private val isBody: Boolean,
   private val isGraphQLResponse: Boolean,
-  private val rxType: RxType
+  private val rxType: RxType,
+  private val callDecorator: ((Call<R>) -> Call<R>)? = null,
+  private val deduplicator: RequestDeduplicator? = null,
+  private val streamer: ((Call<R>) -> Observable<RetrofitResponse<R>>?)? = null,
+  private val subscriptionBackpressureStrategy: BackpressureStrategy? = null
 ):
   CallAdapter<R, Any> {
 
@@ -32,15 +37,26 @@ internal class GraphQLCallAdapter<R>(
   override fun responseType() = responseType
 
   override fun adapt(call: Call<R>) =
-    GraphQLCallExecuteObservable(call)
+    (streamer?.invoke(call) ?: (callDecorator?.invoke(call) ?: call).toSharedObservable())
       .adapt()
       .applyScheduler()
-      .toTarget()
+      .toTarget(call)
 
   // endregion Public Methods
 
   // region Private Methods
 
+  private fun Call<R>.toSharedObservable() =
+    deduplicator?.deduplicate(this, responseType) { it.toObservable() }
+      ?: toObservable()
+
+  private fun Call<R>.toObservable(): Observable<RetrofitResponse<R>> =
+    if (isAsync) {
+      CallEnqueueObservable(this)
+    } else {
+      GraphQLCallExecuteObservable(this)
+    }
+
   @SuppressWarnings("unchecked")
   private fun Observable<RetrofitResponse<R>>.adapt() =
     when {
@@ -59,14 +75,23 @@ internal class GraphQLCallAdapter<R>(
       this
     }
 
-  private fun Observable<*>.toTarget(): Any =
+  private fun Observable<*>.toTarget(call: Call<R>): Any =
     when (rxType) {
-      RxType.FLOWABLE -> toFlowable(BackpressureStrategy.LATEST)
+      RxType.FLOWABLE -> toFlowable(backpressureStrategyOf(call))
       RxType.SINGLE -> singleOrError()
       RxType.MAYBE -> singleElement()
       RxType.COMPLETABLE -> ignoreElements()
       else -> RxJavaPlugins.onAssembly(this)
     }
 
+  /**
+   * Returns the [subscriptionBackpressureStrategy] for subscriptions, other flowables keep only the
+   * latest response.
+   */
+  private fun backpressureStrategyOf(call: Call<R>) =
+    subscriptionBackpressureStrategy
+      ?.takeIf { call.request().isSubscription() }
+      ?: BackpressureStrategy.LATEST
+
   // endregion Private Methods
 }
@@ -1,6 +1,9 @@
 package com.kiwi.mobile.retrograph
 
+import com.google.gson.*
+
 import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.cache.*
 import com.kiwi.mobile.retrograph.extension.*
 import com.kiwi.mobile.retrograph.model.*
 
@@ -9,16 +12,34 @@ import io.reactivex.*
 import okhttp3.*
 
 import retrofit2.*
+import retrofit2.Call
 import retrofit2.adapter.rxjava2.*
 
 import java.lang.reflect.*
+import java.util.concurrent.*
 
 import com.kiwi.mobile.retrograph.model.Response as GraphQLResponse
 
 import retrofit2.Response as RetrofitResponse
 
+/**
+ * Creates call adapters of [GraphQL] methods.
+ *
+ * Features are added by the `withX` copy methods and can be combined freely, e.g.
+ * `createAsync().withNormalizedCache(cache).withPersistedQueries()`. The requests pass through
+ * the normalized cache, batching, persisted queries and compression in this order, regardless of
+ * the order the features were added in.
+ */
 class GraphQLCallAdapterFactory private constructor(
-  private val scheduler: Scheduler?
+  private val scheduler: Scheduler?,
+  private val isAsync: Boolean,
+  private val normalizedCaching: NormalizedCaching? = null,
+  private val batcher: QueryBatcher? = null,
+  private val persistedQueries: PersistedQueries? = null,
+  private val deduplicator: RequestDeduplicator? = null,
+  private val subscriptionTransport: SubscriptionTransport? = null,
+  private val eventListener: GraphQLEventListener = GraphQLEventListener.NONE,
+  private val requestCompression: RequestCompression? = null
 ):
   CallAdapter.Factory() {
 
@@ -31,20 +52,202 @@ class GraphQLCallAdapterFactory private constructor(
      * scheduler by default.
      */
     @JvmStatic
-    fun create() = GraphQLCallAdapterFactory(null)
+    fun create() = GraphQLCallAdapterFactory(null, false)
+
+    /**
+     * Returns an instance which creates asynchronous observables enqueuing the calls on the OkHttp
+     * dispatcher, so no thread is blocked during the request. Applying [Observable.subscribeOn]
+     * has no effect on stream types created by this factory.
+     */
+    @JvmStatic
+    fun createAsync() = GraphQLCallAdapterFactory(null, true)
 
     /**
      * Returns an instance which creates synchronous observables that
      * [subscribe on][Observable.subscribeOn] `scheduler` by default.
      */
     @JvmStatic
-    fun createWithScheduler(scheduler: Scheduler) = GraphQLCallAdapterFactory(scheduler)
+    fun createWithScheduler(scheduler: Scheduler) =
+      GraphQLCallAdapterFactory(scheduler, false)
+
+    /**
+     * Returns a synchronous instance with persisted queries, see [withPersistedQueries].
+     * Observables [subscribe on][Observable.subscribeOn] `scheduler` by default if it is given.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun createWithPersistedQueries(scheduler: Scheduler? = null) =
+      GraphQLCallAdapterFactory(scheduler, false)
+        .withPersistedQueries()
+
+    /**
+     * Returns an asynchronous instance, see [createAsync], with persisted queries, see
+     * [withPersistedQueries].
+     */
+    @JvmStatic
+    fun createAsyncWithPersistedQueries() =
+      createAsync()
+        .withPersistedQueries()
+
+    /**
+     * Returns a synchronous instance with batching, see [withBatching]. Observables
+     * [subscribe on][Observable.subscribeOn] `scheduler` by default if it is given.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun createWithBatching(
+      window: Long = QueryBatcher.DEFAULT_WINDOW_MILLIS,
+      unit: TimeUnit = TimeUnit.MILLISECONDS,
+      maxBatchSize: Int = QueryBatcher.DEFAULT_MAX_BATCH_SIZE,
+      scheduler: Scheduler? = null
+    ) =
+      GraphQLCallAdapterFactory(scheduler, false)
+        .withBatching(window, unit, maxBatchSize)
+
+    /**
+     * Returns an asynchronous instance, see [createAsync], with batching, see [withBatching].
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun createAsyncWithBatching(
+      window: Long = QueryBatcher.DEFAULT_WINDOW_MILLIS,
+      unit: TimeUnit = TimeUnit.MILLISECONDS,
+      maxBatchSize: Int = QueryBatcher.DEFAULT_MAX_BATCH_SIZE
+    ) =
+      createAsync()
+        .withBatching(window, unit, maxBatchSize)
+
+    /**
+     * Returns a synchronous instance with deduplication, see [withDeduplication]. Observables
+     * [subscribe on][Observable.subscribeOn] `scheduler` by default if it is given.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun createWithDeduplication(scheduler: Scheduler? = null) =
+      GraphQLCallAdapterFactory(scheduler, false)
+        .withDeduplication()
+
+    /**
+     * Returns an asynchronous instance, see [createAsync], with deduplication, see
+     * [withDeduplication].
+     */
+    @JvmStatic
+    fun createAsyncWithDeduplication() =
+      createAsync()
+        .withDeduplication()
+
+    /**
+     * Returns a synchronous instance with the normalized [cache], see [withNormalizedCache].
+     * Observables [subscribe on][Observable.subscribeOn] `scheduler` by default if it is given.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun createWithNormalizedCache(cache: NormalizedCache, scheduler: Scheduler? = null) =
+      GraphQLCallAdapterFactory(scheduler, false)
+        .withNormalizedCache(cache)
+
+    /**
+     * Returns an asynchronous instance, see [createAsync], with the normalized [cache], see
+     * [withNormalizedCache].
+     */
+    @JvmStatic
+    fun createAsyncWithNormalizedCache(cache: NormalizedCache) =
+      createAsync()
+        .withNormalizedCache(cache)
+
+    /**
+     * Returns a synchronous instance with subscriptions over the [transport], see
+     * [withSubscriptions]. Observables [subscribe on][Observable.subscribeOn] `scheduler` by
+     * default if it is given.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun createWithSubscriptions(transport: SubscriptionTransport, scheduler: Scheduler? = null) =
+      GraphQLCallAdapterFactory(scheduler, false)
+        .withSubscriptions(transport)
   }
 
   // endregion Public Types
 
+  // region Private Properties
+
+  private val subscriptionBackpressureStrategy
+    get() = subscriptionTransport?.backpressureStrategy
+
+  /**
+   * Hashes of queries reported to the [eventListener].
+   */
+  private val queryHashes by lazy { PersistedQueries() }
+
+  private val isObserved
+    get() = eventListener !== GraphQLEventListener.NONE
+
+  // endregion Private Properties
+
   // region Public Methods
 
+  /**
+   * Returns copy of this factory which sends [Request] and [RequestBuilder] bodies as automatic
+   * persisted queries. Only the query hash is sent until the server asks for the full query.
+   */
+  fun withPersistedQueries() =
+    copy(persistedQueries = PersistedQueries())
+
+  /**
+   * Returns copy of this factory which sends [Request] and [RequestBuilder] bodies issued within
+   * the [window] to the same endpoint as a single HTTP request with JSON array body. Up to
+   * [maxBatchSize] requests are sent in one batch. The server must support batched requests and
+   * respond with JSON array of the responses.
+   *
+   * Synchronous calls block until their batch is answered, so they have to be issued from
+   * different threads, e.g. on a scheduler, to be batched together.
+   */
+  @JvmOverloads
+  fun withBatching(
+    window: Long = QueryBatcher.DEFAULT_WINDOW_MILLIS,
+    unit: TimeUnit = TimeUnit.MILLISECONDS,
+    maxBatchSize: Int = QueryBatcher.DEFAULT_MAX_BATCH_SIZE
+  ) =
+    copy(batcher = QueryBatcher(unit.toMillis(window), maxBatchSize))
+
+  /**
+   * Returns copy of this factory which shares a single HTTP call among identical queries in
+   * flight. The shared call is canceled only once all its subscribers are disposed.
+   */
+  fun withDeduplication() =
+    copy(deduplicator = RequestDeduplicator())
+
+  /**
+   * Returns copy of this factory which answers queries built by [RequestBuilder] from the
+   * normalized [cache] when all their fields are cached. Responses of the other queries are
+   * stored in the cache. Objects are shared among queries only when they select the fields the
+   * cache keys them by, `__typename` and `id` by default.
+   */
+  fun withNormalizedCache(cache: NormalizedCache) =
+    copy(normalizedCaching = NormalizedCaching(cache))
+
+  /**
+   * Returns copy of this factory which runs subscriptions over WebSocket of the [transport]
+   * instead of HTTP requests. Each subscription emits all its payloads until it is disposed or
+   * completed by the server. Only methods returning [Observable] or [Flowable] run subscriptions.
+   */
+  fun withSubscriptions(transport: SubscriptionTransport) =
+    copy(subscriptionTransport = transport)
+
+  /**
+   * Returns copy of this factory reporting phases of the calls to the [listener]. Factories
+   * without a listener do not observe the calls at all.
+   */
+  fun withEventListener(listener: GraphQLEventListener) =
+    copy(eventListener = listener)
+
+  /**
+   * Returns copy of this factory compressing request bodies by the [compression], except of
+   * methods annotated by `@GraphQL(compressRequests = false)`.
+   */
+  fun withRequestCompression(compression: RequestCompression) =
+    copy(requestCompression = compression)
+
   override fun get(
     returnType: Type,
     annotations: Array<Annotation>,
@@ -54,12 +257,21 @@ class GraphQLCallAdapterFactory private constructor(
       return null
     }
 
+    val elementPath = annotations.filterIsInstance<ElementPath>()
+      .firstOrNull()
+    if (elementPath != null) {
+      return elementsAdapterOf(returnType, elementPath, annotations, retrofit)
+    }
+
     val rawType = returnType.rawType
     if (rawType == Completable::class.java) {
       // Completable is not parameterized (which is what the rest of this method deals with) so it
       // can only be created with a single configuration.
       return GraphQLCallAdapter<Any>(
-        ResponseBody::class.java, scheduler, false, true, false, RxType.COMPLETABLE
+        ResponseBody::class.java, scheduler, isAsync, false, true, false, RxType.COMPLETABLE,
+        decoratorOf(ResponseBody::class.java, annotations, retrofit), deduplicator,
+        streamerOf(ResponseBody::class.java, RxType.COMPLETABLE, annotations, retrofit),
+        subscriptionBackpressureStrategy
       )
     }
 
@@ -132,7 +344,10 @@ class GraphQLCallAdapterFactory private constructor(
     }
 
     return GraphQLCallAdapter<Any>(
-      responseType, scheduler, isResult, isBody, isGraphQLResponse, rawType.rxType
+      responseType, scheduler, isAsync, isResult, isBody, isGraphQLResponse, rawType.rxType,
+      decoratorOf(responseType, annotations, retrofit), deduplicator,
+      streamerOf(responseType, rawType.rxType, annotations, retrofit),
+      subscriptionBackpressureStrategy
     )
   }
 
@@ -140,6 +355,158 @@ class GraphQLCallAdapterFactory private constructor(
 
   // region Private Methods
 
+  private fun copy(
+    normalizedCaching: NormalizedCaching? = this.normalizedCaching,
+    batcher: QueryBatcher? = this.batcher,
+    persistedQueries: PersistedQueries? = this.persistedQueries,
+    deduplicator: RequestDeduplicator? = this.deduplicator,
+    subscriptionTransport: SubscriptionTransport? = this.subscriptionTransport,
+    eventListener: GraphQLEventListener = this.eventListener,
+    requestCompression: RequestCompression? = this.requestCompression
+  ) =
+    GraphQLCallAdapterFactory(
+      scheduler, isAsync, normalizedCaching, batcher, persistedQueries, deduplicator,
+      subscriptionTransport, eventListener, requestCompression
+    )
+
+  private fun decoratorOf(
+    responseType: Type,
+    annotations: Array<Annotation>,
+    retrofit: Retrofit
+  ): ((Call<Any>) -> Call<Any>)? {
+    val callFactory = decoratedCallFactoryOf(annotations, retrofit)
+      ?: return null
+    val converter = retrofit.responseBodyConverter<Any>(responseType, annotations)
+    return if (isObserved) {
+      { call -> ObservedCall(call, callFactory, converter, eventListener, queryHashes) }
+    } else {
+      { call -> DecoratedCall(call, callFactory, converter) }
+    }
+  }
+
+  /**
+   * Returns factory of the raw calls passing through all the decorators of the method with the
+   * given [annotations], `null` if there are none. [isStreamed] responses are neither cached nor
+   * batched.
+   */
+  private fun decoratedCallFactoryOf(
+    annotations: Array<Annotation>,
+    retrofit: Retrofit,
+    isStreamed: Boolean = false
+  ): okhttp3.Call.Factory? {
+    val getQueries = GetQueries.of(annotations)
+    val compression = compressionOf(annotations)
+    // Streamed responses are not read as a whole, so they can be neither cached nor batched.
+    val decorators = listOfNotNull(
+      normalizedCaching?.takeUnless { isStreamed }, batcher?.takeUnless { isStreamed },
+      persistedQueries ?: getQueries
+    )
+    if (decorators.isEmpty() && (compression == null) && !isObserved) {
+      return null
+    }
+
+    return decorators.foldRight(callFactoryOf(compression, retrofit)) { decorator, callFactory ->
+      decorator.decorate(callFactory, getQueries)
+    }
+  }
+
+  /**
+   * Returns function streaming responses of subscriptions over the [subscriptionTransport] and
+   * of [IncrementalDelivery] methods, `null` if there are none.
+   */
+  private fun streamerOf(
+    responseType: Type,
+    rxType: RxType,
+    annotations: Array<Annotation>,
+    retrofit: Retrofit
+  ): ((Call<Any>) -> Observable<RetrofitResponse<Any>>?)? {
+    // Only streams can emit the payloads of subscriptions.
+    val isStream = (rxType == RxType.OBSERVABLE) || (rxType == RxType.FLOWABLE)
+    val transport = subscriptionTransport
+      ?.takeIf { isStream }
+    val isIncremental = annotations.any { it is IncrementalDelivery }
+    if ((transport == null) && !isIncremental) {
+      return null
+    }
+
+    val converter = retrofit.responseBodyConverter<Any>(responseType, annotations)
+    val incrementalResponses = IncrementalResponses(
+      decoratedCallFactoryOf(annotations, retrofit, isStreamed = true) ?: retrofit.callFactory(),
+      converter, isAsync
+    )
+    return { call ->
+      val httpRequest = call.request()
+      when {
+        (transport != null) && httpRequest.isSubscription() -> {
+          transport.subscribe(httpRequest, call.graphQLRequest()!!)
+            .map { httpRequest.jsonResponse(it.toString()).toRetrofitResponse(converter) }
+        }
+        isIncremental ->
+          incrementalResponses.of(call.request())
+            .let { if (isStream) it else it.takeLast(1) }
+        else ->
+          null
+      }
+    }
+  }
+
+  private fun elementsAdapterOf(
+    returnType: Type,
+    elementPath: ElementPath,
+    annotations: Array<Annotation>,
+    retrofit: Retrofit
+  ): CallAdapter<*, *> {
+    if (returnType.rawType != Flowable::class.java) {
+      throw IllegalStateException("@ElementPath method must return Flowable<Foo>")
+    }
+    if (!returnType.isParameterized || returnType.isWildcardGeneric) {
+      throwRxTypeMustBeParametrized(RxType.FLOWABLE)
+    }
+
+    // Elements are converted as standalone JSON values, not as GraphQL responses.
+    val elementAnnotations = annotations.filter { it !is GraphQL }
+      .toTypedArray()
+    val elementType = returnType.parameterUpperBound!!
+    // Streaming converter factories read the elements straight from the response.
+    @Suppress("UNCHECKED_CAST")
+    val adapter = retrofit.converterFactories()
+      .filterIsInstance<GraphQLConverterFactory>()
+      .firstOrNull()
+      ?.adapterOf(elementType) as TypeAdapter<Any>?
+    val converter = if (adapter != null) {
+      Converter<ResponseBody, Any> { body -> body.use { adapter.fromJson(it.charStream()) } }
+    } else {
+      retrofit.responseBodyConverter<Any>(elementType, elementAnnotations)
+    }
+    return GraphQLElementsCallAdapter(
+      elementPath.path.split('.'),
+      decoratedCallFactoryOf(annotations, retrofit, isStreamed = true) ?: retrofit.callFactory(),
+      converter, adapter, scheduler
+    )
+  }
+
+  /**
+   * Returns the [requestCompression] unless the method with the given [annotations] disables it.
+   */
+  private fun compressionOf(annotations: Array<Annotation>) =
+    requestCompression?.takeIf {
+      annotations.filterIsInstance<GraphQL>()
+        .all { it.compressRequests }
+    }
+
+  /**
+   * Returns factory of the calls sent to the network, the request body sizes are reported to the
+   * listener after compression.
+   */
+  private fun callFactoryOf(
+    compression: RequestCompression?,
+    retrofit: Retrofit
+  ): okhttp3.Call.Factory {
+    val callFactory = retrofit.callFactory()
+      .let { if (isObserved) ObservedCall.callFactoryOf(it) else it }
+    return compression?.callFactoryOf(callFactory) ?: callFactory
+  }
+
   private fun isGraphQLRequest(annotations: Array<Annotation>) = annotations
     .find { it is GraphQL } != null
 
@@ -1,7 +1,13 @@
 package com.kiwi.mobile.retrograph
 
+import com.google.gson.*
+import com.google.gson.reflect.*
+import com.google.gson.stream.*
+
 import com.kiwi.mobile.retrograph.annotation.*
 import com.kiwi.mobile.retrograph.exception.*
+import com.kiwi.mobile.retrograph.extension.*
+import com.kiwi.mobile.retrograph.model.Request
 import com.kiwi.mobile.retrograph.model.Response
 
 import okhttp3.*
@@ -11,7 +17,10 @@ import retrofit2.*
 import java.io.*
 import java.lang.reflect.*
 
-class GraphQLConverterFactory:
+class GraphQLConverterFactory private constructor(
+  private val gson: Gson?,
+  private val chunkedRequestBodies: Boolean = false
+):
   Converter.Factory() {
 
   // region Public Types
@@ -19,7 +28,16 @@ class GraphQLConverterFactory:
   companion object {
 
     @JvmStatic
-    fun create() = GraphQLConverterFactory()
+    fun create() = GraphQLConverterFactory(null)
+
+    /**
+     * Returns an instance which decodes response bodies of [GraphQL] methods by itself. The `data`
+     * are read by [gson] straight into the response type, so the next converter is not needed.
+     * The [Gson] shared by request builders is used by default.
+     */
+    @JvmStatic
+    @JvmOverloads
+    fun createStreaming(gson: Gson = RequestBuilder.DEFAULT_GSON) = GraphQLConverterFactory(gson)
   }
 
   // endregion Public Types
@@ -48,10 +66,130 @@ class GraphQLConverterFactory:
     }
   }
 
+  /**
+   * Reads `data` straight into the data type and `errors` only if present. Other top-level keys are
+   * skipped and the [result] is made of the two, so no [Response] wrapper is built for successful
+   * responses unless the wrapper is the result.
+   */
+  internal class StreamingResponseConverter<T, R>(
+    private val gson: Gson,
+    private val adapter: TypeAdapter<T>,
+    private val result: (data: T?, errors: List<String>) -> R
+  ):
+    Converter<ResponseBody, R> {
+
+    @Throws(IOException::class)
+    override fun convert(responseBody: ResponseBody): R =
+      responseBody.use { body ->
+        val reader = gson.newJsonReader(body.charStream())
+        var data: T? = null
+        var errors = listOf<String>()
+
+        reader.beginObject()
+        while (reader.hasNext()) {
+          when (reader.nextName()) {
+            "data" -> data = adapter.read(reader)
+            "errors" -> errors = reader.readErrors()
+            else -> reader.skipValue()
+          }
+        }
+        reader.endObject()
+
+        result(data, errors)
+      }
+
+    /**
+     * Converts response already parsed into the [tree], e.g. merged from incremental parts,
+     * without serializing it again.
+     */
+    fun convert(tree: JsonObject): R {
+      val data = tree["data"]?.let { adapter.fromJsonTree(it) }
+      val errors = (tree["errors"] as? JsonArray)
+        ?.map { if (it.isJsonPrimitive) it.asString else it.toString() }
+        .orEmpty()
+      return result(data, errors)
+    }
+
+    private fun JsonReader.readErrors(): List<String> {
+      if (peek() == JsonToken.NULL) {
+        nextNull()
+        return listOf()
+      }
+
+      val errors = mutableListOf<String>()
+      beginArray()
+      while (hasNext()) {
+        val error = JsonParser().parse(this)
+        errors.add(if (error.isJsonPrimitive) error.asString else error.toString())
+      }
+      endArray()
+      return errors
+    }
+  }
+
+  /**
+   * Builds the request once for its length and the decorators, or renders it straight into the
+   * body if [isChunked] and no decorator has built it.
+   */
+  private class RequestBuilderConverter(
+    private val isChunked: Boolean
+  ):
+    Converter<RequestBuilder, RequestBody> {
+
+    override fun convert(builder: RequestBuilder): RequestBody {
+      val built = lazy(builder::build)
+      if (!isChunked) {
+        return GraphQLRequestBody({ built.value.jsonLength() }, built) { built.value.writeTo(it) }
+      }
+
+      return GraphQLRequestBody(built = built) {
+        if (built.isInitialized()) built.value.writeTo(it) else builder.writeTo(it)
+      }
+    }
+  }
+
+  private object RequestConverter:
+    Converter<Request, RequestBody> {
+
+    override fun convert(request: Request): RequestBody =
+      GraphQLRequestBody({ request.jsonLength() }) { request.writeTo(it) }
+  }
+
   // endregion Private Types
 
   // region Public Methods
 
+  /**
+   * Returns a copy which renders [RequestBuilder] bodies straight into the HTTP body without
+   * building the query string first, unless a decorator needs the built request. The length of
+   * such bodies is not known, so they are sent with `Transfer-Encoding: chunked`, which some
+   * gateways and proxies do not accept.
+   */
+  fun withChunkedRequestBodies() = GraphQLConverterFactory(gson, chunkedRequestBodies = true)
+
+  /**
+   * Streams [RequestBuilder] and [Request] bodies of [GraphQL] methods directly into the HTTP body
+   * with their `Content-Length`.
+   */
+  override fun requestBodyConverter(
+    type: Type,
+    parameterAnnotations: Array<Annotation>,
+    methodAnnotations: Array<Annotation>,
+    retrofit: Retrofit
+  ): Converter<*, RequestBody>? {
+    if (!canHandle(methodAnnotations)) {
+      return null
+    }
+
+    val rawType = type.rawType
+    return when {
+      rawType is Class<*> && RequestBuilder::class.java.isAssignableFrom(rawType) ->
+        RequestBuilderConverter(chunkedRequestBodies)
+      rawType == Request::class.java -> RequestConverter
+      else -> null
+    }
+  }
+
   override fun responseBodyConverter(
     type: Type,
     annotations: Array<Annotation>,
@@ -61,6 +199,32 @@ class GraphQLConverterFactory:
       return null
     }
 
+    if (type == ResponseBody::class.java) {
+      return null
+    }
+
+    // Already unwrapped by GraphQLCallAdapterFactory or not unwrapped at all, so only the streaming
+    // instance reads the wrapper.
+    if (type.rawType == Response::class.java) {
+      val dataType = (type as? ParameterizedType)?.actualTypeArguments?.firstOrNull()
+      if ((gson == null) || (dataType == null)) {
+        return null
+      }
+
+      return StreamingResponseConverter(gson, gson.typeAdapterOf(dataType)) { data, errors ->
+        Response(data, errors = errors)
+      }
+    }
+
+    if (gson != null) {
+      return StreamingResponseConverter(gson, gson.typeAdapterOf(type)) { data, errors ->
+        if (errors.isNotEmpty() || data == null) {
+          throw GraphQLException(Response(data, errors = errors))
+        }
+        data
+      }
+    }
+
     val responseType = object: ParameterizedType {
       override fun getActualTypeArguments() = arrayOf(type)
       override fun getOwnerType() = null
@@ -76,8 +240,21 @@ class GraphQLConverterFactory:
 
   // endregion Public Methods
 
+  // region Internal Methods
+
+  /**
+   * Returns adapter reading values of the [type] straight from a JSON reader, `null` unless the
+   * factory is streaming.
+   */
+  internal fun adapterOf(type: Type): TypeAdapter<*>? = gson?.getAdapter(TypeToken.get(type))
+
+  // endregion Internal Methods
+
   // region Private Methods
 
+  @Suppress("UNCHECKED_CAST")
+  private fun Gson.typeAdapterOf(type: Type) = getAdapter(TypeToken.get(type)) as TypeAdapter<Any>
+
   private fun canHandle(annotations: Array<Annotation>) =
     annotations.find { it is GraphQL } != null
 
@@ -0,0 +1,62 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import io.reactivex.*
+import io.reactivex.functions.*
+
+import okhttp3.*
+
+import retrofit2.*
+import retrofit2.Call
+
+import java.util.concurrent.*
+
+/**
+ * Adapts calls of [ElementPath][com.kiwi.mobile.retrograph.annotation.ElementPath] methods into
+ * flowables of the list elements at the [path] of the response `data`.
+ *
+ * The HTTP request is performed by the [callFactory] on subscription, the response body stays
+ * open and each element is read only when it is requested, so slow consumers hold the
+ * connection instead of buffering the whole list. The body is closed on completion or
+ * cancellation. Elements are read by the [adapter] if it is given, see [ElementReader].
+ *
+ * As the elements are pulled by the subscriber, the request is executed on the subscribing thread,
+ * or on the [scheduler] if it is given, even by asynchronous factories.
+ */
+internal class GraphQLElementsCallAdapter<T>(
+  private val path: List<String>,
+  private val callFactory: okhttp3.Call.Factory,
+  private val converter: Converter<ResponseBody, T>,
+  private val adapter: TypeAdapter<T>?,
+  private val scheduler: Scheduler?
+):
+  CallAdapter<ResponseBody, Flowable<T>> {
+
+  // region Public Methods
+
+  override fun responseType() = ResponseBody::class.java
+
+  override fun adapt(call: Call<ResponseBody>): Flowable<T> =
+    Flowable.generate<T, ElementReader<T>>(
+      Callable { open(call.request()) },
+      BiConsumer { reader, emitter -> reader.next(emitter) },
+      Consumer { it.close() }
+    )
+      .let { if (scheduler != null) it.subscribeOn(scheduler) else it }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun open(request: okhttp3.Request): ElementReader<T> {
+    val response = callFactory.newCall(request)
+      .execute()
+    if (!response.isSuccessful) {
+      throw HttpException(response.toRetrofitResponse(converter))
+    }
+    return ElementReader(response, path, converter, adapter)
+  }
+
+  // endregion Private Methods
+}
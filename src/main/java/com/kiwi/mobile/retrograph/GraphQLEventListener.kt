@@ -0,0 +1,116 @@
+package com.kiwi.mobile.retrograph
+
+import retrofit2.*
+
+import java.io.*
+
+/**
+ * Listener of phases of calls of [GraphQL][com.kiwi.mobile.retrograph.annotation.GraphQL]
+ * methods, e.g. to measure where the time of a call goes, see
+ * [GraphQLCallAdapterFactory.withEventListener].
+ *
+ * Callbacks after [requestBuildEnd] carry the operation name, empty for anonymous operations, and
+ * hex encoded SHA-256 hash of the query, which is the same as the persisted query hash. All the
+ * callbacks are invoked on the thread of the call and should return quickly.
+ *
+ * Calls of subscriptions, incremental delivery and element streaming methods are not observed.
+ */
+abstract class GraphQLEventListener {
+
+  // region Public Types
+
+  companion object {
+
+    /**
+     * Listener ignoring all events. Calls of factories without any listener are not observed at
+     * all.
+     */
+    @JvmField
+    val NONE: GraphQLEventListener = object: GraphQLEventListener() {}
+  }
+
+  // endregion Public Types
+
+  // region Public Methods
+
+  /**
+   * Invoked before the query of the [call] is built.
+   */
+  open fun requestBuildStart(call: Call<*>) {}
+
+  /**
+   * Invoked after the query of the [call] is built, with the length of the query text and the
+   * total length of the variable values JSON in characters.
+   */
+  open fun requestBuildEnd(
+    call: Call<*>,
+    operationName: String,
+    queryHash: String,
+    querySize: Int,
+    variablesSize: Int
+  ) {
+  }
+
+  /**
+   * Invoked before the request of the [call] is sent.
+   */
+  open fun networkStart(call: Call<*>, operationName: String, queryHash: String) {}
+
+  /**
+   * Invoked after the request body of the [call] is written, with the number of bytes written as
+   * they are sent, i.e. after compression. Not invoked for requests without body, e.g. GET
+   * queries, and for batched calls.
+   */
+  open fun requestBodyEnd(
+    call: Call<*>,
+    operationName: String,
+    queryHash: String,
+    byteCount: Long
+  ) {
+  }
+
+  /**
+   * Invoked when the response headers of the [call] are received, whatever the status.
+   */
+  open fun networkEnd(call: Call<*>, operationName: String, queryHash: String) {}
+
+  /**
+   * Invoked before the response body of the [call] is decoded.
+   */
+  open fun parseStart(call: Call<*>, operationName: String, queryHash: String) {}
+
+  /**
+   * Invoked after the response body of the [call] is decoded, with the number of bytes read from
+   * the body.
+   */
+  open fun parseEnd(call: Call<*>, operationName: String, queryHash: String, byteCount: Long) {}
+
+  /**
+   * Invoked when the response of the [call] contains GraphQL [errors].
+   */
+  open fun graphQLErrors(
+    call: Call<*>,
+    operationName: String,
+    queryHash: String,
+    errors: List<String>
+  ) {
+  }
+
+  /**
+   * Invoked when the [call] fails by the [exception].
+   */
+  open fun callFailed(
+    call: Call<*>,
+    operationName: String,
+    queryHash: String,
+    exception: IOException
+  ) {
+  }
+
+  /**
+   * Invoked when the [call] is canceled, e.g. because its observable is disposed.
+   */
+  open fun callDisposed(call: Call<*>, operationName: String, queryHash: String) {}
+
+  // endregion Public Methods
+}
@@ -0,0 +1,56 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.model.Request
+
+import okhttp3.*
+import okhttp3.MediaType.Companion.toMediaType
+
+import okio.*
+
+import java.io.*
+
+/**
+ * Request body writing the GraphQL request JSON directly into the sink as UTF-8.
+ *
+ * The body is written again from the [write] function on every [writeTo], so it can be retried
+ * and logged without being buffered. Its length is computed once by the [length] function, bodies
+ * without it are sent chunked. The [built] request of a [RequestBuilder] body is shared with the
+ * decorators, see [graphQLRequest].
+ */
+internal class GraphQLRequestBody(
+  length: () -> Long = { -1L },
+  val built: Lazy<Request>? = null,
+  private val write: (Writer) -> Unit
+):
+  RequestBody() {
+
+  // region Private Types
+
+  private companion object {
+
+    val MEDIA_TYPE = "application/json; charset=UTF-8".toMediaType()
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val length by lazy(length)
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  override fun contentType() = MEDIA_TYPE
+
+  override fun contentLength() = length
+
+  @Throws(IOException::class)
+  override fun writeTo(sink: BufferedSink) {
+    val writer = OutputStreamWriter(sink.outputStream(), Charsets.UTF_8)
+    write(writer)
+    writer.flush()
+  }
+
+  // endregion Public Methods
+}
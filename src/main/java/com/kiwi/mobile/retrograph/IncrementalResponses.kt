@@ -0,0 +1,319 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.annotation.*
+
+import io.reactivex.*
+
+import okhttp3.*
+
+import okio.*
+import okio.ByteString.Companion.encodeUtf8
+
+import retrofit2.*
+
+import java.io.*
+
+import retrofit2.Response as RetrofitResponse
+
+/**
+ * Performs requests of [IncrementalDelivery] methods and emits the merged response after each part
+ * of the `multipart/mixed` response, as soon as the part is received.
+ *
+ * Parts in both the `incremental` array format and the older format with `path` at the top level
+ * are merged. Responses which are not multipart are emitted as they are. Asynchronous requests are
+ * enqueued and their parts are read on the thread of the [callFactory].
+ *
+ * The merged response is converted straight from its JSON tree if the [converter] is the streaming
+ * one of [GraphQLConverterFactory]. Other converters get it serialized again after every part, so
+ * responses of many parts take time quadratic in their size.
+ */
+internal class IncrementalResponses<R>(
+  private val callFactory: okhttp3.Call.Factory,
+  private val converter: Converter<ResponseBody, R>,
+  private val isAsync: Boolean
+) {
+
+  // region Private Types
+
+  private companion object {
+
+    private const val ACCEPT = "multipart/mixed; deferSpec=20220824, application/json"
+
+    private const val DEFAULT_BOUNDARY = "-"
+  }
+
+  /**
+   * Reads bodies of the multipart parts one by one, each only once it is complete.
+   */
+  private class MultipartParts(
+    private val source: BufferedSource,
+    boundary: String
+  ) {
+
+    // region Private Properties
+
+    private val opening = "--$boundary"
+
+    private val delimiter = "\n--$boundary".encodeUtf8()
+
+    private var isStarted = false
+
+    // endregion Private Properties
+
+    // region Public Methods
+
+    /**
+     * Returns body of the next part, `null` after the last one. The line ending the preceding
+     * delimiter is read only now, as servers often send it together with the next part.
+     */
+    @Throws(IOException::class)
+    fun next(): String? {
+      val hasPart = if (isStarted) skipDelimiterLine() else skipOpening()
+      isStarted = true
+      if (!hasPart || !skipHeaders()) {
+        return null
+      }
+
+      val end = source.indexOf(delimiter)
+      if (end == -1L) {
+        return null
+      }
+
+      val body = source.readUtf8(end)
+      source.skip(delimiter.size.toLong())
+      return body.trimEnd()
+    }
+
+    // endregion Public Methods
+
+    // region Private Methods
+
+    private fun skipOpening(): Boolean {
+      while (true) {
+        val line = source.readUtf8Line()
+          ?: return false
+        if (line.startsWith(opening)) {
+          return !line.removePrefix(opening).startsWith("--")
+        }
+      }
+    }
+
+    private fun skipHeaders(): Boolean {
+      while (true) {
+        val line = source.readUtf8Line()
+          ?: return false
+        if (line.isBlank()) {
+          return true
+        }
+      }
+    }
+
+    /**
+     * Returns `false` if the skipped delimiter closes the multipart body.
+     */
+    private fun skipDelimiterLine() =
+      source.readUtf8Line()
+        ?.startsWith("--") == false
+
+    // endregion Private Methods
+  }
+
+  /**
+   * Response merged from the initial part and the incremental parts delivered so far.
+   */
+  private class MergedResponse {
+
+    // region Public Properties
+
+    var hasNext = true
+      private set
+
+    // endregion Public Properties
+
+    // region Private Properties
+
+    private val response = JsonObject()
+
+    // endregion Private Properties
+
+    // region Public Methods
+
+    fun merge(part: JsonObject) {
+      hasNext = part["hasNext"]
+        ?.takeIf { it.isJsonPrimitive }
+        ?.asBoolean == true
+
+      val incremental = part["incremental"]
+      when {
+        incremental != null && incremental.isJsonArray ->
+          incremental.asJsonArray.forEach { mergeIncrement(it.asJsonObject) }
+        part.has("path") ->
+          mergeIncrement(part)
+        else -> {
+          part["data"]?.let { response.add("data", it) }
+          addErrors(part)
+        }
+      }
+    }
+
+    /**
+     * Returns the merged JSON tree, it is changed by the following merges.
+     */
+    fun toJsonObject() = response
+
+    override fun toString() = response.toString()
+
+    // endregion Public Methods
+
+    // region Private Methods
+
+    private fun mergeIncrement(increment: JsonObject) {
+      val path = increment["path"]
+        ?.takeIf { it.isJsonArray }
+        ?.asJsonArray
+        ?.toList()
+        .orEmpty()
+
+      val data = increment["data"]
+      if (data != null && data.isJsonObject) {
+        (elementAt(path) as? JsonObject)?.let { mergeObject(it, data.asJsonObject) }
+      }
+
+      // Path of streamed items points to the index of the first one.
+      val items = increment["items"]
+      if (items != null && items.isJsonArray) {
+        (elementAt(path.dropLast(1)) as? JsonArray)?.addAll(items.asJsonArray)
+      }
+
+      addErrors(increment)
+    }
+
+    private fun elementAt(path: List<JsonElement>) =
+      path.fold(response["data"] as JsonElement?) { element, key ->
+        when {
+          element is JsonObject ->
+            element[key.asString]
+          element is JsonArray && key.asJsonPrimitive.isNumber ->
+            element.takeIf { key.asInt < it.size() }?.get(key.asInt)
+          else ->
+            null
+        }
+      }
+
+    private fun mergeObject(target: JsonObject, source: JsonObject) {
+      source.entrySet()
+        .forEach { (key, value) ->
+          val existing = target[key]
+          if (existing is JsonObject && value is JsonObject) {
+            mergeObject(existing, value)
+          } else {
+            target.add(key, value)
+          }
+        }
+    }
+
+    private fun addErrors(part: JsonObject) {
+      val errors = part["errors"]
+      if (errors == null || !errors.isJsonArray) {
+        return
+      }
+
+      (response["errors"] as? JsonArray ?: JsonArray().also { response.add("errors", it) })
+        .addAll(errors.asJsonArray)
+    }
+
+    // endregion Private Methods
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  @Suppress("UNCHECKED_CAST")
+  private val treeConverter = converter as? GraphQLConverterFactory.StreamingResponseConverter<*, R>
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  /**
+   * Returns observable performing the [request] on subscription and emitting snapshots of its
+   * response, the HTTP call is canceled on disposal.
+   */
+  fun of(request: okhttp3.Request): Observable<RetrofitResponse<R>> =
+    Observable.create { emitter ->
+      val call = callFactory.newCall(
+        request.newBuilder()
+          .header("Accept", ACCEPT)
+          .build()
+      )
+      emitter.setCancellable { call.cancel() }
+
+      if (!isAsync) {
+        emitAll({ call.execute() }, emitter)
+        return@create
+      }
+
+      call.enqueue(object: okhttp3.Callback {
+
+        override fun onResponse(call: okhttp3.Call, response: okhttp3.Response) {
+          emitAll({ response }, emitter)
+        }
+
+        override fun onFailure(call: okhttp3.Call, exception: IOException) {
+          emitter.tryOnError(exception)
+        }
+      })
+    }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun emitAll(
+    response: () -> okhttp3.Response,
+    emitter: ObservableEmitter<RetrofitResponse<R>>
+  ) {
+    try {
+      response()
+        .use { emit(it, emitter) }
+      emitter.onComplete()
+    } catch (throwable: Throwable) {
+      emitter.tryOnError(throwable)
+    }
+  }
+
+  @Throws(IOException::class)
+  private fun emit(response: okhttp3.Response, emitter: ObservableEmitter<RetrofitResponse<R>>) {
+    val contentType = response.body?.contentType()
+    if (!response.isSuccessful || contentType == null || contentType.subtype != "mixed") {
+      emitter.onNext(response.toRetrofitResponse(converter))
+      return
+    }
+
+    val boundary = contentType.parameter("boundary") ?: DEFAULT_BOUNDARY
+    val parts = MultipartParts(response.body!!.source(), boundary)
+    val merged = MergedResponse()
+    while (merged.hasNext && !emitter.isDisposed) {
+      val part = parts.next()
+        ?: return
+      merged.merge(JsonParser().parse(part).asJsonObject)
+      emitter.onNext(responseOf(response.request, merged))
+    }
+  }
+
+  @Throws(IOException::class)
+  private fun responseOf(request: okhttp3.Request, merged: MergedResponse): RetrofitResponse<R> {
+    val treeConverter = treeConverter
+      ?: return request.jsonResponse(merged.toString()).toRetrofitResponse(converter)
+
+    // The body is left empty, the merged tree is converted instead of it.
+    val tree = merged.toJsonObject()
+    return request.jsonResponse("")
+      .toRetrofitResponse(Converter<ResponseBody, R> { treeConverter.convert(tree) })
+  }
+
+  // endregion Private Methods
+}
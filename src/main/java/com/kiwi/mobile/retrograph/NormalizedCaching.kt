@@ -0,0 +1,35 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.cache.*
+import com.kiwi.mobile.retrograph.model.*
+
+import okhttp3.*
+
+/**
+ * Answers queries from the normalized [cache] when possible and stores responses of the others.
+ *
+ * Only query operations built by [RequestBuilder] are cached, as the cache needs their selection
+ * sets. Builders with manually added variables are not cached, their arguments may refer to the
+ * variables.
+ */
+internal class NormalizedCaching(
+  private val cache: NormalizedCache
+):
+  CallDecorator {
+
+  // region Public Methods
+
+  override fun decorate(callFactory: okhttp3.Call.Factory, getQueries: GetQueries?) =
+    object: okhttp3.Call.Factory {
+      override fun newCall(request: okhttp3.Request): okhttp3.Call {
+        val operation = request.requestBuilder()
+          ?.takeIf { it.variables.isEmpty() }
+          ?.operation()
+          ?.takeIf { it.type == Operation.Type.QUERY }
+          ?: return callFactory.newCall(request)
+        return CachedCall(request, CacheField.of(operation.selectionSet()), callFactory, cache)
+      }
+    }
+
+  // endregion Public Methods
+}
@@ -0,0 +1,260 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.exception.*
+
+import okhttp3.*
+
+import okio.*
+
+import retrofit2.*
+import retrofit2.Call
+import retrofit2.Callback
+
+import java.io.*
+
+import com.kiwi.mobile.retrograph.model.Response as GraphQLResponse
+
+import retrofit2.Response as RetrofitResponse
+
+/**
+ * Call reporting its phases to the [listener].
+ *
+ * The HTTP request is performed by the [callFactory] of the decorators and the response is
+ * decoded by this call wrapping the [converter], so the end of the network phase and the decoding
+ * are observed. The request is tagged by this call, so the size of its body is reported by
+ * [callFactoryOf] when the body is written.
+ */
+internal class ObservedCall<R>(
+  delegate: Call<R>,
+  callFactory: okhttp3.Call.Factory,
+  converter: Converter<ResponseBody, R>,
+  private val listener: GraphQLEventListener,
+  private val hashes: PersistedQueries
+):
+  DecoratedCall<R>(delegate, callFactory, converter),
+  Converter<ResponseBody, R> {
+
+  // region Public Types
+
+  companion object {
+
+    /**
+     * Returns call factory reporting sizes of the request bodies of observed calls, as they are
+     * written by the [delegate].
+     */
+    fun callFactoryOf(delegate: okhttp3.Call.Factory) =
+      object: okhttp3.Call.Factory {
+        override fun newCall(request: okhttp3.Request): okhttp3.Call {
+          val call = request.tag(ObservedCall::class.java)
+          val body = request.body
+          if ((call == null) || (body == null)) {
+            return delegate.newCall(request)
+          }
+
+          return delegate.newCall(
+            request.newBuilder()
+              .method(request.method, CountingRequestBody(body, call))
+              .build()
+          )
+        }
+      }
+  }
+
+  // endregion Public Types
+
+  // region Private Types
+
+  /**
+   * Request body reporting the bytes written from it to the observed [call].
+   */
+  private class CountingRequestBody(
+    private val body: RequestBody,
+    private val call: ObservedCall<*>
+  ):
+    RequestBody() {
+
+    override fun contentType() = body.contentType()
+
+    override fun contentLength() = body.contentLength()
+
+    override fun isOneShot() = body.isOneShot()
+
+    @Throws(IOException::class)
+    override fun writeTo(sink: BufferedSink) {
+      var written = 0L
+      val countingSink = object: ForwardingSink(sink) {
+        override fun write(source: Buffer, byteCount: Long) {
+          super.write(source, byteCount)
+          written += byteCount
+        }
+      }
+      countingSink.buffer()
+        .also { body.writeTo(it) }
+        .emit()
+      call.requestBodyWritten(written)
+    }
+  }
+
+  /**
+   * Response body counting the bytes read from it.
+   */
+  private class CountingResponseBody(
+    private val body: ResponseBody
+  ):
+    ResponseBody() {
+
+    var byteCount = 0L
+      private set
+
+    private val source = object: ForwardingSource(body.source()) {
+      override fun read(sink: Buffer, byteCount: Long) =
+        super.read(sink, byteCount)
+          .also { if (it > 0) this@CountingResponseBody.byteCount += it }
+    }
+      .buffer()
+
+    override fun contentType() = body.contentType()
+
+    override fun contentLength() = body.contentLength()
+
+    override fun source() = source
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private var operationName = ""
+
+  private var queryHash = ""
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Throws(IOException::class)
+  override fun execute(): RetrofitResponse<R> {
+    markExecuted()
+
+    prepare()
+    try {
+      return executeRaw()
+    } catch (exception: IOException) {
+      listener.callFailed(this, operationName, queryHash, exception)
+      throw exception
+    }
+  }
+
+  override fun enqueue(callback: Callback<R>) {
+    markExecuted()
+
+    try {
+      prepare()
+    } catch (exception: IOException) {
+      callback.onFailure(this, exception)
+      return
+    }
+    enqueueRaw(callback)
+  }
+
+  override fun cancel() {
+    if (isCanceled()) {
+      return
+    }
+
+    super.cancel()
+    listener.callDisposed(this, operationName, queryHash)
+  }
+
+  override fun clone(): Call<R> =
+    ObservedCall(delegate.clone(), callFactory, converter, listener, hashes)
+
+  /**
+   * Decodes the response [body] by the [converter].
+   */
+  @Throws(IOException::class)
+  override fun convert(body: ResponseBody): R? {
+    listener.parseStart(this, operationName, queryHash)
+
+    val countingBody = CountingResponseBody(body)
+    try {
+      return converter.convert(countingBody)
+        .also { (it as? GraphQLResponse<*>)?.errors?.let { errors -> reportErrors(errors) } }
+    } catch (exception: GraphQLException) {
+      reportErrors(exception.errors)
+      throw exception
+    } finally {
+      listener.parseEnd(this, operationName, queryHash, countingBody.byteCount)
+    }
+  }
+
+  // endregion Public Methods
+
+  // region Protected Methods
+
+  /**
+   * Returns the request tagged by this call, so the size of its body is reported.
+   */
+  override fun rawRequest(): okhttp3.Request =
+    super.rawRequest()
+      .newBuilder()
+      .tag(ObservedCall::class.java, this)
+      .build()
+
+  /**
+   * Converts the raw response by this call, so the decoding is observed. The network phase ends
+   * here, whatever the status of the response.
+   */
+  @Throws(IOException::class)
+  override fun convert(rawResponse: okhttp3.Response): RetrofitResponse<R> {
+    listener.networkEnd(this, operationName, queryHash)
+    return rawResponse.toRetrofitResponse(this)
+  }
+
+  override fun onRawFailure(exception: IOException, callback: Callback<R>) {
+    listener.callFailed(this, operationName, queryHash, exception)
+    super.onRawFailure(exception, callback)
+  }
+
+  // endregion Protected Methods
+
+  // region Private Methods
+
+  /**
+   * Builds the query to report its phase with the sizes of the query and the variables, which are
+   * already serialized. The network phase starts right after, the size of the request body is
+   * reported once it is written.
+   */
+  @Throws(IOException::class)
+  private fun prepare() {
+    if (isCanceled()) {
+      throw IOException("Canceled")
+    }
+
+    listener.requestBuildStart(this)
+    var querySize = 0
+    var variablesSize = 0
+    val request = delegate.graphQLRequest()
+    if (request != null) {
+      operationName = request.operationName
+      queryHash = hashes.hashOf(request.query)
+      querySize = request.query.length
+      variablesSize = request.variables.values.sumBy { it.json.length }
+    }
+    listener.requestBuildEnd(this, operationName, queryHash, querySize, variablesSize)
+
+    listener.networkStart(this, operationName, queryHash)
+  }
+
+  private fun requestBodyWritten(byteCount: Long) {
+    listener.requestBodyEnd(this, operationName, queryHash, byteCount)
+  }
+
+  private fun reportErrors(errors: List<String>) {
+    if (errors.isNotEmpty()) {
+      listener.graphQLErrors(this, operationName, queryHash, errors)
+    }
+  }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,179 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.stream.*
+
+import com.kiwi.mobile.retrograph.model.Request
+
+import okhttp3.*
+
+import java.io.*
+import java.security.*
+
+/**
+ * Automatic persisted queries support.
+ *
+ * Requests are sent only with SHA-256 hash of the query, the query itself is sent only when server
+ * does not know the hash yet. Hashes are computed once per distinct query text.
+ */
+internal class PersistedQueries(
+  private val maxSize: Int = DEFAULT_MAX_SIZE
+):
+  CallDecorator {
+
+  // region Public Types
+
+  companion object {
+
+    const val DEFAULT_MAX_SIZE = 256
+
+    private const val NOT_FOUND_MESSAGE = "PersistedQueryNotFound"
+
+    private const val NOT_FOUND_CODE = "PERSISTED_QUERY_NOT_FOUND"
+
+    private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+  }
+
+  // endregion Public Types
+
+  // region Private Properties
+
+  private val hashes = object: LinkedHashMap<String, String>(16, 0.75f, true) {
+    override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, String>?) =
+      size > maxSize
+  }
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  /**
+   * Returns call factory sending [Request] or [RequestBuilder] bodies as persisted queries, other
+   * requests are passed on as they are. With [getQueries] the hash is sent by GET.
+   */
+  override fun decorate(callFactory: okhttp3.Call.Factory, getQueries: GetQueries?) =
+    object: okhttp3.Call.Factory {
+      override fun newCall(request: okhttp3.Request): okhttp3.Call {
+        val graphQLRequest = request.graphQLRequest()
+          ?: return callFactory.newCall(request)
+        return PersistedQueryCall(
+          request, graphQLRequest, callFactory, this@PersistedQueries, getQueries
+        )
+      }
+    }
+
+  /**
+   * Returns hex encoded SHA-256 hash of the [query].
+   */
+  fun hashOf(query: String) =
+    synchronized(hashes) {
+      hashes.getOrPut(query) { sha256(query) }
+    }
+
+  /**
+   * Whether the server asks for the full query by an error with `PersistedQueryNotFound` message
+   * or `PERSISTED_QUERY_NOT_FOUND` code. The body is peeked only until the errors or non-null data
+   * are found, malformed bodies are left to the converter.
+   */
+  fun isNotFound(response: okhttp3.Response): Boolean {
+    val body = response.body
+      ?: return false
+    return try {
+      JsonReader(body.source().peek().inputStream().reader())
+        .use { it.hasNotFoundError() }
+    } catch (exception: IOException) {
+      false
+    } catch (exception: IllegalStateException) {
+      false
+    }
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun JsonReader.hasNotFoundError(): Boolean {
+    beginObject()
+    while (hasNext()) {
+      val name = nextName()
+      when {
+        (name == "data") && (peek() != JsonToken.NULL) -> return false
+        (name == "errors") && (peek() == JsonToken.BEGIN_ARRAY) -> {
+          beginArray()
+          while (hasNext()) {
+            if (isNotFoundError()) {
+              return true
+            }
+          }
+          endArray()
+        }
+        else -> skipValue()
+      }
+    }
+    return false
+  }
+
+  private fun JsonReader.isNotFoundError(): Boolean {
+    if (peek() != JsonToken.BEGIN_OBJECT) {
+      skipValue()
+      return false
+    }
+
+    beginObject()
+    while (hasNext()) {
+      val notFound = when (nextName()) {
+        "message" -> nextStringOrNull() == NOT_FOUND_MESSAGE
+        "extensions" -> nextCodeOrNull() == NOT_FOUND_CODE
+        else -> {
+          skipValue()
+          false
+        }
+      }
+      if (notFound) {
+        return true
+      }
+    }
+    endObject()
+    return false
+  }
+
+  private fun JsonReader.nextCodeOrNull(): String? {
+    if (peek() != JsonToken.BEGIN_OBJECT) {
+      skipValue()
+      return null
+    }
+
+    var code: String? = null
+    beginObject()
+    while (hasNext()) {
+      if (nextName() == "code") {
+        code = nextStringOrNull()
+      } else {
+        skipValue()
+      }
+    }
+    endObject()
+    return code
+  }
+
+  private fun JsonReader.nextStringOrNull() =
+    if (peek() == JsonToken.STRING) {
+      nextString()
+    } else {
+      skipValue()
+      null
+    }
+
+  private fun sha256(query: String): String {
+    val digest = MessageDigest.getInstance("SHA-256")
+      .digest(query.toByteArray(Charsets.UTF_8))
+    val chars = CharArray(digest.size * 2)
+    digest.forEachIndexed { index, byte ->
+      val value = byte.toInt() and 0xFF
+      chars[index * 2] = HEX_DIGITS[value ushr 4]
+      chars[index * 2 + 1] = HEX_DIGITS[value and 0x0F]
+    }
+    return String(chars)
+  }
+
+  // endregion Private Methods
+}
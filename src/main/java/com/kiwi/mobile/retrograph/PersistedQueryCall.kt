@@ -0,0 +1,109 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.model.Request
+
+import okhttp3.*
+
+import java.io.*
+
+/**
+ * Call sending the [request] only with hash of its query first and retrying with the full query
+ * when the server does not know the hash. Without [persistedQueries] the full query is sent right
+ * away.
+ *
+ * With [getQueries] queries are sent by GET whenever they fit into the URL. The [rawRequest] is
+ * rewritten for each attempt and performed by the [callFactory], see [CallDecorator].
+ */
+internal class PersistedQueryCall(
+  rawRequest: okhttp3.Request,
+  private val request: Request,
+  callFactory: okhttp3.Call.Factory,
+  private val persistedQueries: PersistedQueries?,
+  private val getQueries: GetQueries? = null
+):
+  DecoratingCall(rawRequest, callFactory) {
+
+  // region Private Properties
+
+  private val hash by lazy { persistedQueries?.hashOf(request.query) }
+
+  @Volatile
+  private var retried = false
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Throws(IOException::class)
+  override fun execute(): okhttp3.Response {
+    markExecuted()
+
+    val rawResponse = executeRaw(rawRequestOf(hash == null))
+    return if (isNotFound(rawResponse)) {
+      executeRaw(rawRequestOf(true))
+    } else {
+      rawResponse
+    }
+  }
+
+  override fun enqueue(responseCallback: okhttp3.Callback) {
+    markExecuted()
+
+    enqueueRaw(rawRequestOf(hash == null), responseCallback)
+  }
+
+  override fun clone() =
+    PersistedQueryCall(rawRequest, request, callFactory, persistedQueries, getQueries)
+
+  // endregion Public Methods
+
+  // region Protected Methods
+
+  override fun onRawResponse(rawResponse: okhttp3.Response, callback: okhttp3.Callback) {
+    if (!retried && isNotFound(rawResponse)) {
+      retried = true
+      enqueueRaw(rawRequestOf(true), callback)
+    } else {
+      super.onRawResponse(rawResponse, callback)
+    }
+  }
+
+  // endregion Protected Methods
+
+  // region Private Methods
+
+  /**
+   * Whether the server asks for the full query, the [rawResponse] is closed then or when it cannot
+   * be checked.
+   */
+  private fun isNotFound(rawResponse: okhttp3.Response): Boolean {
+    if (persistedQueries == null) {
+      return false
+    }
+
+    val notFound = try {
+      persistedQueries.isNotFound(rawResponse)
+    } catch (throwable: Throwable) {
+      rawResponse.use { throw throwable }
+    }
+    if (notFound) {
+      rawResponse.close()
+    }
+    return notFound
+  }
+
+  private fun rawRequestOf(includeQuery: Boolean): okhttp3.Request {
+    val hash = hash
+    return getQueries?.rewrite(rawRequest, request, hash, includeQuery)
+      ?: rawRequest.newBuilder()
+        .method(
+          rawRequest.method,
+          GraphQLRequestBody({ request.jsonLength(hash, includeQuery) }) {
+            request.writeTo(it, hash, includeQuery)
+          }
+        )
+        .build()
+  }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,283 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.stream.*
+
+import com.kiwi.mobile.retrograph.extension.*
+
+import okhttp3.*
+import okhttp3.ResponseBody.Companion.asResponseBody
+import okhttp3.ResponseBody.Companion.toResponseBody
+
+import okio.*
+
+import retrofit2.*
+
+import java.io.*
+import java.util.concurrent.*
+
+/**
+ * Transparent batching of GraphQL requests.
+ *
+ * Calls to the same endpoint with the same headers issued within the [window] are sent as a single
+ * HTTP request with JSON array of the requests as its body, a batch is sent immediately once it
+ * has [maxBatchSize] calls. The JSON array response is split back to the calls in the same order.
+ */
+internal class QueryBatcher(
+  private val window: Long = DEFAULT_WINDOW_MILLIS,
+  private val maxBatchSize: Int = DEFAULT_MAX_BATCH_SIZE
+):
+  CallDecorator {
+
+  // region Public Types
+
+  companion object {
+
+    const val DEFAULT_WINDOW_MILLIS = 10L
+
+    const val DEFAULT_MAX_BATCH_SIZE = 10
+
+    private val EXECUTOR by lazy {
+      Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "Retrograph Query Batcher")
+          .apply { isDaemon = true }
+      }
+    }
+  }
+
+  // endregion Public Types
+
+  // region Private Types
+
+  private data class Endpoint(
+    val url: HttpUrl,
+    val headers: Headers
+  )
+
+  /**
+   * Calls sent together in one HTTP request.
+   */
+  private inner class Batch(
+    val endpoint: Endpoint
+  ) {
+
+    // region Public Properties
+
+    val calls = mutableListOf<BatchedCall>()
+
+    // endregion Public Properties
+
+    // region Private Properties
+
+    private var rawCall: okhttp3.Call? = null
+
+    // endregion Private Properties
+
+    // region Public Methods
+
+    fun send() {
+      val first = calls.first()
+      val original = first.request()
+      val requests = calls.map { it.graphQLRequest }
+      // The brackets and the commas between the requests.
+      val length = { 1L + requests.map { it.jsonLength() + 1 }.sum() }
+      val body = GraphQLRequestBody(length) { writer ->
+        writer.write("[")
+        requests.forEachIndexed { index, request ->
+          if (index > 0) {
+            writer.write(",")
+          }
+          request.writeTo(writer)
+        }
+        writer.write("]")
+      }
+
+      // The batch request is not a single GraphQL request for the decorators it passes through,
+      // nor the request of the first observed call.
+      val call = first.newBatchCall(
+        original.newBuilder()
+          .method(original.method, body)
+          .tag(Invocation::class.java, null)
+          .tag(ObservedCall::class.java, null)
+          .build()
+      )
+      // Calls canceled before the raw call existed could not cancel it.
+      val allCanceled = synchronized(this@QueryBatcher) {
+        rawCall = call
+        calls.all { it.isCanceled() }
+      }
+      if (allCanceled) {
+        call.cancel()
+      }
+      call.enqueue(object: okhttp3.Callback {
+
+        override fun onResponse(call: okhttp3.Call, response: okhttp3.Response) {
+          val responses = try {
+            split(response)
+          } catch (exception: IOException) {
+            calls.forEach { it.fail(exception) }
+            return
+          }
+          calls.forEachIndexed { index, batchedCall -> batchedCall.complete(responses[index]) }
+        }
+
+        override fun onFailure(call: okhttp3.Call, exception: IOException) {
+          calls.forEach { it.fail(exception) }
+        }
+      })
+    }
+
+    /**
+     * Cancels the HTTP request once all the calls of the batch are canceled.
+     */
+    fun cancelIfAllCanceled() {
+      if (calls.all { it.isCanceled() }) {
+        rawCall?.cancel()
+      }
+    }
+
+    // endregion Public Methods
+
+    // region Private Methods
+
+    /**
+     * Splits the array response into responses of the single calls, each element is copied into
+     * its own body as it is read. Responses which are not arrays, e.g. HTTP errors, are passed to
+     * all the calls.
+     */
+    @Throws(IOException::class)
+    private fun split(response: okhttp3.Response): List<okhttp3.Response> {
+      val body = response.body!!
+      val contentType = body.contentType()
+      if (!response.isSuccessful || !body.isArray()) {
+        val bytes = body.use { it.bytes() }
+        return calls.map { response.withBody(bytes.toResponseBody(contentType)) }
+      }
+
+      val results = mutableListOf<okhttp3.Response>()
+      JsonReader(body.charStream()).use { reader ->
+        reader.beginArray()
+        while (reader.hasNext()) {
+          val element = Buffer()
+          JsonWriter(element.outputStream().writer()).use { reader.copyValueTo(it) }
+          results.add(response.withBody(element.asResponseBody(contentType, element.size)))
+        }
+        reader.endArray()
+      }
+      if (results.size != calls.size) {
+        throw IOException("Batch response has ${results.size} results for ${calls.size} requests.")
+      }
+      return results
+    }
+
+    private fun ResponseBody.isArray() =
+      try {
+        JsonReader(source().peek().inputStream().reader())
+          .use { it.peek() == JsonToken.BEGIN_ARRAY }
+      } catch (exception: IOException) {
+        false
+      }
+
+    private fun okhttp3.Response.withBody(body: ResponseBody) =
+      newBuilder()
+        .body(body)
+        .build()
+
+    // endregion Private Methods
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val pending = mutableMapOf<Endpoint, Batch>()
+
+  private val sent = mutableMapOf<BatchedCall, Batch>()
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  override fun decorate(callFactory: okhttp3.Call.Factory, getQueries: GetQueries?) =
+    object: okhttp3.Call.Factory {
+      override fun newCall(request: okhttp3.Request): okhttp3.Call {
+        val graphQLRequest = request.graphQLRequest()
+          ?: return callFactory.newCall(request)
+        return BatchedCall(request, graphQLRequest, callFactory, this@QueryBatcher)
+      }
+    }
+
+  /**
+   * Adds the call to the pending batch of its endpoint.
+   */
+  fun add(call: BatchedCall) {
+    val original = call.request()
+    val endpoint = Endpoint(original.url, original.headers)
+
+    val full = synchronized(this) {
+      val batch = pending.getOrPut(endpoint) {
+        Batch(endpoint)
+          .also { EXECUTOR.schedule({ flush(it) }, window, TimeUnit.MILLISECONDS) }
+      }
+      batch.calls.add(call)
+      // The full batch is taken right away, so no other call can join it before it is sent.
+      batch.takeIf { it.calls.size >= maxBatchSize }
+        ?.also { take(it) }
+    }
+
+    full?.send()
+  }
+
+  /**
+   * Removes the canceled call from its pending batch, returns `false` if the batch was already
+   * sent.
+   */
+  fun cancel(call: BatchedCall): Boolean {
+    synchronized(this) {
+      val batch = sent.remove(call)
+      if (batch != null) {
+        batch.cancelIfAllCanceled()
+        return false
+      }
+
+      return pending.values
+        .any { it.calls.remove(call) }
+    }
+  }
+
+  /**
+   * Forgets the sent call once it received its response.
+   */
+  fun done(call: BatchedCall) {
+    synchronized(this) {
+      sent.remove(call)
+    }
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun flush(batch: Batch) {
+    val taken = synchronized(this) {
+      (pending[batch.endpoint] === batch) && take(batch)
+    }
+    if (taken) {
+      batch.send()
+    }
+  }
+
+  /**
+   * Removes the batch from the pending ones, returns `false` if it has no calls left to send.
+   * Must be called with the lock held.
+   */
+  private fun take(batch: Batch): Boolean {
+    pending.remove(batch.endpoint)
+    if (batch.calls.isEmpty()) {
+      return false
+    }
+    batch.calls.forEach { sent[it] = batch }
+    return true
+  }
+
+  // endregion Private Methods
+}
@@ -1,9 +1,12 @@
 package com.kiwi.mobile.retrograph
 
 import com.google.gson.*
+import com.google.gson.stream.*
 
 import com.kiwi.mobile.retrograph.model.*
 
+import java.io.*
+
 import kotlin.reflect.*
 
 /**
@@ -36,7 +39,23 @@ import kotlin.reflect.*
  *
  * TODO: DSL definition of query for Kotlin.
  */
-open class RequestBuilder {
+open class RequestBuilder @JvmOverloads constructor(
+  private val gson: Gson = DEFAULT_GSON
+) {
+
+  // region Public Types
+
+  companion object {
+
+    /**
+     * Gson shared by all builders created without their own instance.
+     */
+    @JvmField
+    val DEFAULT_GSON: Gson = GsonBuilder()
+      .create()
+  }
+
+  // endregion Public Types
 
   // region Protected Properties
 
@@ -44,14 +63,20 @@ open class RequestBuilder {
 
   // endregion Protected Properties
 
+  // region Internal Properties
+
+  /**
+   * Variables added by [variable].
+   */
+  internal val variables = mutableMapOf<String, Any?>()
+
+  // endregion Internal Properties
+
   // region Private Properties
 
-  private var variables = mutableMapOf<String, Any?>()
+  private var extractVariables = false
 
-  private val gson by lazy {
-    GsonBuilder()
-      .create()
-  }
+  private var compact = false
 
   // endregion Private Properties
 
@@ -73,32 +98,100 @@ open class RequestBuilder {
   fun variable(name: String, value: Any?) =
     apply { variables[name] = value }
 
+  /**
+   * Sends literal argument values as variables named after their path in the document, e.g.
+   * `$get_flights_parameters_flyFrom: String!`, so the query stays the same for all the
+   * argument values and only the variables change.
+   */
+  fun extractVariables(extract: Boolean = true) =
+    apply { extractVariables = extract }
+
+  /**
+   * Renders the query without the optional whitespace and commas, e.g.
+   * `query{get_flights(limit:5 offset:0){data{id flyFrom}}}`, to save bytes on the wire. The
+   * [Document] is still rendered in the readable form by `toString`, e.g. for logging.
+   */
+  fun compact(compact: Boolean = true) =
+    apply { this.compact = compact }
+
   /**
    * Builds GraphQL request to be sent to server.
    */
-  fun build() =
-    Request(
-      buildQueryString(),
-      buildVariables()
+  fun build(): Request {
+    val extracted = extractedVariables()
+    return Request(
+      buildQueryString(extracted),
+      buildVariables(extracted)
     )
+  }
 
   // endregion Public Methods
 
+  // region Internal Methods
+
+  /**
+   * Writes the request JSON into [writer] rendering the query directly from the document, so
+   * neither the query string nor the [Request] is created.
+   */
+  internal fun writeTo(writer: Writer) {
+    val extracted = extractedVariables()
+    writer.write("{\"query\":\"")
+    val output = JsonStringAppendable(writer)
+    document.accept(QueryRenderer(if (compact) MinifyingAppendable(output) else output, extracted))
+    writer.write("\",\"variables\":")
+    gson.newJsonWriter(writer)
+      .apply {
+        beginObject()
+        serializeNulls = true
+        extracted?.definitions
+          ?.filter { (it.name !in variables) && !it.isOmitted }
+          ?.forEach { writeVariable(it.name, it.value) }
+        variables.forEach { (name, value) -> writeVariable(name, value) }
+        endObject()
+        flush()
+      }
+    writer.write("}")
+  }
+
+  /**
+   * Returns estimate of the length of the query, e.g. to decide on compression of bodies of unknown
+   * length, neither the query nor the values are rendered.
+   */
+  internal fun estimateQueryLength() = QueryRenderer.estimateLength(document::accept)
+
+  // endregion Internal Methods
+
   // region Private Methods
 
+  private fun extractedVariables() =
+    if (extractVariables) Variables.of(document::accept) else null
+
   /**
-   * Builds a string from document.
+   * Renders the document in a single pass.
    */
-  private fun buildQueryString() = "$document"
+  private fun buildQueryString(extracted: Variables?) =
+    QueryRenderer.render(document::accept, extracted, compact)
 
   /**
-   * Build a string from variables.
+   * Serializes each variable once into its JSON value.
    */
-  private fun buildVariables() = variables
-    .map {
-      it.key to gson.toJson(it.value)
+  private fun buildVariables(extracted: Variables?): Map<String, RawJson> {
+    val values = extracted?.definitions
+      ?.filter { !it.isOmitted }
+      ?.associate { it.name to it.value }
+      .orEmpty()
+    return (values + variables)
+      .mapValues { RawJson(gson.toJson(it.value)) }
+  }
+
+  private fun JsonWriter.writeVariable(name: String, value: Any?) {
+    name(name)
+    if (value == null) {
+      nullValue()
+    } else {
+      gson.toJson(value, value.javaClass, this)
     }
-    .toMap()
+  }
 
   // endregion Private Methods
 }
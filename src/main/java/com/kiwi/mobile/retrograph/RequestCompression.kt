@@ -0,0 +1,181 @@
+package com.kiwi.mobile.retrograph
+
+import okhttp3.*
+
+import okio.*
+
+import java.io.*
+import java.util.concurrent.atomic.*
+
+/**
+ * Compresses request bodies of GraphQL methods by gzip, see
+ * [GraphQLCallAdapterFactory.withRequestCompression].
+ *
+ * Bodies of at least [minSize] bytes are compressed while they are written into the connection and
+ * sent with `Content-Encoding: gzip`, nothing is buffered. The size of chunked [RequestBuilder]
+ * bodies is estimated from the query without rendering it, other bodies of unknown length are
+ * sent as they are.
+ *
+ * Requests to the [excludedHosts] and of methods annotated by `@GraphQL(compressRequests = false)`
+ * are never compressed, e.g. for servers which do not accept compressed requests.
+ */
+class RequestCompression @JvmOverloads constructor(
+  val minSize: Long = DEFAULT_MIN_SIZE,
+  val excludedHosts: Set<String> = setOf()
+) {
+
+  // region Public Types
+
+  companion object {
+
+    const val DEFAULT_MIN_SIZE = 1024L
+  }
+
+  // endregion Public Types
+
+  // region Private Types
+
+  /**
+   * Sink counting the bytes written through it.
+   */
+  private class CountingSink(
+    delegate: Sink
+  ):
+    ForwardingSink(delegate) {
+
+    var byteCount = 0L
+      private set
+
+    override fun write(source: Buffer, byteCount: Long) {
+      super.write(source, byteCount)
+      this.byteCount += byteCount
+    }
+  }
+
+  /**
+   * Body compressing the original [body] while it is written.
+   */
+  private inner class GzipRequestBody(
+    private val body: RequestBody
+  ):
+    RequestBody() {
+
+    override fun contentType() = body.contentType()
+
+    override fun contentLength() = -1L
+
+    override fun isOneShot() = body.isOneShot()
+
+    @Throws(IOException::class)
+    override fun writeTo(sink: BufferedSink) {
+      val compressedSink = CountingSink(sink)
+      val uncompressedSink = CountingSink(GzipSink(compressedSink))
+      uncompressedSink.buffer()
+        .use { body.writeTo(it) }
+      record(uncompressedSink.byteCount, compressedSink.byteCount)
+    }
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  /**
+   * Number of compressed request bodies written.
+   */
+  val compressedRequests
+    get() = requests.get()
+
+  /**
+   * Size of the compressed request bodies before compression.
+   */
+  val uncompressedBytes
+    get() = uncompressed.get()
+
+  /**
+   * Size of the compressed request bodies after compression.
+   */
+  val compressedBytes
+    get() = compressed.get()
+
+  /**
+   * Ratio of [compressedBytes] to [uncompressedBytes], 1 if nothing was compressed yet.
+   */
+  val compressionRatio: Double
+    get() {
+      val uncompressedBytes = uncompressedBytes
+      return if (uncompressedBytes > 0) compressedBytes.toDouble() / uncompressedBytes else 1.0
+    }
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val requests = AtomicLong()
+
+  private val uncompressed = AtomicLong()
+
+  private val compressed = AtomicLong()
+
+  // endregion Private Properties
+
+  // region Internal Methods
+
+  /**
+   * Returns call factory compressing requests before they are passed to the [delegate].
+   */
+  internal fun callFactoryOf(delegate: okhttp3.Call.Factory) =
+    object: okhttp3.Call.Factory {
+      override fun newCall(request: okhttp3.Request) = delegate.newCall(compress(request))
+    }
+
+  /**
+   * Returns the [request] with compressed body, the [request] itself if its body is too small or
+   * already encoded, or if its host is excluded.
+   */
+  internal fun compress(request: okhttp3.Request): okhttp3.Request {
+    val body = request.body
+    if ((body == null) || (request.header("Content-Encoding") != null)) {
+      return request
+    }
+    if (request.url.host in excludedHosts) {
+      return request
+    }
+    if (sizeOf(request, body) < minSize) {
+      return request
+    }
+
+    return request.newBuilder()
+      .header("Content-Encoding", "gzip")
+      .method(request.method, GzipRequestBody(body))
+      .build()
+  }
+
+  // endregion Internal Methods
+
+  // region Private Methods
+
+  /**
+   * Returns length of the [body], estimated from the query of [RequestBuilder] bodies of unknown
+   * length, -1 if it is not known.
+   */
+  private fun sizeOf(request: okhttp3.Request, body: RequestBody): Long {
+    val length = body.contentLength()
+    if (length >= 0) {
+      return length
+    }
+
+    return request.requestBuilder()
+      ?.estimateQueryLength()
+      ?.toLong()
+      ?: -1L
+  }
+
+  private fun record(uncompressedBytes: Long, compressedBytes: Long) {
+    requests.incrementAndGet()
+    uncompressed.addAndGet(uncompressedBytes)
+    compressed.addAndGet(compressedBytes)
+  }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,123 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.*
+
+import okio.*
+
+import retrofit2.*
+import retrofit2.Call
+
+import java.lang.reflect.*
+import java.util.concurrent.*
+
+import retrofit2.Response as RetrofitResponse
+
+/**
+ * Shares a single HTTP call among subscribers of identical GraphQL queries in flight.
+ *
+ * Queries are identical if they have the same HTTP method, URL, headers, query, variables and
+ * response type. The shared call is canceled only once all its subscribers are disposed. Mutations
+ * and subscriptions are never shared.
+ */
+internal class RequestDeduplicator {
+
+  // region Private Types
+
+  /**
+   * Key of a query in flight with its hash computed only once. The query and the variables are
+   * kept only as their SHA-256 [digest], so keys are compared without the query text.
+   */
+  private data class Key(
+    val method: String,
+    val url: HttpUrl,
+    val headers: Headers,
+    val responseType: Type,
+    val digest: ByteString
+  ) {
+
+    // region Private Properties
+
+    private val hash = listOf(method, url, headers, responseType, digest).hashCode()
+
+    // endregion Private Properties
+
+    // region Public Methods
+
+    override fun hashCode() = hash
+
+    // endregion Public Methods
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val inFlight = ConcurrentHashMap<Key, Observable<*>>()
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  /**
+   * Returns observable of the call response shared with identical calls in flight. The calls are
+   * performed by observables created by [toObservable].
+   *
+   * The call joins the calls in flight only once subscribed, so observables which are never
+   * subscribed neither build the query nor stay in flight.
+   */
+  @Suppress("UNCHECKED_CAST")
+  fun <R> deduplicate(
+    call: Call<R>,
+    responseType: Type,
+    toObservable: (Call<R>) -> Observable<RetrofitResponse<R>>
+  ): Observable<RetrofitResponse<R>> =
+    Observable.defer {
+      val key = keyOf(call, responseType)
+        ?: return@defer toObservable(call)
+
+      // Each connection clones the call, the shared observable can be reconnected by a late
+      // subscriber after it has completed but before it was removed.
+      lateinit var shared: Observable<RetrofitResponse<R>>
+      shared = Observable.defer { toObservable(call.clone()) }
+        .doFinally { inFlight.remove(key, shared) }
+        .share()
+      (inFlight.putIfAbsent(key, shared) ?: shared) as Observable<RetrofitResponse<R>>
+    }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun keyOf(call: Call<*>, responseType: Type): Key? {
+    val request = call.graphQLRequest()
+      ?.takeIf { it.isQuery }
+      ?: return null
+    val rawRequest = call.request()
+    return Key(
+      rawRequest.method, rawRequest.url, rawRequest.headers, responseType, digestOf(request)
+    )
+  }
+
+  /**
+   * Returns SHA-256 digest of the query and the variables sorted by name, the variables are
+   * already serialized.
+   */
+  private fun digestOf(request: Request) =
+    Buffer()
+      .apply {
+        writeUtf8(request.query)
+        request.variables.toSortedMap().forEach { (name, value) ->
+          writeByte(0)
+          writeUtf8(name)
+          writeByte(0)
+          writeUtf8(value.json)
+        }
+      }
+      .sha256()
+
+  // endregion Private Methods
+}
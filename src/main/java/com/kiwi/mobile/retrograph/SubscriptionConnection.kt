@@ -0,0 +1,282 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.exception.*
+import com.kiwi.mobile.retrograph.model.Request
+import com.kiwi.mobile.retrograph.model.Response
+
+import io.reactivex.*
+
+import okhttp3.*
+
+import java.io.*
+import java.util.concurrent.*
+
+/**
+ * Single `graphql-ws` socket of the [transport] multiplexing all the subscriptions to the endpoint
+ * of the [httpRequest]. The [onClose] is invoked when the socket is closed after the last
+ * subscription.
+ */
+internal class SubscriptionConnection(
+  private val transport: SubscriptionTransport,
+  private val httpRequest: okhttp3.Request,
+  private val onClose: (SubscriptionConnection) -> Unit
+):
+  WebSocketListener() {
+
+  // region Private Types
+
+  private companion object {
+
+    private const val PROTOCOL = "graphql-ws"
+
+    private const val NORMAL_CLOSURE = 1000
+
+    private const val CONNECTION_INIT = "connection_init"
+    private const val CONNECTION_ACK = "connection_ack"
+    private const val CONNECTION_ERROR = "connection_error"
+    private const val CONNECTION_TERMINATE = "connection_terminate"
+    private const val KEEP_ALIVE = "ka"
+    private const val START = "start"
+    private const val STOP = "stop"
+    private const val DATA = "data"
+    private const val ERROR = "error"
+    private const val COMPLETE = "complete"
+  }
+
+  private class Subscription(
+    val request: Request,
+    val emitter: ObservableEmitter<JsonObject>
+  )
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val subscriptions = mutableMapOf<String, Subscription>()
+
+  private var webSocket: WebSocket? = null
+
+  private var isAcknowledged = false
+
+  private var nextId = 1
+
+  @Volatile
+  private var lastMessageTime = 0L
+
+  private var keepAliveCheck: ScheduledFuture<*>? = null
+
+  private var reconnection: ScheduledFuture<*>? = null
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  /**
+   * Starts the subscription [request] emitting its payloads to the [emitter] until the emitter is
+   * disposed.
+   */
+  @Synchronized
+  fun subscribe(request: Request, emitter: ObservableEmitter<JsonObject>) {
+    val id = (nextId++).toString()
+    subscriptions[id] = Subscription(request, emitter)
+    when {
+      isAcknowledged -> start(id, request)
+      (webSocket == null) && (reconnection == null) -> connect()
+    }
+    emitter.setCancellable { stop(id) }
+  }
+
+  override fun onOpen(webSocket: WebSocket, response: okhttp3.Response) {
+    val payload = transport.initPayload()
+    synchronized(this) {
+      if (webSocket === this.webSocket) {
+        webSocket.send(
+          if (payload != null) {
+            """{"type":"$CONNECTION_INIT","payload":$payload}"""
+          } else {
+            messageOf(CONNECTION_INIT)
+          }
+        )
+      }
+    }
+  }
+
+  /**
+   * Messages are received one by one, so the payloads are emitted in order even though they are
+   * emitted outside the lock.
+   */
+  override fun onMessage(webSocket: WebSocket, text: String) {
+    val message = JsonParser().parse(text).asJsonObject
+    val type = message["type"]?.asString
+    val id = message["id"]?.takeIf { it.isJsonPrimitive }?.asString
+    val payload = message["payload"]
+
+    val receivers = synchronized(this) {
+      if (webSocket !== this.webSocket) {
+        return
+      }
+
+      lastMessageTime = System.currentTimeMillis()
+      val receivers: List<Subscription> = when (type) {
+        CONNECTION_ACK -> {
+          acknowledge()
+          listOf()
+        }
+        // The server refusing the connection would refuse the reconnected one as well.
+        CONNECTION_ERROR -> subscriptions.values.toList().also { subscriptions.clear() }
+        DATA -> listOfNotNull(subscriptions[id])
+        ERROR, COMPLETE -> listOfNotNull(subscriptions.remove(id))
+        else -> listOf()
+      }
+      if (subscriptions.isEmpty()) {
+        close()
+      }
+      receivers
+    }
+
+    receivers.forEach {
+      when (type) {
+        CONNECTION_ERROR, ERROR -> it.emitter.tryOnError(errorOf(payload))
+        DATA -> it.emitter.onNext(payload.asJsonObject)
+        COMPLETE -> it.emitter.onComplete()
+      }
+    }
+  }
+
+  override fun onClosing(webSocket: WebSocket, code: Int, reason: String) {
+    webSocket.close(NORMAL_CLOSURE, null)
+    disconnected(webSocket)
+  }
+
+  override fun onFailure(webSocket: WebSocket, throwable: Throwable, response: okhttp3.Response?) {
+    disconnected(webSocket)
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun connect() {
+    lastMessageTime = System.currentTimeMillis()
+    webSocket = transport.client.newWebSocket(
+      httpRequest.newBuilder()
+        .get()
+        .header("Sec-WebSocket-Protocol", PROTOCOL)
+        .build(),
+      this
+    )
+  }
+
+  private fun acknowledge() {
+    isAcknowledged = true
+    subscriptions.forEach { (id, subscription) -> start(id, subscription.request) }
+
+    val period = transport.keepAliveTimeoutMillis
+    keepAliveCheck = SubscriptionTransport.EXECUTOR.scheduleAtFixedRate(
+      { checkKeepAlive() }, period, period, TimeUnit.MILLISECONDS
+    )
+  }
+
+  private fun checkKeepAlive() {
+    if (System.currentTimeMillis() - lastMessageTime > transport.keepAliveTimeoutMillis) {
+      synchronized(this) { webSocket }
+        ?.let { disconnected(it) }
+    }
+  }
+
+  private fun start(id: String, request: Request) {
+    val payload = StringWriter()
+      .also { request.writeTo(it) }
+      .toString()
+    webSocket?.send("""{"id":"$id","type":"$START","payload":$payload}""")
+  }
+
+  @Synchronized
+  private fun stop(id: String) {
+    if (subscriptions.remove(id) == null) {
+      return
+    }
+
+    if (isAcknowledged) {
+      webSocket?.send(messageOf(STOP, id))
+    }
+    if (subscriptions.isEmpty()) {
+      close()
+    }
+  }
+
+  /**
+   * Closes the socket once there are no subscriptions left.
+   */
+  private fun close() {
+    webSocket?.let {
+      if (isAcknowledged) {
+        it.send(messageOf(CONNECTION_TERMINATE))
+      }
+      it.close(NORMAL_CLOSURE, null)
+    }
+    webSocket = null
+    reset()
+    onClose(this)
+  }
+
+  /**
+   * Reconnects the failed, closed or stale socket if there are any subscriptions left. The socket
+   * is canceled first, so the new one is never open together with it.
+   */
+  private fun disconnected(webSocket: WebSocket) {
+    synchronized(this) {
+      if (webSocket !== this.webSocket) {
+        return
+      }
+
+      webSocket.cancel()
+      this.webSocket = null
+      reset()
+      if (subscriptions.isNotEmpty()) {
+        reconnection = SubscriptionTransport.EXECUTOR.schedule(
+          Runnable { reconnect() }, transport.reconnectDelayMillis, TimeUnit.MILLISECONDS
+        )
+      }
+    }
+  }
+
+  @Synchronized
+  private fun reconnect() {
+    reconnection = null
+    if ((webSocket == null) && subscriptions.isNotEmpty()) {
+      connect()
+    }
+  }
+
+  private fun reset() {
+    isAcknowledged = false
+    keepAliveCheck?.cancel(false)
+    keepAliveCheck = null
+    reconnection?.cancel(false)
+    reconnection = null
+  }
+
+  private fun messageOf(type: String, id: String? = null) =
+    if (id != null) """{"id":"$id","type":"$type"}""" else """{"type":"$type"}"""
+
+  private fun errorOf(payload: JsonElement?): GraphQLException {
+    val errors = when {
+      payload == null || payload.isJsonNull -> listOf<String>()
+      payload.isJsonArray -> payload.asJsonArray.map { it.messageOf() }
+      else -> listOf(payload.messageOf())
+    }
+    return GraphQLException(Response<Any>(errors = errors))
+  }
+
+  private fun JsonElement.messageOf() =
+    when {
+      isJsonPrimitive -> asString
+      isJsonObject && asJsonObject.has("message") -> asJsonObject["message"].asString
+      else -> toString()
+    }
+
+  // endregion Private Methods
+}
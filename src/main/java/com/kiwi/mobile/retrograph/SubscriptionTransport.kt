@@ -0,0 +1,115 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.*
+
+import java.util.concurrent.*
+
+/**
+ * Transport of GraphQL subscriptions over OkHttp WebSocket speaking the `graphql-ws` protocol.
+ *
+ * All subscriptions to the same endpoint with the same headers, e.g. with the same authorization,
+ * are multiplexed over a single socket, which is opened by the first subscription and closed after
+ * the last one is disposed. The socket is closed and reconnected after [reconnectDelay] when it
+ * fails or when the server sends no message, not even a keep-alive, for [keepAliveTimeout]. The
+ * active subscriptions are started again after reconnection.
+ *
+ * The [initPayload] is sent with `connection_init` of every socket, e.g. with the authorization of
+ * servers which read it from the payload. It is asked for on every connection, so it can be
+ * refreshed before the socket is reconnected.
+ *
+ * Flowable subscriptions handle backpressure by the [backpressureStrategy], Flowables of queries
+ * and mutations keep only the latest response as before.
+ */
+class SubscriptionTransport @JvmOverloads constructor(
+  internal val client: OkHttpClient,
+  keepAliveTimeout: Long = DEFAULT_KEEP_ALIVE_TIMEOUT_SECONDS,
+  reconnectDelay: Long = DEFAULT_RECONNECT_DELAY_SECONDS,
+  unit: TimeUnit = TimeUnit.SECONDS,
+  internal val backpressureStrategy: BackpressureStrategy = BackpressureStrategy.BUFFER,
+  internal val initPayload: () -> JsonObject? = { null }
+) {
+
+  // region Public Types
+
+  companion object {
+
+    const val DEFAULT_KEEP_ALIVE_TIMEOUT_SECONDS = 30L
+
+    const val DEFAULT_RECONNECT_DELAY_SECONDS = 1L
+
+    internal val EXECUTOR by lazy {
+      Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "Retrograph Subscription Transport")
+          .apply { isDaemon = true }
+      }
+    }
+  }
+
+  // endregion Public Types
+
+  // region Private Types
+
+  /**
+   * Key of a connection, the headers are sent with the socket handshake.
+   */
+  private data class Key(
+    val url: HttpUrl,
+    val headers: Headers
+  )
+
+  // endregion Private Types
+
+  // region Internal Properties
+
+  internal val keepAliveTimeoutMillis = unit.toMillis(keepAliveTimeout)
+
+  internal val reconnectDelayMillis = unit.toMillis(reconnectDelay)
+
+  // endregion Internal Properties
+
+  // region Private Properties
+
+  private val connections = mutableMapOf<Key, SubscriptionConnection>()
+
+  // endregion Private Properties
+
+  // region Internal Methods
+
+  /**
+   * Returns observable of payloads of the subscription [request] sent to the endpoint of the
+   * [httpRequest], whose headers are sent with the socket handshake.
+   */
+  internal fun subscribe(httpRequest: okhttp3.Request, request: Request): Observable<JsonObject> =
+    Observable.create { emitter -> connectionOf(httpRequest).subscribe(request, emitter) }
+
+  // endregion Internal Methods
+
+  // region Private Methods
+
+  private fun connectionOf(httpRequest: okhttp3.Request): SubscriptionConnection {
+    val key = Key(httpRequest.url, httpRequest.headers)
+    return synchronized(connections) {
+      connections.getOrPut(key) {
+        SubscriptionConnection(this, httpRequest) { closed(key, it) }
+      }
+    }
+  }
+
+  /**
+   * Forgets the [connection] closed after its last subscription, the next subscription opens a
+   * new one. Subscriptions which got the connection before it was forgotten reopen it.
+   */
+  private fun closed(key: Key, connection: SubscriptionConnection) {
+    synchronized(connections) {
+      connections.remove(key, connection)
+    }
+  }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,18 @@
+package com.kiwi.mobile.retrograph.annotation
+
+/**
+ * Streams elements of the list at the given dot separated [path] of the response `data`, e.g.
+ * `get_flights.data`, from `Flowable<Element>` returning [GraphQL] methods.
+ *
+ * The elements are decoded one by one from the open response body only as they are requested
+ * downstream.
+ */
+@Retention(AnnotationRetention.RUNTIME)
+@Target(
+  AnnotationTarget.FUNCTION,
+  AnnotationTarget.PROPERTY_GETTER,
+  AnnotationTarget.PROPERTY_SETTER
+)
+annotation class ElementPath(
+  val path: String
+)
@@ -1,9 +1,38 @@
 package com.kiwi.mobile.retrograph.annotation
 
+/**
+ * Marks GraphQL service methods.
+ *
+ * With [method] set to [Method.GET] query operations are sent by HTTP GET with the query and
+ * variables encoded in the URL, so they can be cached by HTTP caches. Requests whose URL would be
+ * longer than [maxUrlLength] and mutations are sent by POST.
+ *
+ * With [compressRequests] set to `false` request bodies are never compressed, even if the factory
+ * compresses them, e.g. for servers which do not accept compressed requests.
+ */
 @Retention(AnnotationRetention.RUNTIME)
 @Target(
   AnnotationTarget.FUNCTION,
   AnnotationTarget.PROPERTY_GETTER,
   AnnotationTarget.PROPERTY_SETTER
 )
-annotation class GraphQL
+annotation class GraphQL(
+  val method: Method = Method.POST,
+  val maxUrlLength: Int = DEFAULT_MAX_URL_LENGTH,
+  val compressRequests: Boolean = true
+) {
+
+  // region Public Types
+
+  companion object {
+
+    const val DEFAULT_MAX_URL_LENGTH = 2048
+  }
+
+  enum class Method {
+    GET,
+    POST
+  }
+
+  // endregion Public Types
+}
@@ -0,0 +1,9 @@
+package com.kiwi.mobile.retrograph.annotation
+
+/**
+ * Marks model class the annotation processor generates metadata for. Response and arguments
+ * models of [GraphQL] methods and the classes they reference are processed without it.
+ */
+@Target(AnnotationTarget.CLASS)
+@Retention(AnnotationRetention.BINARY)
+annotation class GraphQLModel
@@ -0,0 +1,16 @@
+package com.kiwi.mobile.retrograph.annotation
+
+/**
+ * Accepts incremental delivery of responses to queries with `@defer` or `@stream` directives for
+ * [GraphQL] methods.
+ *
+ * `Observable` and `Flowable` emit the merged response after each delivered part, other types
+ * get only the complete response.
+ */
+@Retention(AnnotationRetention.RUNTIME)
+@Target(
+  AnnotationTarget.FUNCTION,
+  AnnotationTarget.PROPERTY_GETTER,
+  AnnotationTarget.PROPERTY_SETTER
+)
+annotation class IncrementalDelivery
@@ -0,0 +1,13 @@
+package com.kiwi.mobile.retrograph.annotation
+
+/**
+ * Name of the custom GraphQL scalar the field values are declared as when they are extracted into
+ * variables, e.g. `BigInt`. Components of lists and arrays are declared as the scalar.
+ */
+@Target(
+  AnnotationTarget.PROPERTY,
+  AnnotationTarget.FIELD
+)
+annotation class Scalar(
+  val name: String
+)
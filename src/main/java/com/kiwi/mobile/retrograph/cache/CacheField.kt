@@ -0,0 +1,68 @@
+package com.kiwi.mobile.retrograph.cache
+
+import com.kiwi.mobile.retrograph.model.*
+
+/**
+ * Selection field as seen by the [NormalizedCache].
+ *
+ * @param responseKey Key of the field value in the response data.
+ * @param storageKey Key of the field value in the cache record, the field name with its arguments.
+ * @param typeCondition Type of the inline fragment, empty without type condition, `null` for
+ *   regular fields.
+ * @param fields Selection set of the field, `null` for scalar fields.
+ */
+internal class CacheField(
+  val responseKey: String,
+  val storageKey: String,
+  val typeCondition: String?,
+  val fields: List<CacheField>?
+) {
+
+  // region Public Types
+
+  companion object {
+
+    /**
+     * Returns cache fields of the selection set, the not yet expanded plan is used directly.
+     */
+    fun of(selectionSet: SelectionSet<*>): List<CacheField> =
+      selectionSet.plan?.let { of(it) }
+        ?: selectionSet.selections.map { of(it) }
+
+    private fun of(field: Field<*>): CacheField {
+      val fields = field.fields()
+        .takeIf { it.isNotEmpty }
+        ?.let { of(it) }
+      return if (field.name.startsWith(FRAGMENT_PREFIX)) {
+        val typeCondition = field.name.removePrefix(INLINE_FRAGMENT_PREFIX)
+          .removePrefix(FRAGMENT_PREFIX)
+        CacheField("", "", typeCondition, fields.orEmpty())
+      } else {
+        val arguments = field.arguments()
+        val storageKey = if (arguments.isNotEmpty) "${field.name}($arguments)" else field.name
+        CacheField(field.responseKey, storageKey, null, fields)
+      }
+    }
+
+    private fun of(plan: SelectionPlan): List<CacheField> =
+      plan.fields
+        .map { of(it) }
+
+    private fun of(field: SelectionPlan.FieldPlan): CacheField {
+      val responseKey = field.alias.ifEmpty { field.name }
+      return when (field.kind) {
+        SelectionPlan.Kind.PRIMITIVE ->
+          CacheField(responseKey, field.name, null, null)
+        SelectionPlan.Kind.OBJECT ->
+          CacheField(responseKey, field.name, null, of(field.plan))
+        SelectionPlan.Kind.INLINE_FRAGMENT ->
+          CacheField(
+            responseKey, field.name, null,
+            listOf(CacheField("", "", field.type.simpleName, of(field.plan)))
+          )
+      }
+    }
+  }
+
+  // endregion Public Types
+}
@@ -0,0 +1,233 @@
+package com.kiwi.mobile.retrograph.cache
+
+import com.google.gson.*
+
+/**
+ * Normalized in-memory cache of GraphQL response data.
+ *
+ * Response objects are flattened into records keyed by [keyOf], by default `__typename` and `id`
+ * of the object, objects without a key are keyed by their path from the query root. Records are
+ * kept in a size-bounded LRU split into stripes with their own locks, so concurrent calls rarely
+ * contend.
+ *
+ * The queries have to select the key fields themselves, e.g. by `field("__typename")` or by a
+ * `__typename` property of the model, as they are not added to the queries automatically. Objects
+ * without them are cached, but not shared with the other queries.
+ *
+ * A query is answered from the cache only when all of its selected fields are cached.
+ */
+class NormalizedCache @JvmOverloads constructor(
+  maxSize: Int = DEFAULT_MAX_SIZE,
+  private val keyOf: (JsonObject) -> String? = ::typenameAndIdKeyOf
+) {
+
+  // region Public Types
+
+  companion object {
+
+    const val DEFAULT_MAX_SIZE = 1024
+
+    const val QUERY_ROOT = "QUERY_ROOT"
+
+    private const val STRIPE_COUNT = 16
+
+    private const val TYPENAME = "__typename"
+
+    private const val ID = "id"
+
+    private const val REFERENCE = "__ref"
+
+    /**
+     * Returns `Type:id` key of objects with both `__typename` and `id` fields, `null` otherwise.
+     */
+    @JvmStatic
+    fun typenameAndIdKeyOf(record: JsonObject): String? {
+      val typename = record[TYPENAME]
+        ?.takeIf { it.isJsonPrimitive }
+        ?: return null
+      val id = record[ID]
+        ?.takeIf { it.isJsonPrimitive }
+        ?: return null
+      return "${typename.asString}:${id.asString}"
+    }
+  }
+
+  // endregion Public Types
+
+  // region Private Types
+
+  private class Stripe(
+    private val maxSize: Int
+  ):
+    LinkedHashMap<String, Map<String, JsonElement>>(16, 0.75f, true) {
+
+    override fun removeEldestEntry(
+      eldest: MutableMap.MutableEntry<String, Map<String, JsonElement>>?
+    ) =
+      size > maxSize
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  /**
+   * Number of cached records.
+   */
+  val size
+    get() = stripes.sumBy { synchronized(it) { it.size } }
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val stripes = maxSize.coerceIn(1, STRIPE_COUNT)
+    .let { count -> Array(count) { Stripe((maxSize + count - 1) / count) } }
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  fun clear() {
+    stripes.forEach { synchronized(it) { it.clear() } }
+  }
+
+  // endregion Public Methods
+
+  // region Internal Methods
+
+  /**
+   * Returns data of the query with the given selection [fields], `null` if any of the fields is
+   * not cached.
+   */
+  internal fun read(fields: List<CacheField>) = readObject(QUERY_ROOT, fields)
+
+  /**
+   * Stores response [data] of the query with the given selection [fields].
+   */
+  internal fun write(fields: List<CacheField>, data: JsonObject) {
+    writeObject(QUERY_ROOT, fields, data)
+  }
+
+  // endregion Internal Methods
+
+  // region Private Methods
+
+  private fun stripeOf(key: String) = stripes[(key.hashCode() and Int.MAX_VALUE) % stripes.size]
+
+  private fun get(key: String): Map<String, JsonElement>? {
+    val stripe = stripeOf(key)
+    return synchronized(stripe) { stripe[key] }
+  }
+
+  private fun merge(key: String, fields: Map<String, JsonElement>) {
+    val stripe = stripeOf(key)
+    synchronized(stripe) {
+      stripe[key] = stripe[key]?.plus(fields) ?: fields
+    }
+  }
+
+  private fun readObject(key: String, fields: List<CacheField>): JsonObject? {
+    val record = get(key)
+      ?: return null
+    val result = JsonObject()
+    return if (readFields(record, fields, result)) result else null
+  }
+
+  private fun readFields(
+    record: Map<String, JsonElement>,
+    fields: List<CacheField>,
+    result: JsonObject
+  ): Boolean =
+    fields.all { field ->
+      if (field.typeCondition != null) {
+        readFragment(record, field, result)
+      } else {
+        val value = record[field.storageKey]
+          ?.let { readValue(field, it) }
+        value?.let { result.add(field.responseKey, it) }
+        value != null
+      }
+    }
+
+  /**
+   * Fragment fields are missing in records of other types, which is known only when the record
+   * has `__typename`.
+   */
+  private fun readFragment(
+    record: Map<String, JsonElement>,
+    fragment: CacheField,
+    result: JsonObject
+  ): Boolean {
+    val fragmentResult = JsonObject()
+    if (readFields(record, fragment.fields.orEmpty(), fragmentResult)) {
+      fragmentResult.entrySet()
+        .forEach { result.add(it.key, it.value) }
+      return true
+    }
+    if (fragment.typeCondition.isNullOrEmpty()) {
+      return false
+    }
+
+    val typename = record[TYPENAME]
+      ?.takeIf { it.isJsonPrimitive }
+      ?: return false
+    return typename.asString != fragment.typeCondition
+  }
+
+  private fun readValue(field: CacheField, value: JsonElement): JsonElement? =
+    when {
+      value.isJsonArray ->
+        JsonArray().apply {
+          value.asJsonArray.forEach { add(readValue(field, it) ?: return null) }
+        }
+      value.isJsonObject && (field.fields != null) ->
+        readObject(value.asJsonObject[REFERENCE].asString, field.fields)
+      else ->
+        value
+    }
+
+  private fun writeObject(key: String, fields: List<CacheField>, data: JsonObject) {
+    val record = mutableMapOf<String, JsonElement>()
+    writeFields(key, fields, data, record)
+    merge(key, record)
+  }
+
+  private fun writeFields(
+    key: String,
+    fields: List<CacheField>,
+    data: JsonObject,
+    record: MutableMap<String, JsonElement>
+  ) {
+    fields.forEach { field ->
+      if (field.typeCondition != null) {
+        writeFields(key, field.fields.orEmpty(), data, record)
+      } else if (data.has(field.responseKey)) {
+        val value = data[field.responseKey]
+        record[field.storageKey] = writeValue("$key.${field.storageKey}", field, value)
+      }
+    }
+    data[TYPENAME]
+      ?.let { record[TYPENAME] = it }
+  }
+
+  private fun writeValue(path: String, field: CacheField, value: JsonElement): JsonElement =
+    when {
+      value.isJsonArray ->
+        JsonArray().apply {
+          value.asJsonArray.forEachIndexed { index, item ->
+            add(writeValue("$path.$index", field, item))
+          }
+        }
+      value.isJsonObject && (field.fields != null) -> {
+        val data = value.asJsonObject
+        val key = keyOf(data) ?: path
+        writeObject(key, field.fields, data)
+        JsonObject().apply { addProperty(REFERENCE, key) }
+      }
+      else ->
+        value
+    }
+
+  // endregion Private Methods
+}
@@ -9,4 +9,11 @@ class GraphQLException(response: Response<*>):
     } else {
       response.errors.toString()
     }
-  )
+  ) {
+
+  // region Public Properties
+
+  val errors = response.errors
+
+  // endregion Public Properties
+}
@@ -0,0 +1,226 @@
+package com.kiwi.mobile.retrograph.extension
+
+import java.lang.reflect.Field
+
+import kotlin.reflect.jvm.*
+
+/**
+ * Metadata of a model class.
+ *
+ * Descriptors are computed only once per class, see [descriptor], so builders reading the model
+ * instances do not need to touch the reflection API again. If the annotation processor generated
+ * [GeneratedModel] for the class, the metadata are taken from it without any reflection.
+ */
+class ClassDescriptor internal constructor(
+  val type: Class<*>,
+  generated: GeneratedModel? = null
+) {
+
+  // region Public Properties
+
+  /**
+   * Serializable fields of the class in declaration order.
+   */
+  val fields: List<FieldDescriptor> = generated?.fields
+    ?: type.reflectiveFields()
+      .map { ReflectiveFieldDescriptor(it) }
+
+  val fieldsByName = fields
+    .associateBy { it.name }
+
+  /**
+   * Java fields of [fields] by name. Fields of generated models are looked up one by one only when
+   * needed, reflective ones are reused.
+   */
+  val serializableFields by lazy {
+    fields.associate { descriptor ->
+      val field = (descriptor as? ReflectiveFieldDescriptor)?.field
+        ?: type.getDeclaredField(descriptor.name).apply { isAccessible = true }
+      descriptor.name to field
+    }
+  }
+
+  val hasIgnoreNulls = generated?.ignoreNulls ?: type.hasIgnoreNulls
+
+  /**
+   * Generated selection set text, `null` if the class has no generated model.
+   */
+  val selection = generated?.selection
+
+  val isGenerated = generated != null
+
+  // endregion Public Properties
+}
+
+/**
+ * Metadata of a model class field.
+ *
+ * Generated models subclass it to read the field values without reflection.
+ *
+ * @param componentType Component type of lists and arrays, [Any] for other fields.
+ */
+abstract class FieldDescriptor(
+  val name: String,
+  val aliasOrName: String,
+  val nameOrEmpty: String,
+  val hasInlineFragment: Boolean,
+  val type: Class<*>,
+  val componentType: Class<*>
+) {
+
+  // region Public Types
+
+  companion object {
+
+    /**
+     * Resolves variable type of the field by reflection. Generated models use it for the fields
+     * whose nullability is not known at compile time.
+     */
+    @JvmStatic
+    fun variableTypeOf(type: Class<*>, name: String) =
+      ReflectiveFieldDescriptor(type.getDeclaredField(name)).variableType
+  }
+
+  enum class Kind(
+    val isScalar: Boolean
+  ) {
+    PRIMITIVE(true),
+    ENUM(true),
+    ARRAY(false),
+    LIST(false),
+    OBJECT(false)
+  }
+
+  // endregion Public Types
+
+  // region Public Properties
+
+  val kind = type.kind
+
+  val componentKind = componentType.kind
+
+  /**
+   * GraphQL type of the field used in variable definitions, e.g. `String!` or `[Provider!]`.
+   */
+  abstract val variableType: String
+
+  // endregion Public Properties
+
+  // region Public Methods
+
+  abstract fun get(instance: Any?): Any?
+
+  // endregion Public Methods
+}
+
+/**
+ * Field metadata read by reflection.
+ */
+internal class ReflectiveFieldDescriptor(
+  val field: Field
+):
+  FieldDescriptor(
+    field.name,
+    field.aliasOrName,
+    field.nameOrEmpty,
+    field.hasInlineFragment,
+    field.type,
+    field.parameterUpperBound
+  ) {
+
+  // region Public Properties
+
+  /**
+   * Nullability is read from Kotlin metadata, so it is resolved only when needed.
+   */
+  override val variableType: String by lazy {
+    val propertyType = field.kotlinProperty?.returnType
+    val isNullable = propertyType?.isMarkedNullable ?: !type.isPrimitive
+    val isComponentNullable = propertyType?.arguments?.firstOrNull()?.type?.isMarkedNullable
+      ?: !componentType.isPrimitive
+    val name = when (kind) {
+      Kind.ARRAY, Kind.LIST -> {
+        val componentName = field.scalarName ?: componentType.graphQLTypeName
+        "[$componentName${if (isComponentNullable) "" else "!"}]"
+      }
+      else ->
+        field.scalarName ?: type.graphQLTypeName
+    }
+    if (isNullable) name else "$name!"
+  }
+
+  // endregion Public Properties
+
+  // region Public Methods
+
+  override fun get(instance: Any?): Any? = field.get(instance)
+
+  // endregion Public Methods
+}
+
+/**
+ * Model metadata generated by the annotation processor.
+ *
+ * It is generated next to the model class with [GENERATED_MODEL_SUFFIX], names of nested classes
+ * are joined by `_`.
+ */
+interface GeneratedModel {
+
+  /**
+   * Text of the model selection set.
+   */
+  val selection: String
+
+  val ignoreNulls: Boolean
+
+  val fields: List<FieldDescriptor>
+}
+
+const val GENERATED_MODEL_SUFFIX = "_GraphQL"
+
+private val DESCRIPTORS = object: ClassValue<ClassDescriptor>() {
+  override fun computeValue(type: Class<*>) = ClassDescriptor(type, type.generatedModel)
+}
+
+/**
+ * Cached metadata of this class.
+ */
+val Class<*>.descriptor: ClassDescriptor
+  get() = DESCRIPTORS.get(this)
+
+val Class<*>.kind
+  get() = when {
+    isPrimitiveOrWrapper -> FieldDescriptor.Kind.PRIMITIVE
+    isEnum -> FieldDescriptor.Kind.ENUM
+    isArray -> FieldDescriptor.Kind.ARRAY
+    isList -> FieldDescriptor.Kind.LIST
+    else -> FieldDescriptor.Kind.OBJECT
+  }
+
+/**
+ * Looks up the generated model of this class, the lookup is done only once per class as the
+ * descriptors are cached. Generated models which cannot be loaded, e.g. stale output of previous
+ * builds, are ignored, so the class is described by reflection.
+ */
+private val Class<*>.generatedModel: GeneratedModel?
+  get() {
+    if (isPrimitive || isArray || name.startsWith("java.") || name.startsWith("kotlin.")) {
+      return null
+    }
+    return try {
+      Class.forName("${name.replace('$', '_')}$GENERATED_MODEL_SUFFIX", true, classLoader)
+        .getDeclaredConstructor()
+        .newInstance() as? GeneratedModel
+    } catch (exception: ReflectiveOperationException) {
+      null
+    } catch (exception: LinkageError) {
+      null
+    } catch (exception: ClassCastException) {
+      null
+    }
+  }
+
+private fun Class<*>.reflectiveFields() =
+  declaredFields
+    .filter { !it.isTransient && !it.isStatic && !it.isDelegate }
+    .onEach { it.isAccessible = true }
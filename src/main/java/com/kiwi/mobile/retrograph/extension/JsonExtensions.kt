@@ -0,0 +1,47 @@
+package com.kiwi.mobile.retrograph.extension
+
+import com.google.gson.stream.*
+
+import java.io.*
+
+/**
+ * Copies the next value of the reader into the [writer] token by token, without building a tree.
+ * Numbers are copied as they are written, e.g. `1.50` stays `1.50`.
+ */
+@Throws(IOException::class)
+internal fun JsonReader.copyValueTo(writer: JsonWriter) {
+  var depth = 0
+  do {
+    when (peek()) {
+      JsonToken.BEGIN_ARRAY -> {
+        beginArray()
+        writer.beginArray()
+        depth++
+      }
+      JsonToken.END_ARRAY -> {
+        endArray()
+        writer.endArray()
+        depth--
+      }
+      JsonToken.BEGIN_OBJECT -> {
+        beginObject()
+        writer.beginObject()
+        depth++
+      }
+      JsonToken.END_OBJECT -> {
+        endObject()
+        writer.endObject()
+        depth--
+      }
+      JsonToken.NAME -> writer.name(nextName())
+      JsonToken.STRING -> writer.value(nextString())
+      JsonToken.NUMBER -> writer.jsonValue(nextString())
+      JsonToken.BOOLEAN -> writer.value(nextBoolean())
+      JsonToken.NULL -> {
+        nextNull()
+        writer.nullValue()
+      }
+      else -> throw EOFException("JSON ended within a value.")
+    }
+  } while (depth > 0)
+}
@@ -41,6 +41,30 @@ private val WRAPPER_TYPES = arrayOf(
 val Class<*>.isPrimitiveOrWrapper
   get() = isPrimitive || WRAPPER_TYPES.contains(this)
 
+/**
+ * Name of GraphQL type the values of this class are sent as. Enums and input objects are expected
+ * to be named the same as their classes. `Int` of GraphQL is 32-bit, so longs are sent as the
+ * custom `Long` scalar, other scalars can be set by [Scalar].
+ */
+val Class<*>.graphQLTypeName: String
+  get() = when (this) {
+    Boolean::class.javaPrimitiveType, Boolean::class.javaObjectType ->
+      "Boolean"
+    Byte::class.javaPrimitiveType, Byte::class.javaObjectType,
+    Short::class.javaPrimitiveType, Short::class.javaObjectType,
+    Int::class.javaPrimitiveType, Int::class.javaObjectType ->
+      "Int"
+    Long::class.javaPrimitiveType, Long::class.javaObjectType ->
+      "Long"
+    Float::class.javaPrimitiveType, Float::class.javaObjectType,
+    Double::class.javaPrimitiveType, Double::class.javaObjectType ->
+      "Float"
+    Char::class.javaPrimitiveType, Char::class.javaObjectType, String::class.java ->
+      "String"
+    else ->
+      simpleName
+  }
+
 val Class<*>.isList
   get() = List::class.java.isAssignableFrom(this)
 
@@ -122,13 +146,7 @@ val Type.rxType
   }
 
 val <T: Any> Class<T>.serializableFields: Map<String, Field>
-  get() = declaredFields
-    .filter { !it.isTransient && !it.isStatic && !it.isDelegate }
-    .map {
-      it.isAccessible = true
-      it.name to it
-    }
-    .toMap<String, Field>()
+  get() = descriptor.serializableFields
 
 val Any?.serializableFields: Map<String, Field>
   get() =
@@ -194,3 +212,6 @@ val Field.nameOrEmpty
 
 val Field.hasInlineFragment
   get() = isAnnotationPresent(InlineFragment::class.java)
+
+val Field.scalarName
+  get() = getAnnotation(Scalar::class.java)?.name
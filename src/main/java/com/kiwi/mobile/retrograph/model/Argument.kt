@@ -1,5 +1,7 @@
 package com.kiwi.mobile.retrograph.model
 
+import com.kiwi.mobile.retrograph.extension.*
+
 /**
  * Class representing argument.
  */
@@ -8,23 +10,52 @@ open class Argument<TValue>(
   val value: TValue
 ) {
 
+  // region Internal Properties
+
+  /**
+   * Model field the value was read from, declares its type when the value is extracted to variable.
+   */
+  internal var descriptor: FieldDescriptor? = null
+
+  /**
+   * Whether the argument is a null of an `@IgnoreNulls` model. It is left out of the query unless
+   * it is extracted to variable, whose value is omitted instead, so the query text does not depend
+   * on which values are null.
+   */
+  internal var isOmitted = false
+
+  // endregion Internal Properties
+
   // region Public Methods
 
-  override fun toString() = "${buildNameString()}${buildValueString()}"
+  override fun toString() = QueryRenderer.render(::accept)
 
   // endregion Public Methods
 
   // region Protected Methods
 
+  /**
+   * Returns the rendered name prefix of the argument. The query is rendered by a single renderer,
+   * so overriding this method does not change the rendered query any more.
+   */
+  @Deprecated("The query is rendered in a single pass, use toString() instead.")
   protected open fun buildNameString() = if (name.isNotEmpty()) "$name: " else ""
 
-  protected open fun buildValueString() =
-    when (value) {
-      is String -> "\"$value\""
-      else -> "$value"
-    }
+  /**
+   * Returns the rendered argument without its name. The query is rendered by a single renderer, so
+   * overriding this method does not change the rendered query any more.
+   */
+  @Deprecated("The query is rendered in a single pass, use toString() instead.")
+  @Suppress("DEPRECATION")
+  protected open fun buildValueString() = toString().removePrefix(buildNameString())
 
   // endregion Protected Methods
+
+  // region Internal Methods
+
+  internal fun accept(visitor: QueryVisitor) = visitor.visitArgument(this)
+
+  // endregion Internal Methods
 }
 
 /**
@@ -74,12 +105,6 @@ class ListArgument<TSelectionSetParent>(
   fun finish() = parent
 
   // endregion Public Methods
-
-  // region Protected Methods
-
-  override fun buildValueString() = "[ $values ]"
-
-  // endregion Protected Methods
 }
 
 /**
@@ -128,10 +153,4 @@ class ObjectArgument<TSelectionSetParent>(
   fun finish() = parent
 
   // endregion Public Methods
-
-  // region Protected Methods
-
-  override fun buildValueString() = "{ $values }"
-
-  // endregion Protected Methods
 }
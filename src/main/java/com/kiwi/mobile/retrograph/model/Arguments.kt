@@ -11,13 +11,20 @@ class Arguments<TSelectionSetParent>(
   // region Public Properties
 
   val isEmpty
-    get() = arguments.isEmpty()
+    get() = arguments.all { it.isOmitted }
 
   val isNotEmpty
     get() = !isEmpty
 
   // endregion Public Properties
 
+  // region Internal Properties
+
+  internal val entries: List<Argument<*>>
+    get() = arguments
+
+  // endregion Internal Properties
+
   // region Private Properties
 
   private val arguments = mutableListOf<Argument<*>>()
@@ -46,54 +53,77 @@ class Arguments<TSelectionSetParent>(
   // TODO: Not duplicate this algorithm in Values.
   fun argumentsOf(instance: Any?) =
     apply {
-      instance.serializableFields
-        .forEach { argumentsOf(instance, it.toPair()) }
+      instance?.javaClass?.descriptor
+        ?.fields
+        ?.forEach { argumentsOf(instance, it.name, it) }
     }
 
   fun argumentsOf(instance: Any?, arguments: Map<String, JavaField>) =
     apply {
+      val fields = instance?.javaClass?.descriptor?.fieldsByName
       arguments
-        .forEach { argumentsOf(instance, it.toPair()) }
+        .forEach {
+          argumentsOf(instance, it.key, fields?.get(it.key) ?: ReflectiveFieldDescriptor(it.value))
+        }
     }
 
   fun finish() = parent
 
-  override fun toString() = arguments.joinToString(separator = ", ")
+  override fun toString() = QueryRenderer.render(::accept)
 
   // endregion Public Methods
 
+  // region Internal Methods
+
+  internal fun argumentsOf(instance: Any?, fields: List<FieldDescriptor>) =
+    apply {
+      fields.forEach { argumentsOf(instance, it.name, it) }
+    }
+
+  internal fun accept(visitor: QueryVisitor) = visitor.visitArguments(this)
+
+  // endregion Internal Methods
+
   // region Private Methods
 
-  private fun argumentsOf(instance: Any?, nameAndField: Pair<String, JavaField>) {
-    val (name, field) = nameAndField
+  private fun argumentsOf(instance: Any?, name: String, field: FieldDescriptor) {
     val value = field.get(instance)
     when {
       value == null ->
-        nullArgument(instance, name)
-      field.type.isPrimitiveOrWrapper ->
-        argument(name, value)
-      field.type.isEnum ->
-        argument(name, value)
-      field.type.isArray ->
+        nullArgument(instance, name, field)
+      field.kind.isScalar ->
+        typedArgument(name, value, field)
+      field.kind == FieldDescriptor.Kind.ARRAY ->
         arrayArgument(field, name, value as Array<*>)
-      field.type.isList ->
+      field.kind == FieldDescriptor.Kind.LIST ->
         listArgument(field, name, value as List<*>)
       else ->
         objectArgument(name, value)
     }
   }
 
-  private fun nullArgument(instance: Any?, name: String) {
-    val ignoreNulls = instance?.javaClass?.hasIgnoreNulls ?: false
-    if (!ignoreNulls) {
-      argument(name, null)
-    }
+  private fun nullArgument(instance: Any?, name: String, field: FieldDescriptor) {
+    val ignoreNulls = instance?.javaClass?.descriptor?.hasIgnoreNulls ?: false
+    arguments.add(
+      Argument(name, null)
+        .apply {
+          descriptor = field
+          isOmitted = ignoreNulls
+        }
+    )
+  }
+
+  private fun typedArgument(name: String, value: Any?, field: FieldDescriptor) {
+    arguments.add(
+      Argument(name, value)
+        .apply { descriptor = field }
+    )
   }
 
-  private fun arrayArgument(field: JavaField, name: String, value: Array<*>) {
-    val componentType = field.parameterUpperBound
-    if (componentType.isPrimitiveOrWrapper || componentType.isEnum) {
+  private fun arrayArgument(field: FieldDescriptor, name: String, value: Array<*>) {
+    if (field.componentKind.isScalar) {
       listArgument(name)
+        .apply { descriptor = field }
         .values(*value)
         .finish()
     } else {
@@ -109,11 +139,11 @@ class Arguments<TSelectionSetParent>(
     }
   }
 
-  private fun listArgument(field: JavaField, name: String, value: List<*>) {
+  private fun listArgument(field: FieldDescriptor, name: String, value: List<*>) {
     val array = value.toTypedArray()
-    val componentType = field.parameterUpperBound
-    if (componentType.isPrimitiveOrWrapper || componentType.isEnum) {
+    if (field.componentKind.isScalar) {
       listArgument(name)
+        .apply { descriptor = field }
         .values(*array)
         .finish()
     } else {
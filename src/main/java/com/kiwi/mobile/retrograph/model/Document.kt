@@ -31,7 +31,13 @@ class Document(
 
   fun finish() = parent
 
-  override fun toString() = "$operation"
+  override fun toString() = QueryRenderer.render(::accept)
 
   // endregion Public Methods
+
+  // region Internal Methods
+
+  internal fun accept(visitor: QueryVisitor) = visitor.visitDocument(this)
+
+  // endregion Internal Methods
 }
@@ -1,5 +1,7 @@
 package com.kiwi.mobile.retrograph.model
 
+import com.kiwi.mobile.retrograph.extension.*
+
 import kotlin.reflect.*
 
 import java.lang.reflect.Field as JavaField
@@ -13,10 +15,26 @@ class Field<TSelectionSetParent>(
   val alias: String = ""
 ) {
 
+  // region Internal Properties
+
+  /**
+   * Key of the field value in the response data.
+   */
+  internal val responseKey
+    get() = alias.ifEmpty { name }
+
+  /**
+   * Rendered `@defer` or `@stream` directive of the field, empty if there is none.
+   */
+  internal var directive = ""
+    private set
+
+  // endregion Internal Properties
+
   // region Private Properties
 
-  private val arguments = Arguments(this)
-  private val fields = SelectionSet(this)
+  private var arguments = Arguments(this)
+  private var fields = SelectionSet(this)
 
   // endregion Private Properties
 
@@ -43,6 +61,29 @@ class Field<TSelectionSetParent>(
   fun inlineFragment(name: String) =
     fields.inlineFragment(name)
 
+  fun deferred(label: String = "") =
+    fields.deferred(label)
+
+  /**
+   * Marks the inline fragment by `@defer` directive, so the server may deliver its fields later
+   * than the rest of the response.
+   */
+  fun defer(label: String = "") =
+    apply {
+      require(name.startsWith(FRAGMENT_PREFIX)) { "Only fragments can be deferred." }
+      directive = directiveOf("defer", null, label)
+    }
+
+  /**
+   * Marks the list field by `@stream` directive, so the server may deliver its items after the
+   * first [initialCount] ones incrementally.
+   */
+  fun stream(initialCount: Int = 0, label: String = "") =
+    apply {
+      require(!name.startsWith(FRAGMENT_PREFIX)) { "Fragments cannot be streamed." }
+      directive = directiveOf("stream", initialCount, label)
+    }
+
   fun fieldsOf(`class`: Class<*>, arguments: Any? = null): Field<TSelectionSetParent> =
     fields.fieldsOf(`class`, arguments)
       .finish()
@@ -59,20 +100,46 @@ class Field<TSelectionSetParent>(
    */
   fun finish() = parent.finish()
 
-  override fun toString() =
-    "${buildAliasString()}${buildNameString()}${buildArgumentsString()}${buildSelectionSetString()}"
+  override fun toString() = QueryRenderer.render(::accept)
 
   // endregion Public Methods
 
-  // region Private Methods
+  // region Internal Methods
 
-  private fun buildAliasString() = if (alias.isNotEmpty()) "$alias: " else ""
+  internal fun argumentsOf(instance: Any?, fields: List<FieldDescriptor>) =
+    arguments.argumentsOf(instance, fields)
+      .finish()
 
-  private fun buildNameString() = name
+  /**
+   * Returns copy of the field with the given alias sharing its arguments and selection set.
+   */
+  internal fun withAlias(alias: String) =
+    Field(parent, name, alias)
+      .also {
+        it.arguments = arguments
+        it.fields = fields
+        it.directive = directive
+      }
+
+  internal fun accept(visitor: QueryVisitor) = visitor.visitField(this)
 
-  private fun buildSelectionSetString() = if (fields.isNotEmpty) " { $fields }" else ""
+  // endregion Internal Methods
+
+  // region Private Methods
 
-  private fun buildArgumentsString() = if (arguments.isNotEmpty) "($arguments)" else ""
+  private fun directiveOf(name: String, initialCount: Int?, label: String) =
+    listOfNotNull(
+      initialCount?.let { "initialCount: $it" },
+      label.takeIf { it.isNotEmpty() }
+        ?.let {
+          buildString {
+            append("label: ")
+            LiteralWriter.writeString(this, it)
+          }
+        }
+    )
+      .joinToString(prefix = "@$name(", postfix = ")")
+      .removeSuffix("()")
 
   // endregion Private Methods
 }
@@ -0,0 +1,58 @@
+package com.kiwi.mobile.retrograph.model
+
+/**
+ * Appends characters into the [output] escaped as a content of JSON string literal, so a query can
+ * be rendered straight into a JSON document.
+ */
+internal class JsonStringAppendable(
+  private val output: Appendable
+):
+  Appendable {
+
+  // region Public Methods
+
+  override fun append(csq: CharSequence?) =
+    append(csq ?: "null", 0, csq?.length ?: 4)
+
+  override fun append(csq: CharSequence?, start: Int, end: Int) =
+    apply {
+      val sequence = csq ?: "null"
+      var last = start
+      for (index in start until end) {
+        val escape = escape(sequence[index]) ?: continue
+        output.append(sequence, last, index)
+          .append(escape)
+        last = index + 1
+      }
+      output.append(sequence, last, end)
+    }
+
+  override fun append(c: Char) =
+    apply {
+      val escape = escape(c)
+      if (escape != null) {
+        output.append(escape)
+      } else {
+        output.append(c)
+      }
+    }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun escape(c: Char) =
+    when (c) {
+      '"' -> "\\\""
+      '\\' -> "\\\\"
+      '\n' -> "\\n"
+      '\r' -> "\\r"
+      '\t' -> "\\t"
+      '\b' -> "\\b"
+      '\u000C' -> "\\f"
+      '\u2028', '\u2029' -> "\\u%04x".format(c.toInt())
+      else -> if (c < ' ') "\\u%04x".format(c.toInt()) else null
+    }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,107 @@
+package com.kiwi.mobile.retrograph.model
+
+/**
+ * Writes scalar argument values as GraphQL literals.
+ *
+ * Strings are escaped per the GraphQL specification, a string without any character to escape is
+ * copied at once. Numbers, booleans and enums are written without intermediate strings.
+ */
+internal object LiteralWriter {
+
+  // region Private Properties
+
+  private const val HEX_DIGITS = "0123456789abcdef"
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  fun write(output: Appendable, value: Any?) {
+    when (value) {
+      null -> output.append("null")
+      is String -> writeString(output, value)
+      is Enum<*> -> output.append(value.name)
+      is Boolean -> output.append(if (value) "true" else "false")
+      is Int -> writeInteger(output, value.toLong())
+      is Long -> writeInteger(output, value)
+      is Short -> writeInteger(output, value.toLong())
+      is Byte -> writeInteger(output, value.toLong())
+      is Double -> if (output is StringBuilder) output.append(value) else output.append("$value")
+      is Float -> if (output is StringBuilder) output.append(value) else output.append("$value")
+      else -> output.append(value.toString())
+    }
+  }
+
+  fun writeString(output: Appendable, value: String) {
+    output.append('"')
+    var last = indexOfEscape(value, 0)
+    if (last < 0) {
+      output.append(value)
+    } else {
+      output.append(value, 0, last)
+      while (last < value.length) {
+        writeEscape(output, value[last])
+        val next = indexOfEscape(value, last + 1)
+          .let { if (it < 0) value.length else it }
+        output.append(value, last + 1, next)
+        last = next
+      }
+    }
+    output.append('"')
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun indexOfEscape(value: String, start: Int): Int {
+    for (index in start until value.length) {
+      val c = value[index]
+      if (c < ' ' || c == '"' || c == '\\') {
+        return index
+      }
+    }
+    return -1
+  }
+
+  private fun writeEscape(output: Appendable, c: Char) {
+    when (c) {
+      '"' -> output.append("\\\"")
+      '\\' -> output.append("\\\\")
+      '\n' -> output.append("\\n")
+      '\r' -> output.append("\\r")
+      '\t' -> output.append("\\t")
+      '\b' -> output.append("\\b")
+      '\u000C' -> output.append("\\f")
+      else -> output.append("\\u00")
+        .append(HEX_DIGITS[c.toInt() shr 4])
+        .append(HEX_DIGITS[c.toInt() and 0xF])
+    }
+  }
+
+  /**
+   * Writes digits of the [value] one by one, the negative range is used so that [Long.MIN_VALUE]
+   * needs no special case.
+   */
+  private fun writeInteger(output: Appendable, value: Long) {
+    if (output is StringBuilder) {
+      output.append(value)
+      return
+    }
+
+    if (value < 0) {
+      output.append('-')
+    }
+    val negative = if (value < 0) value else -value
+    var divisor = 1L
+    while (negative / divisor <= -10) {
+      divisor *= 10
+    }
+    while (divisor > 0) {
+      output.append('0' - (negative / divisor % 10).toInt())
+      divisor /= 10
+    }
+  }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,75 @@
+package com.kiwi.mobile.retrograph.model
+
+/**
+ * Appends GraphQL text into the [output] without the optional whitespace and commas, so a query
+ * can be rendered in its minimal form.
+ *
+ * Whitespace and commas outside of string literals are dropped, a single space is kept only
+ * between two names or numbers which would merge otherwise.
+ */
+internal class MinifyingAppendable(
+  private val output: Appendable
+):
+  Appendable {
+
+  // region Private Properties
+
+  private var last = '\u0000'
+
+  private var separated = false
+
+  private var inString = false
+
+  private var escaped = false
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  override fun append(csq: CharSequence?) =
+    append(csq ?: "null", 0, csq?.length ?: 4)
+
+  override fun append(csq: CharSequence?, start: Int, end: Int) =
+    apply {
+      val sequence = csq ?: "null"
+      for (index in start until end) {
+        append(sequence[index])
+      }
+    }
+
+  override fun append(c: Char) =
+    apply {
+      when {
+        inString -> appendStringCharacter(c)
+        c == ' ' || c == ',' || c == '\n' || c == '\r' || c == '\t' -> separated = true
+        else -> {
+          if (separated && isNameCharacter(last) && isNameCharacter(c)) {
+            output.append(' ')
+          }
+          separated = false
+          inString = c == '"'
+          output.append(c)
+          last = c
+        }
+      }
+    }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun appendStringCharacter(c: Char) {
+    when {
+      escaped -> escaped = false
+      c == '\\' -> escaped = true
+      c == '"' -> inString = false
+    }
+    output.append(c)
+    last = c
+  }
+
+  private fun isNameCharacter(c: Char) =
+    (c in 'a'..'z') || (c in 'A'..'Z') || (c in '0'..'9') || (c == '_')
+
+  // endregion Private Methods
+}
@@ -34,6 +34,8 @@ class Operation(
 
   // region Public Methods
 
+  fun selectionSet() = selectionSet
+
   fun field(name: String, alias: String = "") =
     selectionSet.field(name, alias)
       .finish()
@@ -58,13 +60,13 @@ class Operation(
   // NOTE: For now, nothing can be done after [Operation] is finished so finish also [Document].
   fun finish() = parent.finish()
 
-  override fun toString() = "${type.value} ${buildNameString()}{ $selectionSet }"
+  override fun toString() = QueryRenderer.render(::accept)
 
   // endregion Public Methods
 
-  // region Private Methods
+  // region Internal Methods
 
-  private fun buildNameString() = if (name.isNotEmpty()) "$name " else ""
+  internal fun accept(visitor: QueryVisitor) = visitor.visitOperation(this)
 
-  // endregion Private Methods
+  // endregion Internal Methods
 }
@@ -0,0 +1,127 @@
+package com.kiwi.mobile.retrograph.model
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.*
+
+/**
+ * Merges root fields of several operations of the same type into a single operation, so servers
+ * without batching support can still serve them in one round trip.
+ *
+ * Root fields with the same response key in more than one operation get generated aliases, e.g.
+ * `q0: get_flights(...)`, and the response data is [split] back per operation with the original
+ * keys.
+ */
+class OperationMerger(
+  operations: List<Operation>
+) {
+
+  // region Private Types
+
+  private class MergedField(
+    val operation: Int,
+    val key: String,
+    val mergedKey: String
+  )
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  /**
+   * Builder of the merged operation with variables of all the merged operations.
+   */
+  val builder = RequestBuilder()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val operationCount = operations.size
+
+  private val mergedFields = mutableListOf<MergedField>()
+
+  // endregion Private Properties
+
+  init {
+    require(operations.isNotEmpty()) { "No operations to merge." }
+    val type = operations.first().type
+    require(operations.all { it.type == type }) {
+      "Only operations of the same type can be merged."
+    }
+
+    val selections = operations.map { it.selectionSet().expandedSelections() }
+    require(selections.flatten().none { it.name.startsWith(FRAGMENT_PREFIX) }) {
+      "Operations with root inline fragments cannot be merged."
+    }
+
+    val keyCounts = selections
+      .flatMap { fields -> fields.map { it.responseKey }.distinct() }
+      .groupingBy { it }
+      .eachCount()
+    val usedKeys = keyCounts.keys.toMutableSet()
+
+    val selectionSet = builder.operation(type)
+      .selectionSet()
+    selections.forEachIndexed { index, fields ->
+      fields.forEach { field ->
+        val key = field.responseKey
+        val merged = if (keyCounts.getValue(key) > 1) {
+          field.withAlias(
+            generateSequence(0) { it + 1 }
+              .map { "q$it" }
+              .first { usedKeys.add(it) }
+          )
+        } else {
+          field
+        }
+        selectionSet.add(merged)
+        mergedFields.add(MergedField(index, key, merged.responseKey))
+      }
+    }
+
+    operations.forEach { operation ->
+      operation.parent.parent.variables.forEach { (name, value) -> addVariable(name, value) }
+    }
+  }
+
+  // region Public Methods
+
+  /**
+   * Builds request of the merged operation.
+   */
+  fun build() = builder.build()
+
+  /**
+   * Splits `data` of the merged operation response into `data` of the merged operations in their
+   * original order.
+   */
+  fun split(data: JsonObject): List<JsonObject> {
+    val results = List(operationCount) { JsonObject() }
+    mergedFields.forEach { results[it.operation].add(it.key, data[it.mergedKey]) }
+    return results
+  }
+
+  /**
+   * Returns index of the merged operation the root field with the given response key of the merged
+   * operation comes from, e.g. to route errors by their path, or `-1` if there is no such field.
+   */
+  fun operationIndexOf(mergedKey: String) =
+    mergedFields.firstOrNull { it.mergedKey == mergedKey }
+      ?.operation
+      ?: -1
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun addVariable(name: String, value: Any?) {
+    val variables = builder.variables
+    require((name !in variables) || (variables[name] == value)) {
+      "Variable $name has different values in the merged operations."
+    }
+    variables[name] = value
+  }
+
+  // endregion Private Methods
+}
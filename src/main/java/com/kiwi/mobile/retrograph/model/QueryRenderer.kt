@@ -0,0 +1,286 @@
+package com.kiwi.mobile.retrograph.model
+
+/**
+ * Renders the query document tree in a single pass directly into the given [output], so no
+ * intermediate strings are created for the nested nodes.
+ *
+ * Arguments and values extracted to [variables] are rendered as references to them, and their
+ * definitions are added to the operation.
+ */
+internal class QueryRenderer(
+  private val output: Appendable,
+  private val variables: Variables? = null
+):
+  QueryVisitor {
+
+  // region Public Types
+
+  companion object {
+
+    /**
+     * Renders the node visited by [accept] into a string builder sized by a pre-pass estimate of
+     * the rendered length, without the optional whitespace and commas if [compact].
+     */
+    fun render(
+      accept: (QueryVisitor) -> Unit,
+      variables: Variables? = null,
+      compact: Boolean = false
+    ): String {
+      val builder = StringBuilder(estimateLength(accept))
+      accept(QueryRenderer(if (compact) MinifyingAppendable(builder) else builder, variables))
+      return builder.toString()
+    }
+
+    /**
+     * Returns estimate of the rendered length of the node visited by [accept], nothing is
+     * rendered.
+     */
+    fun estimateLength(accept: (QueryVisitor) -> Unit) =
+      LengthEstimator()
+        .also(accept)
+        .length
+  }
+
+  // endregion Public Types
+
+  // region Private Types
+
+  /**
+   * Estimates length of the rendered query without rendering any of the values.
+   */
+  private class LengthEstimator:
+    QueryVisitor {
+
+    // region Public Properties
+
+    var length = 0
+      private set
+
+    // endregion Public Properties
+
+    // region Public Methods
+
+    override fun visitDocument(document: Document) {
+      document.operation().accept(this)
+    }
+
+    override fun visitOperation(operation: Operation) {
+      length += operation.type.value.length + operation.name.length + 6
+      operation.selectionSet().accept(this)
+    }
+
+    override fun visitSelectionSet(selectionSet: SelectionSet<*>) {
+      val plan = selectionSet.plan
+      if (plan != null) {
+        length += plan.text.length
+      } else {
+        selectionSet.selections.forEach {
+          length += 2
+          it.accept(this)
+        }
+      }
+    }
+
+    override fun visitField(field: Field<*>) {
+      length += field.alias.length + field.name.length + field.directive.length + 3
+      field.arguments().accept(this)
+      field.fields().accept(this)
+      length += 6
+    }
+
+    override fun visitArguments(arguments: Arguments<*>) {
+      arguments.entries.forEach {
+        length += 2
+        it.accept(this)
+      }
+    }
+
+    override fun visitArgument(argument: Argument<*>) {
+      length += argument.name.length + 2
+      when (argument) {
+        is ListArgument<*> -> argument.values().accept(this)
+        is ObjectArgument<*> -> argument.values().accept(this)
+        else -> length += estimateLength(argument.value)
+      }
+      length += 4
+    }
+
+    override fun visitValues(values: Values<*>) {
+      values.entries.forEach {
+        length += 2
+        it.accept(this)
+      }
+    }
+
+    override fun visitValue(value: Value<*>) {
+      length += value.name.length + 2
+      when (value) {
+        is ListValue<*> -> value.values().accept(this)
+        is ObjectValue<*> -> value.values().accept(this)
+        else -> length += estimateLength(value.value)
+      }
+      length += 4
+    }
+
+    // endregion Public Methods
+
+    // region Private Methods
+
+    private fun estimateLength(value: Any?) =
+      when (value) {
+        is String -> value.length + 2
+        else -> 8
+      }
+
+    // endregion Private Methods
+  }
+
+  // endregion Private Types
+
+  // region Public Methods
+
+  override fun visitDocument(document: Document) {
+    document.operation().accept(this)
+  }
+
+  override fun visitOperation(operation: Operation) {
+    output.append(operation.type.value)
+    if (operation.name.isNotEmpty()) {
+      output.append(' ')
+        .append(operation.name)
+    }
+    val definitions = variables?.definitions.orEmpty()
+    if (definitions.isNotEmpty()) {
+      output.append('(')
+      definitions.forEachIndexed { index, variable ->
+        appendSeparator(index)
+        output.append('$')
+          .append(variable.name)
+          .append(": ")
+          .append(variable.type)
+      }
+      output.append(')')
+    }
+    output.append(" { ")
+    operation.selectionSet().accept(this)
+    output.append(" }")
+  }
+
+  override fun visitSelectionSet(selectionSet: SelectionSet<*>) {
+    val plan = selectionSet.plan
+    if (plan != null) {
+      output.append(plan.text)
+    } else {
+      selectionSet.selections.forEachIndexed { index, field ->
+        appendSeparator(index)
+        field.accept(this)
+      }
+    }
+  }
+
+  override fun visitField(field: Field<*>) {
+    if (field.alias.isNotEmpty()) {
+      output.append(field.alias)
+        .append(": ")
+    }
+    output.append(field.name)
+    if (field.arguments().entries.any { isRendered(it) }) {
+      output.append('(')
+      field.arguments().accept(this)
+      output.append(')')
+    }
+    if (field.directive.isNotEmpty()) {
+      output.append(' ')
+        .append(field.directive)
+    }
+    if (field.fields().isNotEmpty) {
+      output.append(" { ")
+      field.fields().accept(this)
+      output.append(" }")
+    }
+  }
+
+  override fun visitArguments(arguments: Arguments<*>) {
+    var index = 0
+    arguments.entries.forEach { argument ->
+      if (isRendered(argument)) {
+        appendSeparator(index++)
+        argument.accept(this)
+      }
+    }
+  }
+
+  override fun visitArgument(argument: Argument<*>) {
+    appendName(argument.name)
+    val variable = variables?.get(argument)
+    when {
+      variable != null -> appendVariable(variable)
+      argument is ListArgument<*> -> appendList(argument.values())
+      argument is ObjectArgument<*> -> appendObject(argument.values())
+      else -> LiteralWriter.write(output, argument.value)
+    }
+  }
+
+  override fun visitValues(values: Values<*>) {
+    var index = 0
+    values.entries.forEach { value ->
+      if (isRendered(value)) {
+        appendSeparator(index++)
+        value.accept(this)
+      }
+    }
+  }
+
+  override fun visitValue(value: Value<*>) {
+    appendName(value.name)
+    val variable = variables?.get(value)
+    when {
+      variable != null -> appendVariable(variable)
+      value is ListValue<*> -> appendList(value.values())
+      value is ObjectValue<*> -> appendObject(value.values())
+      else -> LiteralWriter.write(output, value.value)
+    }
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun isRendered(argument: Argument<*>) =
+    !argument.isOmitted || (variables?.get(argument) != null)
+
+  private fun isRendered(value: Value<*>) =
+    !value.isOmitted || (variables?.get(value) != null)
+
+  private fun appendSeparator(index: Int) {
+    if (index > 0) {
+      output.append(", ")
+    }
+  }
+
+  private fun appendName(name: String) {
+    if (name.isNotEmpty()) {
+      output.append(name)
+        .append(": ")
+    }
+  }
+
+  private fun appendVariable(variable: Variables.Variable) {
+    output.append('$')
+      .append(variable.name)
+  }
+
+  private fun appendList(values: Values<*>) {
+    output.append("[ ")
+    values.accept(this)
+    output.append(" ]")
+  }
+
+  private fun appendObject(values: Values<*>) {
+    output.append("{ ")
+    values.accept(this)
+    output.append(" }")
+  }
+
+  // endregion Private Methods
+}
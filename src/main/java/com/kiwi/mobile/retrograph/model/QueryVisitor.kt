@@ -0,0 +1,26 @@
+package com.kiwi.mobile.retrograph.model
+
+/**
+ * Visitor of the query document tree.
+ *
+ * Nodes only dispatch to the matching method, it is up to the visitor whether and in which order
+ * it continues with the children.
+ */
+internal interface QueryVisitor {
+
+  fun visitDocument(document: Document)
+
+  fun visitOperation(operation: Operation)
+
+  fun visitSelectionSet(selectionSet: SelectionSet<*>)
+
+  fun visitField(field: Field<*>)
+
+  fun visitArguments(arguments: Arguments<*>)
+
+  fun visitArgument(argument: Argument<*>)
+
+  fun visitValues(values: Values<*>)
+
+  fun visitValue(value: Value<*>)
+}
@@ -0,0 +1,45 @@
+package com.kiwi.mobile.retrograph.model
+
+import com.google.gson.*
+import com.google.gson.annotations.*
+import com.google.gson.stream.*
+
+import java.io.*
+
+/**
+ * Already serialized JSON value, written to the output as it is.
+ */
+@JsonAdapter(RawJson.Adapter::class)
+data class RawJson(
+  val json: String
+):
+  Serializable {
+
+  // region Public Types
+
+  /**
+   * Writes the value verbatim, so it is not encoded as a JSON string again.
+   */
+  class Adapter:
+    TypeAdapter<RawJson>() {
+
+    override fun write(writer: JsonWriter, value: RawJson?) {
+      if (value == null) {
+        writer.nullValue()
+      } else {
+        writer.jsonValue(value.json)
+      }
+    }
+
+    override fun read(reader: JsonReader) =
+      RawJson(JsonParser().parse(reader).toString())
+  }
+
+  // endregion Public Types
+
+  // region Public Methods
+
+  override fun toString() = json
+
+  // endregion Public Methods
+}
@@ -1,13 +1,30 @@
 package com.kiwi.mobile.retrograph.model
 
+import com.google.gson.stream.*
+
 import java.io.*
 
 class Request(
   var query: String,
-  var variables: Map<String, String>
+  var variables: Map<String, RawJson>
 ):
   Serializable {
 
+  // region Private Types
+
+  private companion object {
+    private val OPERATION_NAME = Regex("^\\s*(?:query|mutation|subscription)\\s+(\\w+)")
+
+    private const val EMPTY_JSON = "{\"variables\":{}}"
+
+    private const val QUERY_JSON = "\"query\":,"
+
+    private const val EXTENSIONS_JSON =
+      ",\"extensions\":{\"persistedQuery\":{\"version\":1,\"sha256Hash\":}}"
+  }
+
+  // endregion Private Types
+
   // region Public Methods
 
   // TODO: Replace with JsonObject.
@@ -18,4 +35,158 @@ class Request(
       "}"
 
   // endregion Public Methods
+
+  // region Internal Properties
+
+  /**
+   * Whether the request is a query operation, i.e. neither mutation nor subscription.
+   */
+  internal val isQuery
+    get() = query.trimStart()
+      .let {
+        !it.startsWith(Operation.Type.MUTATION.value)
+          && !it.startsWith(Operation.Type.SUBSCRIPTION.value)
+      }
+
+  internal val isSubscription
+    get() = query.trimStart()
+      .startsWith(Operation.Type.SUBSCRIPTION.value)
+
+  /**
+   * Name of the operation, empty for anonymous operations.
+   */
+  internal val operationName
+    get() = OPERATION_NAME.find(query)
+      ?.groupValues
+      ?.get(1)
+      .orEmpty()
+
+  // endregion Internal Properties
+
+  // region Internal Methods
+
+  /**
+   * Writes the request JSON into [writer].
+   *
+   * With [persistedQueryHash] the persisted query extension is added and the query itself is
+   * written only if [includeQuery] is set.
+   */
+  internal fun writeTo(
+    writer: Writer,
+    persistedQueryHash: String? = null,
+    includeQuery: Boolean = true
+  ) {
+    JsonWriter(writer)
+      .apply {
+        beginObject()
+        if (includeQuery) {
+          name("query").value(query)
+        }
+        name("variables")
+        writeVariables()
+        if (persistedQueryHash != null) {
+          name("extensions")
+          writeExtensions(persistedQueryHash)
+        }
+        endObject()
+        flush()
+      }
+  }
+
+  /**
+   * Returns number of UTF-8 bytes written by [writeTo] with the same arguments. It is computed from
+   * the query and the already serialized variables, nothing is written.
+   */
+  internal fun jsonLength(persistedQueryHash: String? = null, includeQuery: Boolean = true): Long {
+    var length = EMPTY_JSON.length.toLong()
+    if (includeQuery) {
+      length += QUERY_JSON.length + jsonStringLength(query)
+    }
+    variables.entries.forEachIndexed { index, (name, value) ->
+      if (index > 0) {
+        length++
+      }
+      length += jsonStringLength(name) + 1 + utf8Length(value.json)
+    }
+    if (persistedQueryHash != null) {
+      length += EXTENSIONS_JSON.length + jsonStringLength(persistedQueryHash)
+    }
+    return length
+  }
+
+  /**
+   * Returns JSON of the variables, e.g. for the URL of GET requests.
+   */
+  internal fun variablesJson() = json { writeVariables() }
+
+  /**
+   * Returns JSON of the persisted query extension with the given [hash].
+   */
+  internal fun extensionsJson(hash: String) = json { writeExtensions(hash) }
+
+  // endregion Internal Methods
+
+  // region Private Methods
+
+  private fun json(write: JsonWriter.() -> Unit) =
+    StringWriter()
+      .also {
+        JsonWriter(it)
+          .apply {
+            write()
+            flush()
+          }
+      }
+      .toString()
+
+  /**
+   * Returns length of the [value] written as JSON string by [JsonWriter], with the quotes.
+   */
+  private fun jsonStringLength(value: String) = 2 + utf8Length(value, escaped = true)
+
+  /**
+   * Returns number of UTF-8 bytes of the [value], of its characters [escaped] the same way as
+   * [JsonWriter] escapes them if set. Unpaired surrogates are written as `?`.
+   */
+  private fun utf8Length(value: String, escaped: Boolean = false): Long {
+    var length = 0L
+    var index = 0
+    while (index < value.length) {
+      val c = value[index]
+      length += when {
+        escaped && (c == '"' || c == '\\' || c == '\t' || c == '\b' || c == '\n' || c == '\r') -> 2
+        escaped && (c == '\u000C') -> 2
+        escaped && (c < ' ' || c == '\u2028' || c == '\u2029') -> 6
+        c < '\u0080' -> 1
+        c < '\u0800' -> 2
+        c.isHighSurrogate() && (index + 1 < value.length) && value[index + 1].isLowSurrogate() -> {
+          index++
+          4
+        }
+        c.isSurrogate() -> 1
+        else -> 3
+      }
+      index++
+    }
+    return length
+  }
+
+  private fun JsonWriter.writeVariables() {
+    beginObject()
+    variables.forEach { (name, value) ->
+      name(name).jsonValue(value.json)
+    }
+    endObject()
+  }
+
+  private fun JsonWriter.writeExtensions(hash: String) {
+    beginObject()
+    name("persistedQuery").beginObject()
+    name("version").value(1)
+    name("sha256Hash").value(hash)
+    endObject()
+    endObject()
+  }
+
+  // endregion Private Methods
 }
@@ -0,0 +1,129 @@
+package com.kiwi.mobile.retrograph.model
+
+import com.kiwi.mobile.retrograph.extension.*
+
+/**
+ * Immutable selection plan of a response model class.
+ *
+ * The plan is compiled only once per class and shared between all threads building requests with
+ * [SelectionSet.fieldsOf]. Text of the selection set without any arguments is rendered lazily
+ * also only once per plan.
+ */
+internal class SelectionPlan private constructor(
+  val type: Class<*>
+) {
+
+  // region Public Types
+
+  companion object {
+
+    /**
+     * Plans are stored directly in the class they belong to so they are evicted together with
+     * the class when its class loader is unloaded.
+     */
+    private val PLANS = object: ClassValue<SelectionPlan>() {
+      override fun computeValue(type: Class<*>) = SelectionPlan(type)
+    }
+
+    fun of(type: Class<*>): SelectionPlan = PLANS.get(type)
+  }
+
+  enum class Kind {
+    PRIMITIVE,
+    OBJECT,
+    INLINE_FRAGMENT
+  }
+
+  /**
+   * Plan of a single selection field.
+   *
+   * @param key Name of the model class field used to match arguments.
+   * @param name GraphQL name of the field.
+   * @param alias GraphQL alias of the field or empty string.
+   * @param type Type of the field selection set, component type for lists and arrays.
+   */
+  class FieldPlan(
+    val key: String,
+    val name: String,
+    val alias: String,
+    val kind: Kind,
+    val type: Class<*>
+  ) {
+
+    // region Public Properties
+
+    /**
+     * Plan of the field selection set. It is resolved on demand, so recursive models do not
+     * recurse during the compilation.
+     */
+    val plan
+      get() = of(type)
+
+    val text: String by lazy {
+      when (kind) {
+        Kind.PRIMITIVE ->
+          "${buildAliasString()}$name"
+        Kind.OBJECT ->
+          "${buildAliasString()}$name${buildSelectionSetString(plan)}"
+        Kind.INLINE_FRAGMENT ->
+          "${buildAliasString()}$name { ... on ${type.simpleName}${buildSelectionSetString(plan)} }"
+      }
+    }
+
+    // endregion Public Properties
+
+    // region Private Methods
+
+    private fun buildAliasString() = if (alias.isNotEmpty()) "$alias: " else ""
+
+    private fun buildSelectionSetString(plan: SelectionPlan) =
+      if (!plan.isEmpty) " { ${plan.text} }" else ""
+
+    // endregion Private Methods
+  }
+
+  // endregion Public Types
+
+  // region Public Properties
+
+  val fields = type.descriptor
+    .fields
+    .map { compileField(it) }
+
+  val isEmpty
+    get() = fields.isEmpty()
+
+  val text: String by lazy {
+    type.descriptor.selection
+      ?: fields.joinToString(separator = ", ") { it.text }
+  }
+
+  // endregion Public Properties
+
+  // region Private Methods
+
+  private fun compileField(field: FieldDescriptor): FieldPlan =
+    when {
+      field.hasInlineFragment && (field.kind == FieldDescriptor.Kind.LIST) ->
+        compileField(field, Kind.INLINE_FRAGMENT, field.componentType)
+      field.hasInlineFragment && (field.kind == FieldDescriptor.Kind.ARRAY) ->
+        compileField(field, Kind.INLINE_FRAGMENT, field.componentType)
+      field.hasInlineFragment ->
+        compileField(field, Kind.INLINE_FRAGMENT, field.type)
+      field.kind.isScalar ->
+        compileField(field, Kind.PRIMITIVE, field.type)
+      (field.kind == FieldDescriptor.Kind.LIST) || (field.kind == FieldDescriptor.Kind.ARRAY) ->
+        if (field.componentKind.isScalar) {
+          compileField(field, Kind.PRIMITIVE, field.componentType)
+        } else {
+          compileField(field, Kind.OBJECT, field.componentType)
+        }
+      else ->
+        compileField(field, Kind.OBJECT, field.type)
+    }
+
+  private fun compileField(field: FieldDescriptor, kind: Kind, type: Class<*>) =
+    FieldPlan(field.name, field.aliasOrName, field.nameOrEmpty, kind, type)
+
+  // endregion Private Methods
+}
@@ -4,7 +4,15 @@ import com.kiwi.mobile.retrograph.extension.*
 
 import kotlin.reflect.*
 
-import java.lang.reflect.Field as JavaField
+/**
+ * Name prefix of fields representing fragments.
+ */
+internal const val FRAGMENT_PREFIX = "..."
+
+/**
+ * Name prefix of fields representing inline fragments with type condition.
+ */
+internal const val INLINE_FRAGMENT_PREFIX = "$FRAGMENT_PREFIX on "
 
 /**
  * Class representing selection set.
@@ -19,17 +27,31 @@ class SelectionSet<TParent>(
   // region Public Properties
 
   val isEmpty
-    get() = fields.isEmpty()
+    get() = plan?.isEmpty ?: fields.isEmpty()
 
   val isNotEmpty
     get() = !isEmpty
 
   // endregion Public Properties
 
+  // region Internal Properties
+
+  internal val selections: List<Field<TParent>>
+    get() = fields
+
+  // endregion Internal Properties
+
   // region Private Properties
 
   private val fields = mutableListOf<Field<TParent>>()
 
+  /**
+   * Plan of the selection set which was not expanded to [fields] yet. It is present only when all
+   * the selected fields come from a single [fieldsOf] call without arguments.
+   */
+  internal var plan: SelectionPlan? = null
+    private set
+
   // endregion Private Properties
 
   // region Public Methods
@@ -37,26 +59,47 @@ class SelectionSet<TParent>(
   fun field(name: String, alias: String = "") =
     Field(this, name, alias)
       .also {
+        expand()
         fields.add(it)
       }
 
   fun objectField(name: String, alias: String = "") =
     Field(this, name, alias)
       .also {
+        expand()
         fields.add(it)
       }
 
   fun inlineFragment(name: String) =
-    Field(this, "... on $name")
+    Field(this, "$INLINE_FRAGMENT_PREFIX$name")
+      .also {
+        expand()
+        fields.add(it)
+      }
+
+  /**
+   * Selects inline fragment without type condition whose fields are delivered incrementally after
+   * the rest of the response, see [Field.defer].
+   */
+  fun deferred(label: String = "") =
+    Field(this, FRAGMENT_PREFIX)
       .also {
+        expand()
         fields.add(it)
       }
+      .defer(label)
 
   fun fieldsOf(`class`: Class<*>, arguments: Any? = null) =
     apply {
-      val argumentsFields = arguments.serializableFields
-      `class`.serializableFields
-        .forEach { resolveField(it.value, argumentsFields[it.key]?.get(arguments)) }
+      val plan = SelectionPlan.of(`class`)
+      if ((arguments == null) && (this.plan == null) && fields.isEmpty()) {
+        this.plan = plan
+      } else {
+        expand()
+        val argumentsFields = arguments?.javaClass?.descriptor?.fieldsByName
+        plan.fields
+          .forEach { resolveField(it, argumentsFields?.get(it.key)?.get(arguments)) }
+      }
     }
 
   fun fieldsOf(`class`: KClass<*>, arguments: Any? = null) =
@@ -67,54 +110,72 @@ class SelectionSet<TParent>(
 
   fun finish() = parent
 
-  override fun toString() = fields.joinToString(separator = ", ")
+  override fun toString() = QueryRenderer.render(::accept)
 
   // endregion Public Methods
 
+  // region Internal Methods
+
+  /**
+   * Returns the selected fields, the [plan] is expanded first.
+   */
+  internal fun expandedSelections(): List<Field<TParent>> {
+    expand()
+    return fields
+  }
+
+  internal fun add(field: Field<TParent>) {
+    expand()
+    fields.add(field)
+  }
+
+  internal fun accept(visitor: QueryVisitor) = visitor.visitSelectionSet(this)
+
+  // endregion Internal Methods
+
   // region Private Methods
 
-  private fun resolveField(javaField: JavaField, arguments: Any?) =
-    when {
-      javaField.hasInlineFragment && javaField.type.isList ->
-        objectFragmentField(javaField, javaField.parameterUpperBound, arguments)
-      javaField.hasInlineFragment && javaField.type.isArray ->
-        objectFragmentField(javaField, javaField.parameterUpperBound, arguments)
-      javaField.hasInlineFragment ->
-        objectFragmentField(javaField, javaField.type, arguments)
-      javaField.type.isPrimitiveOrWrapper ->
-        primitiveField(javaField, arguments)
-      javaField.type.isEnum ->
-        primitiveField(javaField, arguments)
-      javaField.type.isList || javaField.type.isArray -> {
-        val componentType = javaField.parameterUpperBound
-        if (componentType.isPrimitiveOrWrapper || componentType.isEnum) {
-          primitiveField(javaField, arguments)
-        } else {
-          objectField(javaField, componentType, arguments)
-        }
-      }
-      else ->
-        objectField(javaField, javaField.type, arguments)
+  /**
+   * Replaces not yet expanded [plan] with actual [fields] so they can be modified.
+   */
+  private fun expand() {
+    val plan = this.plan ?: return
+    this.plan = null
+    plan.fields
+      .forEach { resolveField(it, null) }
+  }
+
+  private fun resolveField(fieldPlan: SelectionPlan.FieldPlan, arguments: Any?) =
+    when (fieldPlan.kind) {
+      SelectionPlan.Kind.PRIMITIVE ->
+        primitiveField(fieldPlan, arguments)
+      SelectionPlan.Kind.OBJECT ->
+        objectField(fieldPlan, arguments)
+      SelectionPlan.Kind.INLINE_FRAGMENT ->
+        objectFragmentField(fieldPlan, arguments)
     }
 
-  private fun primitiveField(javaField: JavaField, arguments: Any?) =
-    field(javaField.aliasOrName, javaField.nameOrEmpty)
+  private fun primitiveField(fieldPlan: SelectionPlan.FieldPlan, arguments: Any?) =
+    field(fieldPlan.name, fieldPlan.alias)
       .argumentsOf(arguments)
 
-  private fun objectField(javaField: JavaField, type: Class<*>, arguments: Any?) =
-    objectField(javaField.aliasOrName, javaField.nameOrEmpty)
-      .fieldsOf(type, arguments)
-      .argumentsOf(arguments, arguments.remainingArguments(type))
-
-  private fun objectFragmentField(javaField: JavaField, type: Class<*>, arguments: Any?) =
-    objectField(javaField.aliasOrName, javaField.nameOrEmpty)
-      .inlineFragment(type.simpleName)
-      .fieldsOf(type, arguments)
-      .argumentsOf(arguments, arguments.remainingArguments(type))
-
-  private fun Any?.remainingArguments(type: Class<*>): Map<String, JavaField> {
-    val typeFields = type.serializableFields
-    return serializableFields.filter { !typeFields.containsKey(it.key) }
+  private fun objectField(fieldPlan: SelectionPlan.FieldPlan, arguments: Any?) =
+    objectField(fieldPlan.name, fieldPlan.alias)
+      .fieldsOf(fieldPlan.type, arguments)
+      .argumentsOf(arguments, arguments.remainingArguments(fieldPlan.type))
+
+  private fun objectFragmentField(fieldPlan: SelectionPlan.FieldPlan, arguments: Any?) =
+    objectField(fieldPlan.name, fieldPlan.alias)
+      .inlineFragment(fieldPlan.type.simpleName)
+      .fieldsOf(fieldPlan.type, arguments)
+      .argumentsOf(arguments, arguments.remainingArguments(fieldPlan.type))
+
+  private fun Any?.remainingArguments(type: Class<*>): List<FieldDescriptor> {
+    val typeFields = type.descriptor.fieldsByName
+    return this?.javaClass?.descriptor
+      ?.fields
+      ?.filter { !typeFields.containsKey(it.name) }
+      .orEmpty()
   }
 
   // endregion Private Methods
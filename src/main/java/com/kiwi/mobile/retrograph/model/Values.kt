@@ -2,8 +2,6 @@ package com.kiwi.mobile.retrograph.model
 
 import com.kiwi.mobile.retrograph.extension.*
 
-import java.lang.reflect.Field
-
 /**
  * Class representing argument object value.
  *
@@ -16,13 +14,20 @@ class Values<TParent>(
   // region Public Properties
 
   val isEmpty
-    get() = values.isEmpty()
+    get() = values.all { it.isOmitted }
 
   val isNotEmpty
     get() = !isEmpty
 
   // endregion Public Properties
 
+  // region Internal Properties
+
+  internal val entries: List<Value<*>>
+    get() = values
+
+  // endregion Internal Properties
+
   // region Private Properties
 
   private val values = mutableListOf<Value<*>>()
@@ -52,31 +57,36 @@ class Values<TParent>(
   // TODO: Not duplicate this algorithm in Arguments.
   fun valuesOf(instance: Any?) =
     apply {
-      instance.serializableFields
-        .forEach { valuesOf(instance, it.toPair()) }
+      instance?.javaClass?.descriptor
+        ?.fields
+        ?.forEach { valuesOf(instance, it) }
     }
 
   fun finish() = parent
 
-  override fun toString() = values.joinToString(separator = ", ")
+  override fun toString() = QueryRenderer.render(::accept)
 
   // endregion Public Methods
 
+  // region Internal Methods
+
+  internal fun accept(visitor: QueryVisitor) = visitor.visitValues(this)
+
+  // endregion Internal Methods
+
   // region Private Methods
 
-  private fun valuesOf(instance: Any?, nameAndField: Pair<String, Field>) {
-    val (name, field) = nameAndField
+  private fun valuesOf(instance: Any?, field: FieldDescriptor) {
+    val name = field.name
     val value = field.get(instance)
     when {
       value == null ->
-        nullValue(instance, name)
-      field.type.isPrimitiveOrWrapper ->
-        value(name, value)
-      field.type.isEnum ->
-        value(name, value)
-      field.type.isArray ->
+        nullValue(instance, name, field)
+      field.kind.isScalar ->
+        typedValue(name, value, field)
+      field.kind == FieldDescriptor.Kind.ARRAY ->
         arrayValue(field, name, value as Array<*>)
-      field.type.isList ->
+      field.kind == FieldDescriptor.Kind.LIST ->
         listValue(field, name, value as List<*>)
       else ->
         objectValue(name)
@@ -85,17 +95,24 @@ class Values<TParent>(
     }
   }
 
-  private fun nullValue(instance: Any?, name: String) {
-    val ignoreNulls = instance?.javaClass?.hasIgnoreNulls ?: false
-    if (!ignoreNulls) {
-      value(name, null)
-    }
+  private fun nullValue(instance: Any?, name: String, field: FieldDescriptor) {
+    val ignoreNulls = instance?.javaClass?.descriptor?.hasIgnoreNulls ?: false
+    value(name, null)
+      .apply {
+        descriptor = field
+        isOmitted = ignoreNulls
+      }
+  }
+
+  private fun typedValue(name: String, value: Any?, field: FieldDescriptor) {
+    value(name, value)
+      .descriptor = field
   }
 
-  private fun arrayValue(field: Field, name: String, value: Array<*>) {
-    val componentType = field.type.componentType
-    if (componentType.isPrimitiveOrWrapper || componentType.isEnum) {
+  private fun arrayValue(field: FieldDescriptor, name: String, value: Array<*>) {
+    if (field.componentKind.isScalar) {
       listValue(name)
+        .apply { descriptor = field }
         .values(*value)
         .finish()
     } else {
@@ -111,11 +128,11 @@ class Values<TParent>(
     }
   }
 
-  private fun listValue(field: Field, name: String, value: List<*>) {
+  private fun listValue(field: FieldDescriptor, name: String, value: List<*>) {
     val array = value.toTypedArray()
-    val componentType = field.parameterUpperBound
-    if (componentType.isPrimitiveOrWrapper || componentType.isEnum) {
+    if (field.componentKind.isScalar) {
       listValue(name)
+        .apply { descriptor = field }
         .values(*array)
         .finish()
     } else {
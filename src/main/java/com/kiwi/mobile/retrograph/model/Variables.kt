@@ -0,0 +1,169 @@
+package com.kiwi.mobile.retrograph.model
+
+import com.kiwi.mobile.retrograph.extension.*
+
+import java.util.*
+
+/**
+ * Literal argument values of the document extracted to variables.
+ *
+ * Variables are named after the path of response keys and argument names, e.g.
+ * `get_flights_parameters_flyFrom`, so the rendered query stays the same for all the argument
+ * values of the same shape. Scalar lists are extracted as a whole, values without any known type
+ * (nulls set by hand) stay inline. Nulls of `@IgnoreNulls` models are declared too, only their
+ * values are omitted.
+ */
+internal class Variables private constructor():
+  QueryVisitor {
+
+  // region Public Types
+
+  class Variable(
+    val name: String,
+    val type: String,
+    val value: Any?,
+    val isOmitted: Boolean = false
+  )
+
+  companion object {
+
+    /**
+     * Extracts variables from the node visited by [accept].
+     */
+    fun of(accept: (QueryVisitor) -> Unit) =
+      Variables()
+        .also { accept(it) }
+  }
+
+  // endregion Public Types
+
+  // region Public Properties
+
+  val definitions: List<Variable>
+    get() = variables
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val variables = mutableListOf<Variable>()
+
+  private val variablesByNode = IdentityHashMap<Any, Variable>()
+
+  private val names = mutableSetOf<String>()
+
+  private val path = mutableListOf<String>()
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  /**
+   * Returns variable the given argument or value was extracted to.
+   */
+  operator fun get(node: Any): Variable? = variablesByNode[node]
+
+  override fun visitDocument(document: Document) {
+    document.operation().accept(this)
+  }
+
+  override fun visitOperation(operation: Operation) {
+    operation.selectionSet().accept(this)
+  }
+
+  override fun visitSelectionSet(selectionSet: SelectionSet<*>) {
+    selectionSet.selections.forEach { it.accept(this) }
+  }
+
+  override fun visitField(field: Field<*>) {
+    if (field.name.startsWith(FRAGMENT_PREFIX)) {
+      field.fields().accept(this)
+    } else {
+      withPath(field.responseKey) {
+        field.arguments().accept(this)
+        field.fields().accept(this)
+      }
+    }
+  }
+
+  override fun visitArguments(arguments: Arguments<*>) {
+    arguments.entries.forEach { argument ->
+      withPath(argument.name) { argument.accept(this) }
+    }
+  }
+
+  override fun visitArgument(argument: Argument<*>) {
+    when (argument) {
+      is ListArgument<*> -> extractList(argument, argument.values(), argument.descriptor)
+      is ObjectArgument<*> -> argument.values().accept(this)
+      else -> extractScalar(argument, argument.value, argument.descriptor, argument.isOmitted)
+    }
+  }
+
+  override fun visitValues(values: Values<*>) {
+    values.entries.forEachIndexed { index, value ->
+      withPath(value.name.ifEmpty { index.toString() }) { value.accept(this) }
+    }
+  }
+
+  override fun visitValue(value: Value<*>) {
+    when (value) {
+      is ListValue<*> -> extractList(value, value.values(), value.descriptor)
+      is ObjectValue<*> -> value.values().accept(this)
+      else -> extractScalar(value, value.value, value.descriptor, value.isOmitted)
+    }
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private inline fun withPath(name: String, block: () -> Unit) {
+    path.add(name)
+    block()
+    path.removeAt(path.lastIndex)
+  }
+
+  private fun extractScalar(
+    node: Any,
+    value: Any?,
+    descriptor: FieldDescriptor?,
+    isOmitted: Boolean
+  ) {
+    val type = descriptor?.variableType
+      ?: value?.let { "${it.javaClass.graphQLTypeName}!" }
+      ?: return
+    extract(node, type, value, isOmitted)
+  }
+
+  private fun extractList(node: Any, values: Values<*>, descriptor: FieldDescriptor?) {
+    val entries = values.entries
+    if (entries.any { it is ListValue<*> || it is ObjectValue<*> }) {
+      values.accept(this)
+      return
+    }
+
+    val items = entries.map { it.value }
+    val type = descriptor?.variableType
+      ?: items.firstOrNull { it != null }
+        ?.let { "[${it.javaClass.graphQLTypeName}${if (null in items) "" else "!"}]!" }
+      ?: return
+    extract(node, type, items)
+  }
+
+  private fun extract(node: Any, type: String, value: Any?, isOmitted: Boolean = false) {
+    val path = path.joinToString("_")
+    var name = path
+    var index = 1
+    while (!names.add(name)) {
+      name = "${path}_${++index}"
+    }
+    Variable(name, type, value, isOmitted)
+      .also {
+        variables.add(it)
+        variablesByNode[node] = it
+      }
+  }
+
+  // endregion Private Methods
+}
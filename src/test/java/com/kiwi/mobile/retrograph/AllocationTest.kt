@@ -0,0 +1,221 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.RealWorldTest.*
+import com.kiwi.mobile.retrograph.rxjava.*
+
+import io.reactivex.*
+import io.reactivex.disposables.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import java.lang.management.*
+
+import com.kiwi.mobile.retrograph.model.Response as GraphQLResponse
+
+import retrofit2.Response as RetrofitResponse
+
+/**
+ * Allocation budgets of the hot paths, in bytes per operation measured on the current thread.
+ *
+ * The budgets leave some headroom over the measured values, raise them only deliberately.
+ */
+class AllocationTest {
+
+  // region Private Types
+
+  private companion object {
+
+    const val WARM_UP_ITERATIONS = 20_000
+    const val ITERATIONS = 2_000
+
+    const val FIELDS_OF_BUDGET = 3_000L
+    const val MANUAL_CHAIN_BUDGET = 4_000L
+    const val BUILD_BUDGET = 3_000L
+    const val BODY_UNWRAPPING_BUDGET = 256L
+    const val RESULT_UNWRAPPING_BUDGET = 256L
+  }
+
+  /**
+   * Observer ignoring all events, so it does not allocate by itself.
+   */
+  private class IgnoringObserver<T>:
+    Observer<T> {
+
+    override fun onSubscribe(disposable: Disposable) {}
+
+    override fun onNext(value: T) {}
+
+    override fun onError(throwable: Throwable) {}
+
+    override fun onComplete() {}
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val bean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean
+
+  private val arguments = GetFlightsArguments()
+
+  private val response = RetrofitResponse.success(GraphQLResponse(data = "Hi"))
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    Assume.assumeTrue(bean?.isThreadAllocatedMemorySupported == true)
+    bean!!.isThreadAllocatedMemoryEnabled = true
+  }
+
+  @Test
+  fun whenFieldsOf_thenWithinBudget() {
+    // when
+
+    val allocated = allocatedBytesOf {
+      RequestBuilder()
+        .operation()
+        .fieldsOf(GetFlights::class, arguments)
+        .finish()
+    }
+
+    // then
+
+    assertThat(allocated)
+      .isLessThanOrEqualTo(FIELDS_OF_BUDGET)
+  }
+
+  @Test
+  fun whenManualChain_thenWithinBudget() {
+    // given
+
+    val parameters = arguments.get_flights.parameters
+    val pagination = arguments.get_flights.pagination
+
+    // when
+
+    // @formatter:off
+    val allocated = allocatedBytesOf {
+      RequestBuilder()
+        .operation()
+        .objectField("get_flights")
+          .arguments()
+            .objectArgument("parameters")
+              .value("dateFrom", parameters.dateFrom)
+              .value("dateTo", parameters.dateTo)
+              .value("flyFrom", parameters.flyFrom)
+              .value("v", parameters.v)
+              .value("partner", parameters.partner)
+              .finish()
+            .objectArgument("pagination")
+              .value("limit", pagination.limit)
+              .value("offset", pagination.offset)
+              .finish()
+            .listArgument("providers")
+              .value(Provider.KIWI)
+              .finish()
+            .finish()
+          .objectField("data")
+            .field("id")
+              .finish()
+            .field("booking_token", "bookingToken")
+              .finish()
+            .field("flyFrom")
+              .finish()
+            .field("flyTo")
+              .finish()
+            .field("cityFrom")
+              .finish()
+            .field("cityTo")
+              .finish()
+            .finish()
+          .field("currency")
+            .finish()
+          .field("more_pending", "morePending")
+            .finish()
+          .finish()
+        .finish()
+    }
+    // @formatter:on
+
+    // then
+
+    assertThat(allocated)
+      .isLessThanOrEqualTo(MANUAL_CHAIN_BUDGET)
+  }
+
+  @Test
+  fun whenBuild_thenWithinBudget() {
+    // given
+
+    val builder = RequestBuilder()
+      .operation()
+      .fieldsOf(GetFlights::class, arguments)
+      .finish()
+
+    // when
+
+    val allocated = allocatedBytesOf { builder.build() }
+
+    // then
+
+    assertThat(allocated)
+      .isLessThanOrEqualTo(BUILD_BUDGET)
+  }
+
+  @Test
+  fun whenBodyUnwrapping_thenWithinBudget() {
+    // given
+
+    val observable = GraphQLBodyObservable(Observable.just(response))
+    val observer = IgnoringObserver<String>()
+
+    // when
+
+    val allocated = allocatedBytesOf { observable.subscribe(observer) }
+
+    // then
+
+    assertThat(allocated)
+      .isLessThanOrEqualTo(BODY_UNWRAPPING_BUDGET)
+  }
+
+  @Test
+  fun whenResultUnwrapping_thenWithinBudget() {
+    // given
+
+    val observable = GraphQLResultObservable(Observable.just(response))
+    val observer = IgnoringObserver<retrofit2.adapter.rxjava2.Result<String>>()
+
+    // when
+
+    val allocated = allocatedBytesOf { observable.subscribe(observer) }
+
+    // then
+
+    assertThat(allocated)
+      .isLessThanOrEqualTo(RESULT_UNWRAPPING_BUDGET)
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  /**
+   * Returns average number of bytes allocated by one run of the [operation] after warm up.
+   */
+  private inline fun allocatedBytesOf(operation: () -> Any?): Long {
+    repeat(WARM_UP_ITERATIONS) { operation() }
+
+    val thread = Thread.currentThread().id
+    val before = bean!!.getThreadAllocatedBytes(thread)
+    repeat(ITERATIONS) { operation() }
+    return (bean.getThreadAllocatedBytes(thread) - before) / ITERATIONS
+  }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,287 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+class BatchingTest {
+
+  // region Private Types
+
+  private companion object {
+    private const val WINDOW = 200L
+    private const val MAX_BATCH_SIZE = 3
+    private const val FAILING_QUERY = "query { fail }"
+  }
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun single(@Body request: Request): Single<String>
+
+    @GraphQL
+    @POST("/")
+    fun observable(@Body request: Request): Observable<String>
+  }
+
+  /**
+   * Server answering every query with the query itself, except the failing one.
+   */
+  private class BatchDispatcher:
+    Dispatcher() {
+
+    // region Public Properties
+
+    val bodies = CopyOnWriteArrayList<JsonElement>()
+
+    // endregion Public Properties
+
+    // region Public Methods
+
+    override fun dispatch(request: RecordedRequest): MockResponse {
+      val body = JsonParser().parse(request.body.readUtf8())
+      bodies.add(body)
+
+      val responses = JsonArray()
+      body.asJsonArray.forEach { responses.add(responseOf(it.asJsonObject)) }
+      return MockResponse().setBody(responses.toString())
+    }
+
+    // endregion Public Methods
+
+    // region Private Methods
+
+    private fun responseOf(request: JsonObject): JsonObject {
+      val query = request["query"].asString
+      return JsonObject()
+        .apply {
+          if (query == FAILING_QUERY) {
+            add("data", JsonNull.INSTANCE)
+            add("errors", JsonArray().apply { add("Failed") })
+          } else {
+            addProperty("data", query)
+          }
+        }
+    }
+
+    // endregion Private Methods
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val dispatcher = BatchDispatcher()
+
+  private lateinit var service: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    server.dispatcher = dispatcher
+    val retrofit = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(
+        GraphQLCallAdapterFactory.createAsyncWithBatching(
+          WINDOW, TimeUnit.MILLISECONDS, MAX_BATCH_SIZE
+        )
+      )
+      .build()
+    service = retrofit.create(Service::class.java)
+  }
+
+  @Test
+  fun whenCallsConcurrent_thenSentInOneRequest() {
+    // when
+
+    val observers = listOf("query { a }", "query { b }")
+      .map { service.single(requestOf(it)).test() }
+      .plus(service.observable(requestOf("query { c }")).test())
+      .onEach { it.awaitTerminalEvent(1, TimeUnit.SECONDS) }
+
+    // then
+
+    assertThat(observers.map { it.values() })
+      .containsExactly(listOf("query { a }"), listOf("query { b }"), listOf("query { c }"))
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+    assertThat(dispatcher.bodies[0].asJsonArray.map { it.asJsonObject["query"].asString })
+      .containsExactly("query { a }", "query { b }", "query { c }")
+    val recorded = server.takeRequest()
+    assertThat(recorded.getHeader("Content-Length"))
+      .isEqualTo(recorded.bodySize.toString())
+  }
+
+  @Test
+  fun whenMaxBatchSizeReached_thenBatchSentImmediately() {
+    // when
+
+    val observers = (1..MAX_BATCH_SIZE + 1)
+      .map { service.single(requestOf("query { a$it }")).test() }
+    observers.take(MAX_BATCH_SIZE)
+      .forEach { it.awaitTerminalEvent(WINDOW / 2, TimeUnit.MILLISECONDS) }
+
+    // then
+
+    assertThat(observers.map { it.valueCount() })
+      .containsExactly(1, 1, 1, 0)
+
+    observers.last()
+      .awaitTerminalEvent(1, TimeUnit.SECONDS)
+    observers.last()
+      .assertValue("query { a4 }")
+    assertThat(dispatcher.bodies.map { it.asJsonArray.size() })
+      .containsExactly(MAX_BATCH_SIZE, 1)
+  }
+
+  @Test
+  fun whenCallsAddedConcurrently_thenMaxBatchSizeNotExceeded() {
+    // given
+
+    val executor = Executors.newFixedThreadPool(8)
+
+    // when
+
+    val observers = (1..30)
+      .map { index ->
+        executor.submit(Callable { service.single(requestOf("query { a$index }")).test() })
+      }
+      .map { it.get() }
+      .onEach { it.awaitTerminalEvent(1, TimeUnit.SECONDS) }
+    executor.shutdown()
+
+    // then
+
+    observers.forEach { it.assertValueCount(1) }
+    assertThat(dispatcher.bodies.map { it.asJsonArray.size() })
+      .allMatch { it <= MAX_BATCH_SIZE }
+    assertThat(dispatcher.bodies.sumBy { it.asJsonArray.size() })
+      .isEqualTo(30)
+  }
+
+  @Test
+  fun whenSynchronousCallsFromThreads_thenSentInOneRequest() {
+    // given
+
+    val service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(
+        GraphQLCallAdapterFactory.createWithBatching(WINDOW, TimeUnit.MILLISECONDS, MAX_BATCH_SIZE)
+      )
+      .build()
+      .create(Service::class.java)
+    val executor = Executors.newFixedThreadPool(2)
+
+    // when
+
+    val responses = listOf("query { a }", "query { b }")
+      .map { executor.submit(Callable { service.single(requestOf(it)).blockingGet() }) }
+      .map { it.get(1, TimeUnit.SECONDS) }
+    executor.shutdown()
+
+    // then
+
+    assertThat(responses)
+      .containsExactly("query { a }", "query { b }")
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+  }
+
+  @Test
+  fun whenOneCallFails_thenOtherCallsSucceed() {
+    // when
+
+    val success = service.single(requestOf("query { a }"))
+      .test()
+    val failure = service.single(requestOf(FAILING_QUERY))
+      .test()
+    success.awaitTerminalEvent(1, TimeUnit.SECONDS)
+    failure.awaitTerminalEvent(1, TimeUnit.SECONDS)
+
+    // then
+
+    success.assertValue("query { a }")
+    failure.assertError(HttpException::class.java)
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+  }
+
+  @Test
+  fun whenCallDisposedBeforeSent_thenLeftOutOfBatch() {
+    // given
+
+    val disposed = service.single(requestOf("query { a }"))
+      .test()
+    val sent = service.single(requestOf("query { b }"))
+      .test()
+
+    // when
+
+    disposed.dispose()
+    sent.awaitTerminalEvent(1, TimeUnit.SECONDS)
+
+    // then
+
+    sent.assertValue("query { b }")
+    disposed.assertEmpty()
+    assertThat(dispatcher.bodies.single().asJsonArray.map { it.asJsonObject["query"].asString })
+      .containsExactly("query { b }")
+  }
+
+  @Test
+  fun whenServerFails_thenAllCallsFail() {
+    // given
+
+    server.dispatcher = object: Dispatcher() {
+      override fun dispatch(request: RecordedRequest) = MockResponse().setResponseCode(500)
+    }
+
+    // when
+
+    val observers = listOf("query { a }", "query { b }")
+      .map { service.single(requestOf(it)).test() }
+      .onEach { it.awaitTerminalEvent(1, TimeUnit.SECONDS) }
+
+    // then
+
+    observers.forEach { it.assertError(HttpException::class.java) }
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun requestOf(query: String) = Request(query, mapOf())
+
+  // endregion Private Methods
+}
@@ -0,0 +1,188 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+import org.junit.Assert.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+class DeduplicationTest {
+
+  // region Private Types
+
+  private companion object {
+    private const val DELAY = 200L
+  }
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun single(@Body request: Request): Single<String>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val client = OkHttpClient()
+
+  private val request = Request("query { hello }", mapOf())
+
+  private lateinit var service: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    val retrofit = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.createAsyncWithDeduplication())
+      .callFactory(client)
+      .build()
+    service = retrofit.create(Service::class.java)
+  }
+
+  @Test
+  fun whenIdenticalQueriesInFlight_thenOneRequestSent() {
+    // given
+
+    server.enqueue(delayedResponse("Hi"))
+
+    // when
+
+    val observers = listOf(
+      service.single(request).test(),
+      service.single(Request("query { hello }", mapOf())).test()
+    )
+      .onEach { it.awaitTerminalEvent(1, TimeUnit.SECONDS) }
+
+    // then
+
+    observers.forEach { it.assertValue("Hi") }
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+  }
+
+  @Test
+  fun whenQueriesDiffer_thenRequestsSentSeparately() {
+    // given
+
+    server.enqueue(delayedResponse("Hi"))
+    server.enqueue(delayedResponse("Bye"))
+
+    // when
+
+    val observers = listOf(
+      service.single(request).test(),
+      service.single(Request("query { bye }", mapOf())).test()
+    )
+      .onEach { it.awaitTerminalEvent(1, TimeUnit.SECONDS) }
+
+    // then
+
+    assertThat(observers.flatMap { it.values() })
+      .containsExactlyInAnyOrder("Hi", "Bye")
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+  }
+
+  @Test
+  fun whenMutationsInFlight_thenNotShared() {
+    // given
+
+    val mutation = Request("mutation { book }", mapOf())
+    repeat(2) {
+      server.enqueue(delayedResponse("Booked"))
+    }
+
+    // when
+
+    listOf(service.single(mutation).test(), service.single(mutation).test())
+      .forEach { it.awaitTerminalEvent(1, TimeUnit.SECONDS) }
+
+    // then
+
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+  }
+
+  @Test
+  fun whenQueryCompleted_thenNextQuerySentAgain() {
+    // given
+
+    server.enqueue(MockResponse().setBody("""{ "data": "Hi" }"""))
+    server.enqueue(MockResponse().setBody("""{ "data": "Hi again" }"""))
+    service.single(request)
+      .blockingGet()
+
+    // when
+
+    val result = service.single(request)
+      .blockingGet()
+
+    // then
+
+    assertEquals("Hi again", result)
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+  }
+
+  @Test
+  fun whenNotAllSubscribersDisposed_thenCallNotCanceled() {
+    // given
+
+    val first = service.single(request)
+      .subscribe({}, {})
+    val second = service.single(request)
+      .subscribe({}, {})
+    val calls = client.dispatcher.runningCalls()
+
+    // when
+
+    first.dispose()
+
+    // then
+
+    assertEquals(1, calls.size)
+    assertFalse(calls[0].isCanceled())
+
+    second.dispose()
+    assertTrue(calls[0].isCanceled())
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun delayedResponse(data: String) =
+    MockResponse()
+      .setBody("""{ "data": "$data" }""")
+      .setBodyDelay(DELAY, TimeUnit.MILLISECONDS)
+
+  // endregion Private Methods
+}
@@ -0,0 +1,230 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.exception.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+class ElementStreamTest {
+
+  // region Private Types
+
+  data class Flight(
+    val id: String
+  )
+
+  internal interface Service {
+
+    @GraphQL
+    @ElementPath("get_flights.data")
+    @POST("/")
+    fun flights(@Body request: Request): Flowable<Flight>
+
+    @GraphQL
+    @ElementPath("get_flights.data")
+    @POST("/")
+    fun numbers(@Body request: Request): Flowable<Int>
+
+    @GraphQL
+    @ElementPath("get_flights.data")
+    @POST("/")
+    fun single(@Body request: Request): Single<Flight>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val request = Request("query { get_flights { data { id } } }", mapOf())
+
+  private lateinit var service: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    val retrofit = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.create())
+      .build()
+    service = retrofit.create(Service::class.java)
+  }
+
+  @Test
+  fun whenElementsRequested_thenOnlyRequestedEmitted() {
+    // given
+
+    server.enqueue(MockResponse().setBody(flightsBody(1000)))
+    val subscriber = service.flights(request)
+      .test(0)
+
+    // when
+
+    subscriber.request(2)
+
+    // then
+
+    subscriber.assertValues(Flight("1"), Flight("2"))
+    subscriber.assertNotComplete()
+
+    subscriber.request(Long.MAX_VALUE)
+    subscriber.assertValueCount(1000)
+    subscriber.assertComplete()
+  }
+
+  @Test
+  fun whenPathMissing_thenCompletedEmpty() {
+    // given
+
+    server.enqueue(MockResponse().setBody("""{ "data": { "get_flights": null } }"""))
+
+    // when
+
+    val subscriber = service.flights(request)
+      .test()
+
+    // then
+
+    subscriber.assertNoValues()
+    subscriber.assertComplete()
+  }
+
+  @Test
+  fun whenResponseHasErrors_thenErrorAfterElements() {
+    // given
+
+    server.enqueue(
+      MockResponse().setBody(
+        """{ "data": { "get_flights": { "data": [ { "id": "1" } ] } }, "errors": [ "Partial" ] }"""
+      )
+    )
+
+    // when
+
+    val subscriber = service.flights(request)
+      .test()
+
+    // then
+
+    subscriber.assertValue(Flight("1"))
+    subscriber.assertError(GraphQLException::class.java)
+  }
+
+  @Test
+  fun whenHttpError_thenHttpException() {
+    // given
+
+    server.enqueue(MockResponse().setResponseCode(500))
+
+    // when
+
+    val subscriber = service.flights(request)
+      .test()
+
+    // then
+
+    subscriber.assertError(HttpException::class.java)
+  }
+
+  @Test
+  fun whenCanceled_thenNextRequestSucceeds() {
+    // given
+
+    server.enqueue(MockResponse().setBody(flightsBody(1000)))
+    server.enqueue(MockResponse().setBody(flightsBody(1)))
+    service.flights(request)
+      .test(1)
+      .cancel()
+
+    // when
+
+    val subscriber = service.flights(request)
+      .test()
+
+    // then
+
+    subscriber.assertValue(Flight("1"))
+    subscriber.assertComplete()
+  }
+
+  @Test
+  fun whenListContainsNull_thenNullSkipped() {
+    // given
+
+    server.enqueue(
+      MockResponse().setBody("""{ "data": { "get_flights": { "data": [ 1, null, 2 ] } } }""")
+    )
+
+    // when
+
+    val subscriber = service.numbers(request)
+      .test()
+
+    // then
+
+    subscriber.assertValues(1, 2)
+    subscriber.assertComplete()
+  }
+
+  @Test
+  fun whenStreamingConverter_thenElementsReadByIt() {
+    // given
+
+    server.enqueue(MockResponse().setBody(flightsBody(3)))
+    val service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.createStreaming())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.create())
+      .build()
+      .create(Service::class.java)
+
+    // when
+
+    val subscriber = service.flights(request)
+      .test()
+
+    // then
+
+    subscriber.assertValues(Flight("1"), Flight("2"), Flight("3"))
+    subscriber.assertComplete()
+  }
+
+  @Test(expected = IllegalArgumentException::class)
+  fun whenNotFlowable_thenExceptionThrown() {
+    service.single(request)
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun flightsBody(count: Int) =
+    (1..count).joinToString(
+      prefix = """{ "data": { "get_flights": { "data": [ """,
+      postfix = " ] } } }"
+    ) { """{ "id": "$it" }""" }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,237 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+class EventListenerTest {
+
+  // region Private Types
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun single(@Body request: Request): Single<String>
+  }
+
+  private class RecordingListener:
+    GraphQLEventListener() {
+
+    val events = CopyOnWriteArrayList<String>()
+
+    override fun requestBuildStart(call: Call<*>) {
+      events.add("requestBuildStart")
+    }
+
+    override fun requestBuildEnd(
+      call: Call<*>,
+      operationName: String,
+      queryHash: String,
+      querySize: Int,
+      variablesSize: Int
+    ) {
+      events.add("requestBuildEnd $operationName ${queryHash.length} $querySize $variablesSize")
+    }
+
+    override fun networkStart(call: Call<*>, operationName: String, queryHash: String) {
+      events.add("networkStart")
+    }
+
+    override fun requestBodyEnd(
+      call: Call<*>,
+      operationName: String,
+      queryHash: String,
+      byteCount: Long
+    ) {
+      events.add("requestBodyEnd $byteCount")
+    }
+
+    override fun networkEnd(call: Call<*>, operationName: String, queryHash: String) {
+      events.add("networkEnd")
+    }
+
+    override fun parseStart(call: Call<*>, operationName: String, queryHash: String) {
+      events.add("parseStart")
+    }
+
+    override fun parseEnd(
+      call: Call<*>,
+      operationName: String,
+      queryHash: String,
+      byteCount: Long
+    ) {
+      events.add("parseEnd $byteCount")
+    }
+
+    override fun graphQLErrors(
+      call: Call<*>,
+      operationName: String,
+      queryHash: String,
+      errors: List<String>
+    ) {
+      events.add("graphQLErrors $errors")
+    }
+
+    override fun callDisposed(call: Call<*>, operationName: String, queryHash: String) {
+      events.add("callDisposed")
+    }
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val request = Request("query Hello { hello }", mapOf())
+
+  private val listener = RecordingListener()
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Test
+  fun whenCallSucceeds_thenPhasesReported() {
+    // given
+
+    val body = """{ "data": "Hi" }"""
+    server.enqueue(MockResponse().setBody(body))
+
+    // when
+
+    val result = serviceOf(GraphQLCallAdapterFactory.create())
+      .single(request)
+      .blockingGet()
+
+    // then
+
+    assertThat(result)
+      .isEqualTo("Hi")
+    assertThat(listener.events)
+      .containsExactly(
+        "requestBuildStart",
+        "requestBuildEnd Hello 64 21 0",
+        "networkStart",
+        "requestBodyEnd ${server.takeRequest().bodySize}",
+        "networkEnd",
+        "parseStart",
+        "parseEnd ${body.length}"
+      )
+  }
+
+  @Test
+  fun whenResponseHasErrors_thenErrorsReported() {
+    // given
+
+    server.enqueue(MockResponse().setBody("""{ "errors": [ "Failed" ] }"""))
+
+    // when
+
+    val observer = serviceOf(GraphQLCallAdapterFactory.create())
+      .single(request)
+      .test()
+
+    // then
+
+    observer.assertNoValues()
+    assertThat(listener.events)
+      .contains("graphQLErrors [Failed]")
+  }
+
+  @Test
+  fun whenServerFails_thenNetworkEndReported() {
+    // given
+
+    server.enqueue(MockResponse().setResponseCode(500))
+
+    // when
+
+    val observer = serviceOf(GraphQLCallAdapterFactory.create())
+      .single(request)
+      .test()
+
+    // then
+
+    observer.assertError(HttpException::class.java)
+    assertThat(listener.events)
+      .contains("networkEnd")
+      .doesNotContain("parseStart")
+  }
+
+  @Test
+  fun whenDecorated_thenPhasesReported() {
+    // given
+
+    server.enqueue(MockResponse().setBody("""{ "data": "Hi" }"""))
+
+    // when
+
+    serviceOf(GraphQLCallAdapterFactory.createWithPersistedQueries())
+      .single(request)
+      .blockingGet()
+
+    // then
+
+    assertThat(listener.events)
+      .contains("networkStart", "networkEnd", "parseStart")
+    assertThat(server.takeRequest().body.readUtf8())
+      .contains("persistedQuery")
+  }
+
+  @Test
+  fun whenDisposed_thenDisposalReported() {
+    // given
+
+    server.enqueue(
+      MockResponse()
+        .setBody("""{ "data": "Hi" }""")
+        .setBodyDelay(1, TimeUnit.SECONDS)
+    )
+    val disposable = serviceOf(GraphQLCallAdapterFactory.createAsync())
+      .single(request)
+      .subscribe({}, {})
+
+    // when
+
+    disposable.dispose()
+
+    // then
+
+    assertThat(listener.events)
+      .contains("callDisposed")
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun serviceOf(factory: GraphQLCallAdapterFactory) =
+    Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(factory.withEventListener(listener))
+      .build()
+      .create(Service::class.java)
+
+  // endregion Private Methods
+}
@@ -0,0 +1,157 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+class GetQueryTest {
+
+  // region Private Types
+
+  private companion object {
+    private const val SHORT_URL_LENGTH = 64
+  }
+
+  internal interface Service {
+
+    @GraphQL(method = GraphQL.Method.GET)
+    @POST("/")
+    fun get(@Body request: Request): Single<String>
+
+    @GraphQL(method = GraphQL.Method.GET, maxUrlLength = SHORT_URL_LENGTH)
+    @POST("/")
+    fun shortGet(@Body request: Request): Single<String>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Public Methods
+
+  @Test
+  fun whenQuery_thenSentByGet() {
+    // given
+
+    server.enqueue(MockResponse().setBody("""{ "data": "Hi" }"""))
+    val request = Request("query { hello }", mapOf("limit" to RawJson("5")))
+
+    // when
+
+    val result = serviceOf(GraphQLCallAdapterFactory.create())
+      .get(request)
+      .blockingGet()
+
+    // then
+
+    val recorded = server.takeRequest()
+    assertThat(result)
+      .isEqualTo("Hi")
+    assertThat(recorded.method)
+      .isEqualTo("GET")
+    assertThat(recorded.requestUrl!!.queryParameter("query"))
+      .isEqualTo("query { hello }")
+    assertThat(recorded.requestUrl!!.queryParameter("variables"))
+      .isEqualTo("""{"limit":5}""")
+    assertThat(recorded.bodySize)
+      .isEqualTo(0)
+  }
+
+  @Test
+  fun whenMutation_thenSentByPost() {
+    // given
+
+    server.enqueue(MockResponse().setBody("""{ "data": "Booked" }"""))
+
+    // when
+
+    serviceOf(GraphQLCallAdapterFactory.create())
+      .get(Request("mutation { book }", mapOf()))
+      .blockingGet()
+
+    // then
+
+    val recorded = server.takeRequest()
+    assertThat(recorded.method)
+      .isEqualTo("POST")
+    assertThat(recorded.requestUrl!!.querySize)
+      .isEqualTo(0)
+  }
+
+  @Test
+  fun whenUrlTooLong_thenSentByPost() {
+    // given
+
+    server.enqueue(MockResponse().setBody("""{ "data": "Hi" }"""))
+    val query = "query { ${(1..SHORT_URL_LENGTH).joinToString(", ") { "field$it" }} }"
+
+    // when
+
+    serviceOf(GraphQLCallAdapterFactory.create())
+      .shortGet(Request(query, mapOf()))
+      .blockingGet()
+
+    // then
+
+    val recorded = server.takeRequest()
+    assertThat(recorded.method)
+      .isEqualTo("POST")
+    assertThat(JsonParser().parse(recorded.body.readUtf8()).asJsonObject["query"].asString)
+      .isEqualTo(query)
+  }
+
+  @Test
+  fun whenPersistedQuery_thenOnlyHashSentByGet() {
+    // given
+
+    server.enqueue(MockResponse().setBody("""{ "data": "Hi" }"""))
+
+    // when
+
+    serviceOf(GraphQLCallAdapterFactory.createWithPersistedQueries())
+      .get(Request("query { hello }", mapOf()))
+      .blockingGet()
+
+    // then
+
+    val url = server.takeRequest().requestUrl!!
+    assertThat(url.queryParameter("query"))
+      .isNull()
+    assertThat(JsonParser().parse(url.queryParameter("extensions")).asJsonObject.toString())
+      .startsWith("""{"persistedQuery":{"version":1,"sha256Hash":""")
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun serviceOf(callAdapterFactory: CallAdapter.Factory) =
+    Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(callAdapterFactory)
+      .build()
+      .create(Service::class.java)
+
+  // endregion Private Methods
+}
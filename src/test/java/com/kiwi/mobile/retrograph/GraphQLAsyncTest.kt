@@ -0,0 +1,131 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+import io.reactivex.observers.*
+
+import okhttp3.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+import org.junit.Assert.*
+
+import retrofit2.*
+import retrofit2.adapter.rxjava2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+class GraphQLAsyncTest {
+
+  // region Private Types
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun body(@Body request: Request): Single<String>
+
+    @GraphQL
+    @POST("/")
+    fun result(@Body request: Request): Observable<Result<String>>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val client = OkHttpClient()
+
+  private val request = Request("query { hello }", mapOf())
+
+  private lateinit var service: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    val retrofit = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.createAsync())
+      .callFactory(client)
+      .build()
+    service = retrofit.create(Service::class.java)
+  }
+
+  @Test
+  fun whenAsync_thenSubscribeNotBlockedAndBodyUnwrapped() {
+    // given
+
+    val observer = TestObserver<String>()
+
+    // when
+
+    service.body(request)
+      .subscribe(observer)
+
+    // then
+
+    assertFalse(observer.await(1, TimeUnit.SECONDS))
+
+    server.enqueue(MockResponse().setBody("""{ "data": "Hi" }"""))
+
+    observer.awaitTerminalEvent(1, TimeUnit.SECONDS)
+    observer.assertValue("Hi")
+  }
+
+  @Test
+  fun whenAsyncAndHttpError_thenResultContainsResponse() {
+    // given
+
+    server.enqueue(MockResponse().setResponseCode(404))
+
+    // when
+
+    val result = service.result(request)
+      .blockingFirst()
+
+    // then
+
+    assertThat(result.isError)
+      .isFalse()
+    assertThat(result.response()!!.code())
+      .isEqualTo(404)
+  }
+
+  @Test
+  fun whenAsyncDisposed_thenCallCanceled() {
+    // given
+
+    val disposable = service.body(request)
+      .subscribe({}, {})
+    val calls = client.dispatcher.runningCalls()
+
+    // when
+
+    disposable.dispose()
+
+    // then
+
+    assertEquals(1, calls.size)
+    assertTrue(calls[0].isCanceled())
+  }
+
+  // endregion Public Methods
+}
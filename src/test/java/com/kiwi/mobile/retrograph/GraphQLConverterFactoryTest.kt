@@ -0,0 +1,258 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.exception.*
+import com.kiwi.mobile.retrograph.model.*
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+class GraphQLConverterFactoryTest {
+
+  // region Private Types
+
+  private companion object {
+    private const val GRAPH_QL_BODY = """{ "data": "Hi" }"""
+    private const val FLIGHTS_BODY =
+      """{ "extensions": { "cost": [ 1, { "a": null } ] }, "data": [ { "id": "1" } ] }"""
+    private const val ERRORS_BODY =
+      """{ "data": null, "errors": [ { "message": "Unknown flight" }, "Failed" ] }"""
+  }
+
+  data class Flight(
+    val id: String
+  )
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun builder(@Body builder: RequestBuilder): Single<String>
+
+    @GraphQL
+    @POST("/")
+    fun request(@Body request: Request): Single<String>
+
+    @GraphQL
+    @POST("/")
+    fun flights(@Body request: Request): Single<List<Flight>>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private lateinit var service: Service
+
+  private lateinit var streamingService: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    val retrofit = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.create())
+      .build()
+    service = retrofit.create(Service::class.java)
+    streamingService = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.createStreaming())
+      .addCallAdapterFactory(RxJava2CallAdapterFactory.create())
+      .build()
+      .create(Service::class.java)
+  }
+
+  @Test
+  fun whenBuilderIsBody_thenRequestStreamed() {
+    // given
+
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+
+    // @formatter:off
+    val builder = RequestBuilder()
+      .operation(Operation.Type.QUERY, "search")
+        .objectField("search")
+          .arguments()
+            .argument("query", "\"quoted\"\nline\\")
+            .finish()
+          .field("id")
+            .finish()
+          .finish()
+        .finish()
+      .variable("first", 10)
+      .variable("filter", mapOf("language" to "kotlin"))
+      .variable("after", null)
+    // @formatter:on
+
+    // when
+
+    val response = service.builder(builder)
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .isEqualTo("Hi")
+
+    val recorded = server.takeRequest()
+    val body = JsonParser().parse(recorded.body.readUtf8()).asJsonObject
+
+    assertThat(recorded.getHeader("Content-Type"))
+      .isEqualTo("application/json; charset=UTF-8")
+    assertThat(recorded.getHeader("Content-Length"))
+      .isEqualTo(recorded.bodySize.toString())
+    assertThat(body["query"].asString)
+      .isEqualTo(builder.build().query)
+      .isEqualTo("query search { search(query: \"\\\"quoted\\\"\\nline\\\\\") { id } }")
+    assertThat(body["variables"])
+      .isEqualTo(
+        JsonParser().parse("""{ "first": 10, "filter": { "language": "kotlin" }, "after": null }""")
+      )
+  }
+
+  @Test
+  fun whenChunkedBodies_thenBuilderRenderedIntoBody() {
+    // given
+
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+    val service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create().withChunkedRequestBodies())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.create())
+      .build()
+      .create(Service::class.java)
+
+    // @formatter:off
+    val builder = RequestBuilder()
+      .operation()
+        .objectField("search")
+          .arguments()
+            .argument("query", "Praha ✈ 😀")
+            .finish()
+          .field("id")
+            .finish()
+          .finish()
+        .finish()
+    // @formatter:on
+
+    // when
+
+    service.builder(builder)
+      .blockingGet()
+
+    // then
+
+    val recorded = server.takeRequest()
+    assertThat(recorded.getHeader("Transfer-Encoding"))
+      .isEqualTo("chunked")
+    assertThat(JsonParser().parse(recorded.body.readUtf8()).asJsonObject["query"].asString)
+      .isEqualTo(builder.build().query)
+  }
+
+  @Test
+  fun whenRequestIsBody_thenRequestStreamed() {
+    // given
+
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+
+    val request = Request("query { id }", mapOf("first" to RawJson("10")))
+
+    // when
+
+    val response = service.request(request)
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .isEqualTo("Hi")
+    val recorded = server.takeRequest()
+    assertThat(recorded.body.readUtf8())
+      .isEqualTo("""{"query":"query { id }","variables":{"first":10}}""")
+    assertThat(recorded.getHeader("Content-Length"))
+      .isEqualTo(recorded.bodySize.toString())
+  }
+
+  @Test
+  fun whenStreaming_thenDataDecodedAndUnknownKeysSkipped() {
+    // given
+
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+
+    // when
+
+    val response = streamingService.flights(Request("query { flights { id } }", mapOf()))
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .containsExactly(Flight("1"))
+  }
+
+  @Test
+  fun whenStreamingAndErrorsPresent_thenGraphQLExceptionThrown() {
+    // given
+
+    server.enqueue(MockResponse().setBody(ERRORS_BODY))
+
+    // when
+
+    val observer = streamingService.flights(Request("query { flights { id } }", mapOf()))
+      .test()
+
+    // then
+
+    observer.assertError(GraphQLException::class.java)
+      .assertErrorMessage("""[{"message":"Unknown flight"}, Failed]""")
+  }
+
+  @Test
+  fun whenStreamingWithGraphQLCallAdapter_thenResponseWrapperDecoded() {
+    // given
+
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+    val service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.createStreaming())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.create())
+      .build()
+      .create(Service::class.java)
+
+    // when
+
+    val response = service.flights(Request("query { flights { id } }", mapOf()))
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .containsExactly(Flight("1"))
+  }
+
+  // endregion Public Methods
+}
@@ -0,0 +1,228 @@
+package com.kiwi.mobile.retrograph
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+class IncrementalDeliveryTest {
+
+  // region Private Types
+
+  data class Search(
+    val id: String,
+    val price: Int?,
+    val alternatives: List<Int>?
+  )
+
+  data class Data(
+    val search: Search
+  )
+
+  internal interface Service {
+
+    @GraphQL
+    @IncrementalDelivery
+    @POST("/")
+    fun observable(@Body request: Request): Observable<Data>
+
+    @GraphQL
+    @IncrementalDelivery
+    @POST("/")
+    fun single(@Body request: Request): Single<Data>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val request = Request(
+    "query { search { id, ... @defer { price }, alternatives @stream(initialCount: 1) } }",
+    mapOf()
+  )
+
+  private lateinit var service: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    service = serviceOf(GraphQLCallAdapterFactory.create())
+  }
+
+  @Test
+  fun whenPartsDelivered_thenMergedResponsesEmitted() {
+    // given
+
+    server.enqueue(multipartResponse())
+
+    // when
+
+    val observer = service.observable(request)
+      .test()
+
+    // then
+
+    observer.assertValues(
+      Data(Search("1", null, listOf(1))),
+      Data(Search("1", 5, listOf(1))),
+      Data(Search("1", 5, listOf(1, 2, 3)))
+    )
+    observer.assertComplete()
+    assertThat(server.takeRequest().getHeader("Accept"))
+      .startsWith("multipart/mixed")
+  }
+
+  @Test
+  fun whenSingle_thenCompleteResponseEmitted() {
+    // given
+
+    server.enqueue(multipartResponse())
+
+    // when
+
+    val observer = service.single(request)
+      .test()
+
+    // then
+
+    observer.assertValue(Data(Search("1", 5, listOf(1, 2, 3))))
+  }
+
+  @Test
+  fun whenNotMultipart_thenResponseEmitted() {
+    // given
+
+    server.enqueue(
+      MockResponse().setBody(
+        """{ "data": { "search": { "id": "1", "price": 5, "alternatives": [ 1 ] } } }"""
+      )
+    )
+
+    // when
+
+    val observer = service.observable(request)
+      .test()
+
+    // then
+
+    observer.assertValue(Data(Search("1", 5, listOf(1))))
+    observer.assertComplete()
+  }
+
+  @Test
+  fun whenAsync_thenMergedResponsesEmitted() {
+    // given
+
+    server.enqueue(multipartResponse())
+
+    // when
+
+    val observer = serviceOf(GraphQLCallAdapterFactory.createAsync())
+      .observable(request)
+      .test()
+
+    // then
+
+    observer.awaitTerminalEvent(1, TimeUnit.SECONDS)
+    observer.assertValueCount(3)
+    observer.assertComplete()
+  }
+
+  @Test
+  fun whenStreamingConverter_thenMergedResponsesReadByIt() {
+    // given
+
+    server.enqueue(multipartResponse())
+    val service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.createStreaming())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.create())
+      .build()
+      .create(Service::class.java)
+
+    // when
+
+    val observer = service.observable(request)
+      .test()
+
+    // then
+
+    observer.assertValues(
+      Data(Search("1", null, listOf(1))),
+      Data(Search("1", 5, listOf(1))),
+      Data(Search("1", 5, listOf(1, 2, 3)))
+    )
+    observer.assertComplete()
+  }
+
+  @Test
+  fun whenPersistedQueries_thenSentByHash() {
+    // given
+
+    server.enqueue(multipartResponse())
+
+    // when
+
+    val observer = serviceOf(GraphQLCallAdapterFactory.createWithPersistedQueries())
+      .observable(request)
+      .test()
+
+    // then
+
+    observer.assertValueCount(3)
+    val body = server.takeRequest().body.readUtf8()
+    assertThat(body)
+      .contains("persistedQuery")
+      .doesNotContain("query {")
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun serviceOf(factory: GraphQLCallAdapterFactory) =
+    Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(factory)
+      .build()
+      .create(Service::class.java)
+
+  private fun multipartResponse() =
+    MockResponse()
+      .setHeader("Content-Type", "multipart/mixed; boundary=\"-\"; deferSpec=20220824")
+      .setBody(
+        listOf(
+          """{"data":{"search":{"id":"1","alternatives":[1]}},"hasNext":true}""",
+          """{"incremental":[{"data":{"price":5},"path":["search"]}],"hasNext":true}""",
+          """{"incremental":[{"items":[2,3],"path":["search","alternatives",1]}],"hasNext":false}"""
+        )
+          .joinToString(separator = "", prefix = "\r\n", postfix = "-----\r\n") {
+            "---\r\nContent-Type: application/json\r\n\r\n$it\r\n"
+          }
+      )
+
+  // endregion Private Methods
+}
@@ -0,0 +1,322 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.cache.*
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+class NormalizedCacheTest {
+
+  // region Private Types
+
+  private companion object {
+
+    private const val FLIGHTS_BODY =
+      """{ "data": { "flights": [ """ +
+        """{ "__typename": "Flight", "id": "1", "price": 10 }, """ +
+        """{ "__typename": "Flight", "id": "2", "price": 20 } """ +
+        """] } }"""
+
+    private const val ERRORS_BODY = """{ "data": null, "errors": [ "Failed" ] }"""
+  }
+
+  data class Flights(
+    val flights: List<Flight>
+  )
+
+  data class FlightDetail(
+    val flight: Flight
+  )
+
+  data class Flight(
+    val __typename: String,
+    val id: String,
+    val price: Int
+  )
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun flights(@Body builder: RequestBuilder): Single<Flights>
+
+    @GraphQL
+    @POST("/")
+    fun flight(@Body builder: RequestBuilder): Single<FlightDetail>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val cache = NormalizedCache()
+
+  private lateinit var service: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    val retrofit = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.createWithNormalizedCache(cache))
+      .build()
+    service = retrofit.create(Service::class.java)
+  }
+
+  @Test
+  fun whenQueryCached_thenAnsweredWithoutRequest() {
+    // given
+
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+    val expected = service.flights(flightsQuery("PRG"))
+      .blockingGet()
+
+    // when
+
+    val flights = service.flights(flightsQuery("PRG"))
+      .blockingGet()
+
+    // then
+
+    assertThat(flights)
+      .isEqualTo(expected)
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+  }
+
+  @Test
+  fun whenArgumentsDiffer_thenRequestSent() {
+    // given
+
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+    service.flights(flightsQuery("PRG"))
+      .blockingGet()
+
+    // when
+
+    service.flights(flightsQuery("VIE"))
+      .blockingGet()
+
+    // then
+
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+  }
+
+  @Test
+  fun whenEntityUpdated_thenOtherQueriesSeeUpdate() {
+    // given
+
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+    server.enqueue(
+      MockResponse().setBody(
+        """{ "data": { "flight": { "__typename": "Flight", "id": "1", "price": 99 } } }"""
+      )
+    )
+    service.flights(flightsQuery("PRG"))
+      .blockingGet()
+    service.flight(flightQuery("1"))
+      .blockingGet()
+
+    // when
+
+    val flights = service.flights(flightsQuery("PRG"))
+      .blockingGet()
+
+    // then
+
+    assertThat(flights.flights.map { it.price })
+      .containsExactly(99, 20)
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+  }
+
+  @Test
+  fun whenQueriesSelectTypename_thenShareRecords() {
+    // given
+
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+    server.enqueue(
+      MockResponse().setBody(
+        """{ "data": { "flight": { "__typename": "Flight", "id": "1", "price": 99 } } }"""
+      )
+    )
+
+    // @formatter:off
+    val flights = RequestBuilder()
+      .operation()
+        .objectField("flights")
+          .arguments()
+            .argument("flyFrom", "PRG")
+            .finish()
+          .field("__typename")
+          .field("id")
+          .field("price")
+          .finish()
+        .finish()
+    val flight = RequestBuilder()
+      .operation()
+        .objectField("flight")
+          .arguments()
+            .argument("id", "1")
+            .finish()
+          .field("__typename")
+          .field("id")
+          .field("price")
+          .finish()
+        .finish()
+    // @formatter:on
+
+    // when
+
+    service.flights(flights)
+      .blockingGet()
+    service.flight(flight)
+      .blockingGet()
+
+    // then
+
+    val fields = CacheField.of(flights.operation().selectionSet())
+    assertThat(cache.read(fields)!!["flights"].asJsonArray[0].asJsonObject["price"].asInt)
+      .isEqualTo(99)
+    assertThat(cache.size)
+      .isEqualTo(3)
+  }
+
+  @Test
+  fun whenResponseHasErrors_thenNotCached() {
+    // given
+
+    server.enqueue(MockResponse().setBody(ERRORS_BODY))
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+    service.flights(flightsQuery("PRG"))
+      .onErrorReturnItem(Flights(listOf()))
+      .blockingGet()
+
+    // when
+
+    service.flights(flightsQuery("PRG"))
+      .blockingGet()
+
+    // then
+
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+    assertThat(cache.size)
+      .isEqualTo(3)
+  }
+
+  @Test
+  fun whenCombinedWithPersistedQueries_thenMissSentByHash() {
+    // given
+
+    server.enqueue(MockResponse().setBody(FLIGHTS_BODY))
+    // @formatter:off
+    val service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(
+        GraphQLCallAdapterFactory.create()
+          .withPersistedQueries()
+          .withNormalizedCache(cache)
+      )
+      .build()
+      .create(Service::class.java)
+    // @formatter:on
+    val expected = service.flights(flightsQuery("PRG"))
+      .blockingGet()
+
+    // when
+
+    val flights = service.flights(flightsQuery("PRG"))
+      .blockingGet()
+
+    // then
+
+    assertThat(flights)
+      .isEqualTo(expected)
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+    val body = JsonParser().parse(server.takeRequest().body.readUtf8()).asJsonObject
+    assertThat(body.has("query"))
+      .isFalse()
+    assertThat(body["extensions"].asJsonObject.has("persistedQuery"))
+      .isTrue()
+  }
+
+  @Test
+  fun whenMaxSizeExceeded_thenRecordsEvicted() {
+    // given
+
+    val cache = NormalizedCache(2)
+    val fields = CacheField.of(flightsQuery("PRG").operation().selectionSet())
+
+    // when
+
+    cache.write(
+      fields,
+      JsonParser().parse(FLIGHTS_BODY).asJsonObject["data"].asJsonObject
+    )
+
+    // then
+
+    assertThat(cache.size)
+      .isLessThanOrEqualTo(2)
+    assertThat(cache.read(fields))
+      .isNull()
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun flightsQuery(flyFrom: String) =
+    RequestBuilder()
+      .operation()
+      .objectField("flights")
+        .arguments()
+          .argument("flyFrom", flyFrom)
+          .finish()
+        .fieldsOf<Flight>()
+        .finish()
+      .finish()
+
+  private fun flightQuery(id: String) =
+    RequestBuilder()
+      .operation()
+      .objectField("flight")
+        .arguments()
+          .argument("id", id)
+          .finish()
+        .fieldsOf<Flight>()
+        .finish()
+      .finish()
+
+  // endregion Private Methods
+}
@@ -0,0 +1,250 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.common.hash.*
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.*
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+class PersistedQueryTest {
+
+  // region Private Types
+
+  private companion object {
+    private const val QUERY = "query { hello }"
+    private const val GRAPH_QL_BODY = """{ "data": "Hi" }"""
+    private const val NOT_FOUND_BODY =
+      """{ "errors": [ { "message": "PersistedQueryNotFound" } ] }"""
+    private const val NOT_FOUND_CODE_BODY =
+      """{ "errors": [ { "extensions": { "code": "PERSISTED_QUERY_NOT_FOUND" } } ] }"""
+
+    private val HASH = Hashing.sha256()
+      .hashString(QUERY, Charsets.UTF_8)
+      .toString()
+  }
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun observable(@Body request: Request): Observable<String>
+
+    @GraphQL
+    @POST("/")
+    fun flowable(@Body request: Request): Flowable<String>
+
+    @GraphQL
+    @POST("/")
+    fun single(@Body request: Request): Single<String>
+
+    @GraphQL
+    @POST("/")
+    fun maybe(@Body request: Request): Maybe<String>
+
+    @GraphQL
+    @POST("/")
+    fun completable(@Body builder: RequestBuilder): Completable
+  }
+
+  /**
+   * Server knowing only the queries it received once in full.
+   */
+  private class PersistedQueryDispatcher:
+    Dispatcher() {
+
+    // region Public Properties
+
+    val bodies = mutableListOf<JsonObject>()
+
+    val contentLengths = mutableListOf<Long?>()
+
+    val bodySizes = mutableListOf<Long>()
+
+    // endregion Public Properties
+
+    // region Private Properties
+
+    private val queries = mutableMapOf<String, String>()
+
+    // endregion Private Properties
+
+    // region Public Methods
+
+    override fun dispatch(request: RecordedRequest): MockResponse {
+      val body = JsonParser().parse(request.body.readUtf8()).asJsonObject
+      bodies.add(body)
+      contentLengths.add(request.getHeader("Content-Length")?.toLong())
+      bodySizes.add(request.bodySize)
+
+      val hash = body["extensions"].asJsonObject["persistedQuery"].asJsonObject["sha256Hash"]
+        .asString
+      val query = body["query"]?.asString
+      if (query != null) {
+        queries[hash] = query
+      }
+      return if (hash in queries) {
+        MockResponse().setBody(GRAPH_QL_BODY)
+      } else {
+        MockResponse().setBody(NOT_FOUND_BODY)
+      }
+    }
+
+    // endregion Public Methods
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val dispatcher = PersistedQueryDispatcher()
+
+  private val request = Request(QUERY, mapOf("first" to RawJson("10")))
+
+  private lateinit var service: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    server.dispatcher = dispatcher
+    val retrofit = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.createWithPersistedQueries())
+      .build()
+    service = retrofit.create(Service::class.java)
+  }
+
+  @Test
+  fun whenQueryUnknown_thenRetriedWithQuery() {
+    // when
+
+    val response = service.single(request)
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .isEqualTo("Hi")
+    assertThat(dispatcher.bodies)
+      .hasSize(2)
+    assertThat(dispatcher.bodies[0].has("query"))
+      .isFalse()
+    assertThat(dispatcher.bodies[0]["extensions"].toString())
+      .isEqualTo("""{"persistedQuery":{"version":1,"sha256Hash":"$HASH"}}""")
+    assertThat(dispatcher.bodies[0]["variables"].toString())
+      .isEqualTo("""{"first":10}""")
+    assertThat(dispatcher.bodies[1]["query"].asString)
+      .isEqualTo(QUERY)
+    assertThat(dispatcher.contentLengths)
+      .isEqualTo(dispatcher.bodySizes)
+  }
+
+  @Test
+  fun whenQueryKnown_thenOnlyHashSent() {
+    // given
+
+    service.single(request)
+      .blockingGet()
+
+    // when
+
+    val response = service.single(request)
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .isEqualTo("Hi")
+    assertThat(dispatcher.bodies)
+      .hasSize(3)
+    assertThat(dispatcher.bodies[2].has("query"))
+      .isFalse()
+  }
+
+  @Test
+  fun whenNotFoundCodeReturned_thenRetriedWithQuery() {
+    // given
+
+    server.dispatcher = QueueDispatcher()
+    server.enqueue(MockResponse().setBody(NOT_FOUND_CODE_BODY))
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+
+    // when
+
+    val response = service.single(request)
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .isEqualTo("Hi")
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+  }
+
+  @Test
+  fun whenDataMentionsNotFound_thenNotRetried() {
+    // given
+
+    server.dispatcher = QueueDispatcher()
+    server.enqueue(MockResponse().setBody("""{ "data": "PersistedQueryNotFound" }"""))
+
+    // when
+
+    val response = service.single(request)
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .isEqualTo("PersistedQueryNotFound")
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+  }
+
+  @Test
+  fun whenAnyRxTypeRequested_thenQueryPersisted() {
+    // when
+
+    val observable = service.observable(request)
+      .blockingFirst()
+    val flowable = service.flowable(request)
+      .blockingFirst()
+    val maybe = service.maybe(request)
+      .blockingGet()
+    service.completable(RequestBuilder().operation().field("hello").finish())
+      .blockingAwait()
+
+    // then
+
+    assertThat(listOf(observable, flowable, maybe))
+      .containsOnly("Hi")
+    assertThat(dispatcher.bodies.map { it.has("query") })
+      .containsExactly(false, true, false, false, false)
+  }
+
+  // endregion Public Methods
+}
@@ -4,6 +4,7 @@ import com.google.gson.*
 
 import com.kiwi.mobile.retrograph.annotation.*
 import com.kiwi.mobile.retrograph.annotation.Arguments
+import com.kiwi.mobile.retrograph.model.RawJson
 import com.kiwi.mobile.retrograph.model.Request
 import com.kiwi.mobile.retrograph.model.Response
 
@@ -131,7 +132,7 @@ class RealWorldTest {
     "}"
     // @formatter:on
 
-    val VARIABLES = mapOf<String, String>()
+    val VARIABLES = mapOf<String, RawJson>()
 
     val STRING_REQUEST = Request(QUERY, VARIABLES)
 
@@ -1,8 +1,13 @@
 package com.kiwi.mobile.retrograph
 
+import com.google.gson.*
+
 import com.kiwi.mobile.retrograph.annotation.*
 import com.kiwi.mobile.retrograph.model.*
 
+import graphql.language.*
+import graphql.parser.*
+
 import org.assertj.core.api.Assertions.*
 
 import org.junit.*
@@ -55,6 +60,49 @@ class RequestBuilderTest {
     }
   }
 
+  private data class FlightsArguments(
+    val get_flights: FlightsSourceArguments
+  ) {
+
+    data class FlightsSourceArguments(
+      val providers: List<Provider>,
+      val flyFrom: String,
+      val limit: Int?
+    )
+  }
+
+  private data class IgnoredNullsArguments(
+    val get_flights: IgnoredNullsSourceArguments
+  ) {
+
+    @IgnoreNulls
+    data class IgnoredNullsSourceArguments(
+      val flyFrom: String,
+      val limit: Int?
+    )
+  }
+
+  private data class LongArguments(
+    val get_flights: LongSourceArguments
+  ) {
+
+    data class LongSourceArguments(
+      val since: Long,
+
+      @field: Scalar("BigInt")
+      val ids: List<Long>
+    )
+  }
+
+  private data class Flights(
+    val get_flights: FlightsSource
+  ) {
+
+    data class FlightsSource(
+      val currency: String
+    )
+  }
+
   // endregion Private Types
 
   // region Public Methods
@@ -143,12 +191,211 @@ class RequestBuilderTest {
       .isEqualTo("query {  }")
     assertThat(request.variables)
       .contains(
-        entry("int", "123456"),
-        entry("long", "123456789123456789"),
-        entry("float", "2.5"),
-        entry("double", "33.3"),
-        entry("boolean", "true"),
-        entry("object", """{"first":"a","second":"b"}""")
+        entry("int", RawJson("123456")),
+        entry("long", RawJson("123456789123456789")),
+        entry("float", RawJson("2.5")),
+        entry("double", RawJson("33.3")),
+        entry("boolean", RawJson("true")),
+        entry("object", RawJson("""{"first":"a","second":"b"}"""))
+      )
+  }
+
+  @Test
+  fun whenVariablesSerializedByGson_thenNotEncodedTwice() {
+    val request = RequestBuilder()
+      .variable("object", Pair("a", 1))
+      .build()
+
+    assertThat(Gson().toJson(request))
+      .isEqualTo("""{"query":"query {  }","variables":{"object":{"first":"a","second":1}}}""")
+  }
+
+  @Test
+  fun whenGsonProvided_thenVariablesSerializedWithIt() {
+    val gson = GsonBuilder()
+      .setFieldNamingPolicy(FieldNamingPolicy.UPPER_CAMEL_CASE)
+      .create()
+
+    val request = RequestBuilder(gson)
+      .variable("object", Pair("a", "b"))
+      .build()
+
+    assertThat(request.variables)
+      .containsExactly(entry("object", RawJson("""{"First":"a","Second":"b"}""")))
+  }
+
+  @Test
+  fun whenVariablesExtracted_thenQueryConstant() {
+    val requests = listOf("DEN", "PRG")
+      .map {
+        RequestBuilder()
+          .operation(Operation.Type.QUERY, "flights")
+          .fieldsOf<Flights>(
+            FlightsArguments(
+              FlightsArguments.FlightsSourceArguments(listOf(Provider.KIWI), it, null)
+            )
+          )
+          .finish()
+          .extractVariables()
+          .build()
+      }
+
+    assertThat(requests[0].query)
+      .isEqualTo(requests[1].query)
+      .isEqualTo(
+        // @formatter:off
+        "query flights(" +
+          "\$get_flights_providers: [Provider!]!, " +
+          "\$get_flights_flyFrom: String!, " +
+          "\$get_flights_limit: Int" +
+        ") { " +
+          "get_flights(" +
+            "providers: \$get_flights_providers, " +
+            "flyFrom: \$get_flights_flyFrom, " +
+            "limit: \$get_flights_limit" +
+          ") { " +
+            "currency " +
+          "} " +
+        "}"
+        // @formatter:on
+      )
+    assertThat(requests[0].variables)
+      .containsExactly(
+        entry("get_flights_providers", RawJson("""["KIWI"]""")),
+        entry("get_flights_flyFrom", RawJson("\"DEN\"")),
+        entry("get_flights_limit", RawJson("null"))
+      )
+    assertThat(requests[1].variables)
+      .contains(entry("get_flights_flyFrom", RawJson("\"PRG\"")))
+  }
+
+  @Test
+  fun whenIgnoredNullsExtracted_thenOnlyValuesOmitted() {
+    val request = RequestBuilder()
+      .operation(Operation.Type.QUERY, "flights")
+      .fieldsOf<Flights>(
+        IgnoredNullsArguments(IgnoredNullsArguments.IgnoredNullsSourceArguments("PRG", null))
+      )
+      .finish()
+      .extractVariables()
+      .build()
+
+    assertThat(request.query)
+      .isEqualTo(
+        // @formatter:off
+        "query flights(" +
+          "\$get_flights_flyFrom: String!, " +
+          "\$get_flights_limit: Int" +
+        ") { " +
+          "get_flights(" +
+            "flyFrom: \$get_flights_flyFrom, " +
+            "limit: \$get_flights_limit" +
+          ") { " +
+            "currency " +
+          "} " +
+        "}"
+        // @formatter:on
+      )
+    assertThat(request.variables)
+      .containsExactly(entry("get_flights_flyFrom", RawJson("\"PRG\"")))
+  }
+
+  @Test
+  fun whenIgnoredNullsNotExtracted_thenArgumentsOmitted() {
+    val request = RequestBuilder()
+      .operation(Operation.Type.QUERY, "flights")
+      .fieldsOf<Flights>(
+        IgnoredNullsArguments(IgnoredNullsArguments.IgnoredNullsSourceArguments("PRG", null))
+      )
+      .finish()
+      .build()
+
+    assertThat(request.query)
+      .isEqualTo("query flights { get_flights(flyFrom: \"PRG\") { currency } }")
+  }
+
+  @Test
+  fun whenLongVariablesExtracted_thenDeclaredAsCustomScalars() {
+    val request = RequestBuilder()
+      .operation(Operation.Type.QUERY, "flights")
+      .fieldsOf<Flights>(
+        LongArguments(LongArguments.LongSourceArguments(4_000_000_000L, listOf(1L, 2L)))
+      )
+      .finish()
+      .extractVariables()
+      .build()
+
+    assertThat(request.query)
+      .isEqualTo(
+        // @formatter:off
+        "query flights(" +
+          "\$get_flights_since: Long!, " +
+          "\$get_flights_ids: [BigInt!]!" +
+        ") { " +
+          "get_flights(" +
+            "since: \$get_flights_since, " +
+            "ids: \$get_flights_ids" +
+          ") { " +
+            "currency " +
+          "} " +
+        "}"
+        // @formatter:on
+      )
+    assertThat(request.variables)
+      .containsExactly(
+        entry("get_flights_since", RawJson("4000000000")),
+        entry("get_flights_ids", RawJson("[1,2]"))
+      )
+  }
+
+  @Test
+  fun whenVariablesExtractedFromBuilder_thenTypesInferred() {
+    // @formatter:off
+    val request = RequestBuilder()
+      .operation()
+        .objectField("search")
+          .arguments()
+            .argument("query", "kotlin")
+            .argument("after", null)
+            .listArgument("ids")
+              .values(1, 2)
+              .finish()
+            .objectArgument("page")
+              .value("limit", 5)
+              .finish()
+            .finish()
+          .field("id")
+            .finish()
+          .finish()
+        .finish()
+      .extractVariables()
+      .build()
+    // @formatter:on
+
+    assertThat(request.query)
+      .isEqualTo(
+        // @formatter:off
+        "query(" +
+          "\$search_query: String!, " +
+          "\$search_ids: [Int!]!, " +
+          "\$search_page_limit: Int!" +
+        ") { " +
+          "search(" +
+            "query: \$search_query, " +
+            "after: null, " +
+            "ids: \$search_ids, " +
+            "page: { limit: \$search_page_limit }" +
+          ") { " +
+            "id " +
+          "} " +
+        "}"
+        // @formatter:on
+      )
+    assertThat(request.variables)
+      .containsExactly(
+        entry("search_query", RawJson("\"kotlin\"")),
+        entry("search_ids", RawJson("[1,2]")),
+        entry("search_page_limit", RawJson("5"))
       )
   }
 
@@ -259,5 +506,83 @@ class RequestBuilderTest {
       )
   }
 
+  @Test
+  fun whenCompact_thenOptionalWhitespaceAndCommasOmitted() {
+    // when
+
+    val request = searchBuilder()
+      .compact()
+      .build()
+
+    // then
+
+    assertThat(request.query)
+      .isEqualTo(
+        "query search{search(query:\"a, \\\"b\\\"\\n\"limit:5 providers:[KIWI]" +
+          "filter:{price:10 direct:true}){id...on Flight{price}}}"
+      )
+  }
+
+  @Test
+  fun whenCompactAndPretty_thenSameDocumentParsed() {
+    // given
+
+    val parser = Parser()
+
+    // when
+
+    val pretty = searchBuilder()
+      .build()
+    val compact = searchBuilder()
+      .compact()
+      .build()
+    val compactVariables = searchBuilder()
+      .extractVariables()
+      .compact()
+      .build()
+    val prettyVariables = searchBuilder()
+      .extractVariables()
+      .build()
+
+    // then
+
+    assertThat(compact.query.length)
+      .isLessThan(pretty.query.length)
+    assertThat(AstPrinter.printAst(parser.parseDocument(compact.query)))
+      .isEqualTo(AstPrinter.printAst(parser.parseDocument(pretty.query)))
+    assertThat(AstPrinter.printAst(parser.parseDocument(compactVariables.query)))
+      .isEqualTo(AstPrinter.printAst(parser.parseDocument(prettyVariables.query)))
+  }
+
   // endregion Public Methods
+
+  // region Private Methods
+
+  private fun searchBuilder() =
+    // @formatter:off
+    RequestBuilder()
+      .operation(Operation.Type.QUERY, "search")
+        .objectField("search")
+          .arguments()
+            .argument("query", "a, \"b\"\n")
+            .argument("limit", 5)
+            .listArgument("providers")
+              .value(Provider.KIWI)
+              .finish()
+            .objectArgument("filter")
+              .value("price", 10)
+              .value("direct", true)
+              .finish()
+            .finish()
+          .field("id")
+            .finish()
+          .inlineFragment("Flight")
+            .field("price")
+              .finish()
+            .finish()
+          .finish()
+        .finish()
+    // @formatter:on
+
+  // endregion Private Methods
 }
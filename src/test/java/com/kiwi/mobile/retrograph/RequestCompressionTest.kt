@@ -0,0 +1,246 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.model.*
+
+import io.reactivex.*
+
+import okhttp3.mockwebserver.*
+
+import okio.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+class RequestCompressionTest {
+
+  // region Private Types
+
+  private companion object {
+    private const val GRAPH_QL_BODY = """{ "data": "Hi" }"""
+  }
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun builder(@Body builder: RequestBuilder): Single<String>
+
+    @GraphQL
+    @POST("/")
+    fun request(@Body request: Request): Single<String>
+
+    @GraphQL(compressRequests = false)
+    @POST("/")
+    fun uncompressed(@Body request: Request): Single<String>
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val compression = RequestCompression(minSize = 512)
+
+  private lateinit var service: Service
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(
+        GraphQLCallAdapterFactory.create()
+          .withRequestCompression(compression)
+      )
+      .build()
+      .create(Service::class.java)
+  }
+
+  @Test
+  fun whenStreamedBodyIsLarge_thenCompressed() {
+    // given
+
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+
+    // @formatter:off
+    val builder = RequestBuilder()
+      .operation()
+        .objectField("search")
+          .arguments()
+            .argument("query", "London Prague ".repeat(100))
+            .finish()
+          .field("id")
+            .finish()
+          .finish()
+        .finish()
+    // @formatter:on
+
+    // when
+
+    val response = service.builder(builder)
+      .blockingGet()
+
+    // then
+
+    assertThat(response)
+      .isEqualTo("Hi")
+
+    val recorded = server.takeRequest()
+    assertThat(recorded.getHeader("Content-Encoding"))
+      .isEqualTo("gzip")
+    assertThat(recorded.body.gunzip()["query"].asString)
+      .isEqualTo(builder.build().query)
+    assertThat(compression.compressedRequests)
+      .isEqualTo(1L)
+    assertThat(compression.compressedBytes)
+      .isEqualTo(recorded.bodySize)
+    assertThat(compression.compressionRatio)
+      .isLessThan(0.5)
+  }
+
+  @Test
+  fun whenChunkedBodyEstimatedLarge_thenCompressed() {
+    // given
+
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+    val service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create().withChunkedRequestBodies())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(
+        GraphQLCallAdapterFactory.create()
+          .withRequestCompression(compression)
+      )
+      .build()
+      .create(Service::class.java)
+
+    // @formatter:off
+    val builder = RequestBuilder()
+      .operation()
+        .objectField("search")
+          .arguments()
+            .argument("query", "London Prague ".repeat(100))
+            .finish()
+          .field("id")
+            .finish()
+          .finish()
+        .finish()
+    // @formatter:on
+
+    // when
+
+    service.builder(builder)
+      .blockingGet()
+
+    // then
+
+    val recorded = server.takeRequest()
+    assertThat(recorded.getHeader("Content-Encoding"))
+      .isEqualTo("gzip")
+    assertThat(recorded.getHeader("Transfer-Encoding"))
+      .isEqualTo("chunked")
+    assertThat(recorded.body.gunzip()["query"].asString)
+      .isEqualTo(builder.build().query)
+  }
+
+  @Test
+  fun whenBodyIsSmall_thenNotCompressed() {
+    // given
+
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+
+    // when
+
+    service.request(Request("query { hello }", mapOf()))
+      .blockingGet()
+
+    // then
+
+    assertThat(server.takeRequest().getHeader("Content-Encoding"))
+      .isNull()
+    assertThat(compression.compressedRequests)
+      .isZero()
+  }
+
+  @Test
+  fun whenCompressionDisabled_thenNotCompressed() {
+    // given
+
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+    val request = Request("query { ${"hello, ".repeat(200)} }", mapOf())
+
+    // when
+
+    service.uncompressed(request)
+      .blockingGet()
+
+    // then
+
+    val recorded = server.takeRequest()
+    assertThat(recorded.getHeader("Content-Encoding"))
+      .isNull()
+    assertThat(JsonParser().parse(recorded.body.readUtf8()).asJsonObject["query"].asString)
+      .isEqualTo(request.query)
+  }
+
+  @Test
+  fun whenHostExcluded_thenNotCompressed() {
+    // given
+
+    server.enqueue(MockResponse().setBody(GRAPH_QL_BODY))
+    val compression = RequestCompression(minSize = 512, excludedHosts = setOf(server.hostName))
+    val service = Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GraphQLConverterFactory.create())
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(
+        GraphQLCallAdapterFactory.create()
+          .withRequestCompression(compression)
+      )
+      .build()
+      .create(Service::class.java)
+
+    // when
+
+    service.request(Request("query { ${"hello, ".repeat(200)} }", mapOf()))
+      .blockingGet()
+
+    // then
+
+    assertThat(server.takeRequest().getHeader("Content-Encoding"))
+      .isNull()
+    assertThat(compression.compressedRequests)
+      .isZero()
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun Buffer.gunzip() =
+    GzipSource(this)
+      .buffer()
+      .readUtf8()
+      .let { JsonParser().parse(it).asJsonObject }
+
+  // endregion Private Methods
+}
@@ -0,0 +1,363 @@
+package com.kiwi.mobile.retrograph
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.annotation.*
+import com.kiwi.mobile.retrograph.exception.*
+import com.kiwi.mobile.retrograph.model.Request
+
+import io.reactivex.*
+
+import okhttp3.*
+
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+class SubscriptionTest {
+
+  // region Private Types
+
+  private companion object {
+    private const val TIMEOUT = 5L
+  }
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/")
+    fun observable(@Body request: Request): Observable<String>
+
+    @GraphQL
+    @POST("/")
+    fun flowable(@Body request: Request): Flowable<String>
+
+    @GraphQL
+    @POST("/")
+    fun authorized(
+      @Header("Authorization") authorization: String,
+      @Body request: Request
+    ): Observable<String>
+  }
+
+  /**
+   * Server side of `graphql-ws` sending two payloads to each started subscription and completing
+   * it if its query says so.
+   */
+  private class ServerListener(
+    private val failFirstStart: Boolean = false,
+    private val refuse: Boolean = false,
+    private val silent: Boolean = false
+  ):
+    WebSocketListener() {
+
+    val messages = LinkedBlockingQueue<String>()
+
+    val initPayloads = LinkedBlockingQueue<String>()
+
+    val connectionEvents = LinkedBlockingQueue<String>()
+
+    private var starts = 0
+
+    override fun onOpen(webSocket: WebSocket, response: okhttp3.Response) {
+      connectionEvents.add("open")
+    }
+
+    override fun onMessage(webSocket: WebSocket, text: String) {
+      val message = JsonParser().parse(text).asJsonObject
+      val type = message["type"].asString
+      val id = message["id"]?.asString
+      messages.add(type)
+
+      when (type) {
+        "connection_init" -> {
+          message["payload"]?.let { initPayloads.add(it.toString()) }
+          if (refuse) {
+            webSocket.send("""{"type":"connection_error","payload":{"message":"Refused"}}""")
+          } else {
+            webSocket.send("""{"type":"connection_ack"}""")
+          }
+        }
+        "start" -> {
+          if (failFirstStart && starts++ == 0) {
+            webSocket.cancel()
+            return
+          }
+
+          if (silent) {
+            return
+          }
+
+          val query = message["payload"].asJsonObject["query"].asString
+          webSocket.send("""{"id":"$id","type":"data","payload":{"data":"$id.1"}}""")
+          webSocket.send("""{"id":"$id","type":"data","payload":{"data":"$id.2"}}""")
+          if (query.contains("once")) {
+            webSocket.send("""{"id":"$id","type":"complete"}""")
+          }
+        }
+      }
+    }
+
+    override fun onClosing(webSocket: WebSocket, code: Int, reason: String) {
+      webSocket.close(code, null)
+      connectionEvents.add("closed")
+    }
+
+    override fun onFailure(webSocket: WebSocket, t: Throwable, response: okhttp3.Response?) {
+      connectionEvents.add("closed")
+    }
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val subscription = Request("subscription { ticks }", mapOf())
+
+  private lateinit var listener: ServerListener
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Test
+  fun whenSubscribed_thenPayloadsEmitted() {
+    // given
+
+    val service = serviceOf(ServerListener())
+
+    // when
+
+    val observer = service.observable(subscription)
+      .test()
+      .awaitCount(2)
+
+    // then
+
+    observer.assertValues("1.1", "1.2")
+    observer.assertNotComplete()
+  }
+
+  @Test
+  fun whenServerCompletes_thenCompleted() {
+    // given
+
+    val service = serviceOf(ServerListener())
+
+    // when
+
+    val observer = service.observable(Request("subscription { once }", mapOf()))
+      .test()
+      .apply { awaitTerminalEvent(TIMEOUT, TimeUnit.SECONDS) }
+
+    // then
+
+    observer.assertValues("1.1", "1.2")
+    observer.assertComplete()
+  }
+
+  @Test
+  fun whenSubscribedTwice_thenSocketShared() {
+    // given
+
+    val service = serviceOf(ServerListener())
+
+    // when
+
+    val observers = listOf(
+      service.observable(subscription).test(),
+      service.flowable(subscription).test()
+    )
+
+    // then
+
+    observers[0].awaitCount(2)
+    observers[1].awaitCount(2)
+    assertThat(observers.flatMap { it.values() })
+      .containsExactlyInAnyOrder("1.1", "1.2", "2.1", "2.2")
+    assertThat(server.requestCount)
+      .isEqualTo(1)
+  }
+
+  @Test
+  fun whenHeadersDiffer_thenSocketsSeparate() {
+    // given
+
+    val service = serviceOf(ServerListener())
+
+    // when
+
+    val observers = listOf("first", "second")
+      .map { service.authorized(it, subscription).test() }
+
+    // then
+
+    observers.forEach { it.awaitCount(2) }
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+    assertThat((1..2).map { server.takeRequest().getHeader("Authorization") })
+      .containsExactlyInAnyOrder("first", "second")
+  }
+
+  @Test
+  fun whenInitPayloadGiven_thenSentWithConnectionInit() {
+    // given
+
+    val service = serviceOf(ServerListener()) {
+      JsonObject().apply { addProperty("authToken", "secret") }
+    }
+
+    // when
+
+    service.observable(subscription)
+      .test()
+      .awaitCount(2)
+
+    // then
+
+    assertThat(listener.initPayloads.poll(TIMEOUT, TimeUnit.SECONDS))
+      .isEqualTo("""{"authToken":"secret"}""")
+  }
+
+  @Test
+  fun whenDisposed_thenStopped() {
+    // given
+
+    val service = serviceOf(ServerListener())
+    val observer = service.observable(subscription)
+      .test()
+      .awaitCount(2)
+
+    // when
+
+    observer.dispose()
+
+    // then
+
+    assertThat(nextMessages(4))
+      .containsExactly("connection_init", "start", "stop", "connection_terminate")
+  }
+
+  @Test
+  fun whenSocketFails_thenResubscribed() {
+    // given
+
+    val service = serviceOf(ServerListener(failFirstStart = true))
+
+    // when
+
+    val observer = service.observable(subscription)
+      .test()
+      .awaitCount(2)
+
+    // then
+
+    observer.assertValues("1.1", "1.2")
+    assertThat(server.requestCount)
+      .isEqualTo(2)
+  }
+
+  @Test
+  fun whenServerSilent_thenSocketClosedBeforeReconnection() {
+    // given
+
+    val service = serviceOf(ServerListener(silent = true), keepAliveTimeout = 200)
+
+    // when
+
+    val observer = service.observable(subscription)
+      .test()
+
+    // then
+
+    assertThat((1..3).map { listener.connectionEvents.poll(TIMEOUT, TimeUnit.SECONDS) })
+      .containsExactly("open", "closed", "open")
+    observer.dispose()
+  }
+
+  @Test
+  fun whenConnectionRefused_thenFailedWithoutReconnection() {
+    // given
+
+    val service = serviceOf(ServerListener(refuse = true))
+
+    // when
+
+    val observer = service.observable(subscription)
+      .test()
+
+    // then
+
+    observer.awaitTerminalEvent(TIMEOUT, TimeUnit.SECONDS)
+    observer.assertError { it is GraphQLException && it.errors == listOf("Refused") }
+    assertThat(nextMessages(1))
+      .containsExactly("connection_init")
+    assertThat(listener.messages.poll(500, TimeUnit.MILLISECONDS))
+      .isNull()
+  }
+
+  @Test
+  fun whenFlowableNotRequested_thenPayloadsBuffered() {
+    // given
+
+    val service = serviceOf(ServerListener())
+    val subscriber = service.flowable(subscription)
+      .test(0)
+    nextMessages(2)
+
+    // when
+
+    subscriber.request(2)
+
+    // then
+
+    subscriber.awaitCount(2)
+    subscriber.assertValues("1.1", "1.2")
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun serviceOf(
+    listener: ServerListener,
+    keepAliveTimeout: Long = 5000,
+    initPayload: () -> JsonObject? = { null }
+  ): Service {
+    this.listener = listener
+    repeat(2) {
+      server.enqueue(MockResponse().withWebSocketUpgrade(listener))
+    }
+
+    val transport = SubscriptionTransport(
+      OkHttpClient(), keepAliveTimeout, reconnectDelay = 100, unit = TimeUnit.MILLISECONDS,
+      initPayload = initPayload
+    )
+    return Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(GraphQLCallAdapterFactory.createWithSubscriptions(transport))
+      .build()
+      .create(Service::class.java)
+  }
+
+  private fun nextMessages(count: Int) =
+    (1..count).map { listener.messages.poll(TIMEOUT, TimeUnit.SECONDS) }
+
+  // endregion Private Methods
+}
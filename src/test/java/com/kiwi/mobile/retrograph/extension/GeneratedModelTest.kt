@@ -0,0 +1,192 @@
+package com.kiwi.mobile.retrograph.extension
+
+import com.kiwi.mobile.retrograph.*
+import com.kiwi.mobile.retrograph.annotation.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+class GeneratedModelTest {
+
+  // region Private Types
+
+  @GraphQLModel
+  data class Flights(
+    @field:Alias("get_flights")
+    val flights: List<Flight>,
+
+    val count: Int
+  ) {
+
+    data class Flight(
+      val id: String,
+      val price: Double?,
+      val isDirect: Boolean,
+
+      @field:InlineFragment
+      val carrier: Carrier?,
+
+      val tags: List<String?>
+    )
+
+    data class Carrier(
+      val name: String
+    )
+  }
+
+  @GraphQLModel
+  data class FlightsArguments(
+    val flights: FlightsSourceArguments
+  ) {
+
+    data class FlightsSourceArguments(
+      val flyFrom: String,
+      val limit: Int?
+    )
+  }
+
+  data class Stale(
+    val id: String
+  )
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val flights = Flights(
+    flights = listOf(
+      Flights.Flight(
+        id = "1",
+        price = 42.0,
+        isDirect = true,
+        carrier = Flights.Carrier("Kiwi"),
+        tags = listOf(null)
+      )
+    ),
+    count = 1
+  )
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Test
+  fun whenModelAnnotated_thenGeneratedModelUsed() {
+    // when
+
+    val descriptors = listOf(
+      Flights::class.java,
+      Flights.Flight::class.java,
+      Flights.Carrier::class.java,
+      FlightsArguments::class.java,
+      FlightsArguments.FlightsSourceArguments::class.java
+    )
+      .map { it.descriptor }
+
+    // then
+
+    assertThat(descriptors.map { it.isGenerated })
+      .containsOnly(true)
+  }
+
+  @Test
+  fun whenModelGenerated_thenFieldsSameAsReflective() {
+    listOf(
+      Flights::class.java to flights,
+      Flights.Flight::class.java to flights.flights[0],
+      FlightsArguments.FlightsSourceArguments::class.java
+        to FlightsArguments.FlightsSourceArguments("PRG", null)
+    )
+      .forEach { (type, instance) ->
+        // when
+
+        val generated = type.descriptor.fields
+        val reflective = ClassDescriptor(type).fields
+
+        // then
+
+        assertThat(generated.map { it.describe(instance) })
+          .isEqualTo(reflective.map { it.describe(instance) })
+      }
+  }
+
+  @Test
+  fun whenModelGenerated_thenQueryRendered() {
+    // when
+
+    val request = RequestBuilder()
+      .operation()
+      .fieldsOf<Flights>(FlightsArguments(FlightsArguments.FlightsSourceArguments("PRG", 5)))
+      .finish()
+      .build()
+
+    // then
+
+    assertThat(request.query)
+      .isEqualTo(
+        // @formatter:off
+        "query { " +
+          "flights: get_flights(flyFrom: \"PRG\", limit: 5) { " +
+            "id, " +
+            "price, " +
+            "isDirect, " +
+            "carrier { ... on Carrier { name } }, " +
+            "tags " +
+          "}, " +
+          "count " +
+        "}"
+        // @formatter:on
+      )
+  }
+
+  @Test
+  fun whenGeneratedModelBroken_thenReflectionUsed() {
+    // when
+
+    val descriptor = Stale::class.java.descriptor
+
+    // then
+
+    assertThat(descriptor.isGenerated)
+      .isFalse()
+    assertThat(descriptor.fields.map { it.name })
+      .containsExactly("id")
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun FieldDescriptor.describe(instance: Any) =
+    listOf(
+      name,
+      aliasOrName,
+      nameOrEmpty,
+      hasInlineFragment,
+      type,
+      componentType,
+      variableType,
+      get(instance)
+    )
+
+  // endregion Private Methods
+}
+
+/**
+ * Generated model of [GeneratedModelTest.Stale] which fails to initialize, like a stale output of
+ * a previous build.
+ */
+@Suppress("unused", "ClassName")
+class GeneratedModelTest_Stale_GraphQL {
+
+  // region Private Types
+
+  private companion object {
+    init {
+      throw IllegalStateException("Stale generated model.")
+    }
+  }
+
+  // endregion Private Types
+}
@@ -1,11 +1,44 @@
 package com.kiwi.mobile.retrograph.extension
 
+import com.kiwi.mobile.retrograph.annotation.*
+
 import org.assertj.core.api.Assertions.*
 
 import org.junit.*
 
 class ReflectionExtensionsTest {
 
+  // region Private Types
+
+  @Suppress("unused")
+  enum class Enum {
+    A
+  }
+
+  @Suppress("unused")
+  @IgnoreNulls
+  class Model(
+    val int: Int,
+    val enum: Enum,
+
+    @field:Alias("alias")
+    val string: String,
+
+    @field:InlineFragment
+    val list: List<Model>,
+
+    val array: Array<Enum>,
+    val `object`: Model?
+  ) {
+
+    @Transient
+    val transient = 0
+
+    val delegate by lazy { 0 }
+  }
+
+  // endregion Private Types
+
   @Test
   fun whenNonListType_thenIsListIsFalse() {
     assertThat(Boolean::class.java.isList)
@@ -68,4 +101,51 @@ class ReflectionExtensionsTest {
     assertThat(java.lang.Void::class.java.isPrimitiveOrWrapper)
       .isTrue()
   }
-}
\ No newline at end of file
+
+  @Test
+  fun whenDescriptorRequestedTwice_thenSameInstanceReturned() {
+    assertThat(Model::class.java.descriptor)
+      .isSameAs(Model::class.java.descriptor)
+    assertThat(Model::class.java.serializableFields)
+      .isSameAs(Model::class.java.serializableFields)
+  }
+
+  @Test
+  fun whenDescriptorCreated_thenFieldsDescribed() {
+    val descriptor = Model::class.java.descriptor
+
+    assertThat(descriptor.hasIgnoreNulls)
+      .isTrue()
+    assertThat(descriptor.fields.map { it.name })
+      .containsExactly("int", "enum", "string", "list", "array", "object")
+    assertThat(descriptor.fields.map { it.kind })
+      .containsExactly(
+        FieldDescriptor.Kind.PRIMITIVE,
+        FieldDescriptor.Kind.ENUM,
+        FieldDescriptor.Kind.PRIMITIVE,
+        FieldDescriptor.Kind.LIST,
+        FieldDescriptor.Kind.ARRAY,
+        FieldDescriptor.Kind.OBJECT
+      )
+
+    val string = descriptor.fieldsByName.getValue("string")
+    assertThat(string.aliasOrName)
+      .isEqualTo("alias")
+    assertThat(string.nameOrEmpty)
+      .isEqualTo("string")
+
+    val list = descriptor.fieldsByName.getValue("list")
+    assertThat(list.hasInlineFragment)
+      .isTrue()
+    assertThat(list.componentType)
+      .isEqualTo(Model::class.java)
+    assertThat(list.componentKind)
+      .isEqualTo(FieldDescriptor.Kind.OBJECT)
+
+    val array = descriptor.fieldsByName.getValue("array")
+    assertThat(array.componentType)
+      .isEqualTo(Enum::class.java)
+    assertThat(array.componentKind.isScalar)
+      .isTrue()
+  }
+}
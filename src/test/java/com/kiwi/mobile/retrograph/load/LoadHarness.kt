@@ -0,0 +1,128 @@
+package com.kiwi.mobile.retrograph.load
+
+import io.reactivex.*
+
+import org.HdrHistogram.*
+
+import java.util.concurrent.*
+import java.util.concurrent.atomic.*
+
+/**
+ * Open-loop load generator issuing calls at fixed [rate] per second for the [duration].
+ *
+ * Latencies are measured from the time each call was due to be issued, so a stalled caller does
+ * not hide the queueing delay of the calls behind it.
+ */
+internal class LoadHarness(
+  private val rate: Int,
+  private val duration: Long,
+  private val unit: TimeUnit
+) {
+
+  // region Public Types
+
+  /**
+   * Results of one [run].
+   */
+  class Report(
+    val name: String,
+    val calls: Long,
+    val errors: Long,
+    val elapsedNanos: Long,
+    val histogram: Histogram
+  ) {
+
+    val callsPerSecond
+      get() = calls * TimeUnit.SECONDS.toNanos(1).toDouble() / elapsedNanos
+
+    override fun toString() =
+      ("%s: %d calls, %d errors, %.1f calls/s, " +
+        "latency ms p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f")
+        .format(
+          name, calls, errors, callsPerSecond,
+          percentileMillis(50.0), percentileMillis(90.0), percentileMillis(99.0),
+          percentileMillis(99.9), histogram.maxValue / NANOS_PER_MILLI
+        )
+
+    private fun percentileMillis(percentile: Double) =
+      histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI
+  }
+
+  // endregion Public Types
+
+  // region Private Types
+
+  private companion object {
+    const val NANOS_PER_MILLI = 1_000_000.0
+    const val SIGNIFICANT_DIGITS = 3
+    const val DRAIN_TIMEOUT_SECONDS = 30L
+  }
+
+  // endregion Private Types
+
+  // region Public Methods
+
+  /**
+   * Subscribes to a [call] at each tick and waits until all the calls finish.
+   */
+  fun run(name: String, call: () -> Single<*>): Report {
+    val count = rate * unit.toSeconds(duration)
+    val period = TimeUnit.SECONDS.toNanos(1) / rate
+    val histogram = ConcurrentHistogram(SIGNIFICANT_DIGITS)
+    val errors = AtomicLong()
+    val finished = CountDownLatch(count.toInt())
+    val issued = AtomicLong()
+    val lastFinish = AtomicLong()
+    val ticker = Executors.newSingleThreadScheduledExecutor()
+    val start = System.nanoTime()
+
+    ticker.scheduleAtFixedRate(
+      Runnable {
+        val index = issued.getAndIncrement()
+        if (index >= count) {
+          ticker.shutdown()
+          return@Runnable
+        }
+
+        val due = start + index * period
+        call()
+          .subscribe(
+            { record(histogram, due, lastFinish, finished) },
+            {
+              errors.incrementAndGet()
+              record(histogram, due, lastFinish, finished)
+            }
+          )
+      },
+      0, period, TimeUnit.NANOSECONDS
+    )
+
+    try {
+      check(finished.await(unit.toSeconds(duration) + DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        "$name: ${finished.count} calls did not finish."
+      }
+    } finally {
+      ticker.shutdownNow()
+    }
+
+    return Report(name, count, errors.get(), lastFinish.get() - start, histogram)
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun record(
+    histogram: Histogram,
+    due: Long,
+    lastFinish: AtomicLong,
+    finished: CountDownLatch
+  ) {
+    val now = System.nanoTime()
+    histogram.recordValue(now - due)
+    lastFinish.accumulateAndGet(now) { last, current -> maxOf(last, current) }
+    finished.countDown()
+  }
+
+  // endregion Private Methods
+}
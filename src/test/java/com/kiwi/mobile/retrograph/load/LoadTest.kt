@@ -0,0 +1,194 @@
+package com.kiwi.mobile.retrograph.load
+
+import com.kiwi.mobile.retrograph.*
+import com.kiwi.mobile.retrograph.RealWorldTest.*
+import com.kiwi.mobile.retrograph.annotation.*
+
+import io.reactivex.*
+import io.reactivex.schedulers.*
+
+import okhttp3.*
+import okhttp3.mockwebserver.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import retrofit2.*
+import retrofit2.converter.gson.*
+import retrofit2.http.*
+
+import java.util.concurrent.*
+
+/**
+ * Throughput and latency of flight searches against a local stand-in server.
+ *
+ * Runs only with the `retrograph.load` system property, see the `loadTest` Gradle task. The
+ * arrival rate, duration, server latency, response size and concurrency are configurable by the
+ * `retrograph.load.*` properties.
+ */
+class LoadTest {
+
+  // region Private Types
+
+  private companion object {
+    val RATE = Integer.getInteger("retrograph.load.rate", 200)
+    val DURATION = Integer.getInteger("retrograph.load.duration", 10).toLong()
+    val LATENCY = Integer.getInteger("retrograph.load.latency", 20).toLong()
+    val FLIGHTS = Integer.getInteger("retrograph.load.flights", 50)
+    val CONCURRENCY = Integer.getInteger("retrograph.load.concurrency", 64)
+  }
+
+  internal interface Service {
+
+    @GraphQL
+    @POST("/graphql")
+    fun flights(@Body request: RequestBuilder): Single<GetFlights>
+  }
+
+  /**
+   * Serves flight search responses of [FLIGHTS] flights after [LATENCY] milliseconds.
+   */
+  private class FlightSearchDispatcher:
+    okhttp3.mockwebserver.Dispatcher() {
+
+    private val body = (1..FLIGHTS)
+      .joinToString(
+        prefix = """{ "data": { "get_flights": { "data": [ """,
+        postfix = """ ], "currency": "EUR", "morePending": false } } }"""
+      ) {
+        """{ "id": "$it", "bookingToken": "${"x".repeat(400)}", "flyFrom": "LHR", """ +
+          """"flyTo": "PRG", "cityFrom": "London", "cityTo": "Prague" }"""
+      }
+
+    override fun dispatch(request: RecordedRequest) =
+      MockResponse()
+        .setBody(body)
+        .setHeadersDelay(LATENCY, TimeUnit.MILLISECONDS)
+  }
+
+  // endregion Private Types
+
+  // region Public Properties
+
+  @get:Rule
+  val server = MockWebServer()
+
+  // endregion Public Properties
+
+  // region Private Properties
+
+  private val harness = LoadHarness(RATE, DURATION, TimeUnit.SECONDS)
+
+  private val arguments = GetFlightsArguments()
+
+  private lateinit var client: OkHttpClient
+
+  private lateinit var pool: ExecutorService
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Before
+  fun setUp() {
+    Assume.assumeTrue(java.lang.Boolean.getBoolean("retrograph.load"))
+
+    server.dispatcher = FlightSearchDispatcher()
+    client = OkHttpClient.Builder()
+      .dispatcher(
+        okhttp3.Dispatcher().apply {
+          maxRequests = CONCURRENCY
+          maxRequestsPerHost = CONCURRENCY
+        }
+      )
+      .connectionPool(ConnectionPool(CONCURRENCY, 5, TimeUnit.MINUTES))
+      .build()
+    pool = Executors.newFixedThreadPool(CONCURRENCY)
+  }
+
+  @After
+  fun tearDown() {
+    if (::pool.isInitialized) {
+      pool.shutdownNow()
+      client.dispatcher.executorService.shutdown()
+      client.connectionPool.evictAll()
+    }
+  }
+
+  @Test
+  fun sync() {
+    // given
+
+    val service = serviceOf(GraphQLCallAdapterFactory.create())
+    val scheduler = Schedulers.from(pool)
+
+    // when
+
+    val report = harness.run("sync") {
+      service.flights(request())
+        .subscribeOn(scheduler)
+    }
+
+    // then
+
+    assertReport(report)
+  }
+
+  @Test
+  fun async() {
+    // given
+
+    val service = serviceOf(GraphQLCallAdapterFactory.createAsync())
+
+    // when
+
+    val report = harness.run("async") { service.flights(request()) }
+
+    // then
+
+    assertReport(report)
+  }
+
+  @Test
+  fun scheduler() {
+    // given
+
+    val service = serviceOf(GraphQLCallAdapterFactory.createWithScheduler(Schedulers.from(pool)))
+
+    // when
+
+    val report = harness.run("scheduler") { service.flights(request()) }
+
+    // then
+
+    assertReport(report)
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun serviceOf(factory: GraphQLCallAdapterFactory) =
+    Retrofit.Builder()
+      .baseUrl(server.url("/"))
+      .client(client)
+      .addConverterFactory(GsonConverterFactory.create())
+      .addCallAdapterFactory(factory)
+      .build()
+      .create(Service::class.java)
+
+  private fun request() =
+    RequestBuilder()
+      .operation()
+      .fieldsOf(GetFlights::class, arguments)
+      .finish()
+
+  private fun assertReport(report: LoadHarness.Report) {
+    println(report)
+    assertThat(report.errors)
+      .isZero()
+  }
+
+  // endregion Private Methods
+}
@@ -152,6 +152,72 @@ class FieldTest {
       .isEqualTo("alias: test")
   }
 
+  @Test
+  fun whenStreamed_thenSerialized() {
+    // given
+
+    val field = Field(mockParent, "test")
+      .stream(2, "label")
+    field.field("id")
+
+    // when
+
+    val serialized = field.toString()
+
+    // then
+
+    assertThat(serialized)
+      .isEqualTo("test @stream(initialCount: 2, label: \"label\") { id }")
+  }
+
+  @Test
+  fun whenLabelHasQuotes_thenEscaped() {
+    // given
+
+    val field = Field(mockParent, "test")
+      .stream(label = "\"bags\"")
+    field.field("id")
+
+    // when
+
+    val serialized = field.toString()
+
+    // then
+
+    assertThat(serialized)
+      .isEqualTo("test @stream(initialCount: 0, label: \"\\\"bags\\\"\") { id }")
+  }
+
+  @Test
+  fun whenDeferred_thenSerialized() {
+    // given
+
+    val field = Field(mockParent, "test")
+    field.field("id")
+    field.deferred()
+      .field("price")
+    field.inlineFragment("Flight")
+      .defer("bags")
+      .field("bags")
+
+    // when
+
+    val serialized = field.toString()
+
+    // then
+
+    assertThat(serialized)
+      .isEqualTo(
+        "test { id, ... @defer { price }, ... on Flight @defer(label: \"bags\") { bags } }"
+      )
+  }
+
+  @Test(expected = IllegalArgumentException::class)
+  fun whenFieldDeferred_thenExceptionThrown() {
+    Field(mockParent, "test")
+      .defer()
+  }
+
   @Test
   fun whenFinished_thenReturnsParent() {
     // given
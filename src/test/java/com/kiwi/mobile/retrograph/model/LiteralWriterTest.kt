@@ -0,0 +1,74 @@
+package com.kiwi.mobile.retrograph.model
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import java.io.*
+
+class LiteralWriterTest {
+
+  // region Private Types
+
+  enum class Provider {
+    KIWI
+  }
+
+  // endregion Private Types
+
+  // region Public Methods
+
+  @Test
+  fun whenStringHasSpecialCharacters_thenEscaped() {
+    // given
+
+    val output = StringBuilder()
+
+    // when
+
+    LiteralWriter.write(output, "\"Praha\"\n\\\t\u0001")
+
+    // then
+
+    assertThat(output.toString())
+      .isEqualTo("\"\\\"Praha\\\"\\n\\\\\\t\\u0001\"")
+  }
+
+  @Test
+  fun whenStringIsPlain_thenQuoted() {
+    // given
+
+    val output = StringBuilder()
+
+    // when
+
+    LiteralWriter.write(output, "London")
+
+    // then
+
+    assertThat(output.toString())
+      .isEqualTo("\"London\"")
+  }
+
+  @Test
+  fun whenScalarsWrittenToWriter_thenWrittenAsLiterals() {
+    // given
+
+    val output = StringWriter()
+
+    // when
+
+    listOf(0, -42, Long.MIN_VALUE, 1.5, true, null, Provider.KIWI)
+      .forEach {
+        LiteralWriter.write(output, it)
+        output.append(' ')
+      }
+
+    // then
+
+    assertThat(output.toString())
+      .isEqualTo("0 -42 -9223372036854775808 1.5 true null KIWI ")
+  }
+
+  // endregion Public Methods
+}
@@ -0,0 +1,162 @@
+package com.kiwi.mobile.retrograph.model
+
+import com.google.gson.*
+
+import com.kiwi.mobile.retrograph.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+class OperationMergerTest {
+
+  // region Private Types
+
+  data class User(
+    val name: String
+  )
+
+  // endregion Private Types
+
+  // region Public Methods
+
+  @Test
+  fun whenRootFieldsConflict_thenAliasesGenerated() {
+    // given
+
+    val operations = listOf(flightsOperation("PRG"), flightsOperation("VIE"))
+
+    // when
+
+    val request = OperationMerger(operations)
+      .build()
+
+    // then
+
+    assertThat(request.query)
+      .isEqualTo(
+        // @formatter:off
+        "query { " +
+          "q0: get_flights(flyFrom: \"PRG\") { id }, " +
+          "q1: get_flights(flyFrom: \"VIE\") { id } " +
+        "}"
+        // @formatter:on
+      )
+  }
+
+  @Test
+  fun whenRootFieldsDistinct_thenKeptAsTheyAre() {
+    // given
+
+    val operations = listOf(
+      flightsOperation("PRG"),
+      RequestBuilder()
+        .operation()
+        .fieldsOf<User>()
+    )
+
+    // when
+
+    val request = OperationMerger(operations)
+      .build()
+
+    // then
+
+    assertThat(request.query)
+      .isEqualTo("query { get_flights(flyFrom: \"PRG\") { id }, name }")
+  }
+
+  @Test
+  fun whenResponseSplit_thenOriginalKeysRestored() {
+    // given
+
+    val merger = OperationMerger(
+      listOf(flightsOperation("PRG"), flightsOperation("VIE"), userOperation())
+    )
+    val data = JsonParser()
+      .parse("""{ "q0": { "id": "1" }, "q1": { "id": "2" }, "user": { "name": "Kiwi" } }""")
+      .asJsonObject
+
+    // when
+
+    val results = merger.split(data)
+
+    // then
+
+    assertThat(results.map { it.toString() })
+      .containsExactly(
+        """{"get_flights":{"id":"1"}}""",
+        """{"get_flights":{"id":"2"}}""",
+        """{"user":{"name":"Kiwi"}}"""
+      )
+    assertThat(listOf("q0", "q1", "user", "unknown").map { merger.operationIndexOf(it) })
+      .containsExactly(0, 1, 2, -1)
+  }
+
+  @Test
+  fun whenOperationsHaveVariables_thenVariablesMerged() {
+    // given
+
+    val operations = listOf(
+      flightsOperation("PRG", RequestBuilder().variable("currency", "EUR")),
+      userOperation(RequestBuilder().variable("currency", "EUR").variable("id", 1))
+    )
+
+    // when
+
+    val request = OperationMerger(operations)
+      .build()
+
+    // then
+
+    assertThat(request.variables)
+      .containsOnly(entry("currency", RawJson("\"EUR\"")), entry("id", RawJson("1")))
+  }
+
+  @Test(expected = IllegalArgumentException::class)
+  fun whenVariablesConflict_thenExceptionThrown() {
+    OperationMerger(
+      listOf(
+        flightsOperation("PRG", RequestBuilder().variable("currency", "EUR")),
+        userOperation(RequestBuilder().variable("currency", "CZK"))
+      )
+    )
+  }
+
+  @Test(expected = IllegalArgumentException::class)
+  fun whenOperationTypesDiffer_thenExceptionThrown() {
+    OperationMerger(
+      listOf(
+        flightsOperation("PRG"),
+        RequestBuilder()
+          .operation(Operation.Type.MUTATION)
+          .field("logout")
+      )
+    )
+  }
+
+  // endregion Public Methods
+
+  // region Private Methods
+
+  private fun flightsOperation(flyFrom: String, builder: RequestBuilder = RequestBuilder()) =
+    builder
+      .operation()
+      .objectField("get_flights")
+        .arguments()
+          .argument("flyFrom", flyFrom)
+          .finish()
+        .field("id")
+          .finish()
+        .finish()
+
+  private fun userOperation(builder: RequestBuilder = RequestBuilder()) =
+    builder
+      .operation()
+      .objectField("user")
+        .field("name")
+          .finish()
+        .finish()
+
+  // endregion Private Methods
+}
@@ -766,6 +766,29 @@ class OperationTest {
       )
   }
 
+  @Test
+  fun whenFieldsOfIsExtended_thenSerialized() {
+    // given
+
+    // @formatter:off
+    val operation = Operation(mockParent)
+      .objectField("a")
+        .fieldsOf<Foo>()
+        .field("b")
+          .finish()
+        .finish()
+    // @formatter:on
+
+    // when
+
+    val serialized = operation.toString()
+
+    // then
+
+    assertThat(serialized)
+      .isEqualTo("query { a { name, b } }")
+  }
+
   @Test
   fun whenFinished_thenReturnsParent() {
     // given
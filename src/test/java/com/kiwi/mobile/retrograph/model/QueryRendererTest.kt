@@ -0,0 +1,104 @@
+package com.kiwi.mobile.retrograph.model
+
+import com.kiwi.mobile.retrograph.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import java.io.*
+
+class QueryRendererTest {
+
+  // region Private Types
+
+  @Suppress("unused")
+  enum class Provider {
+    KIWI
+  }
+
+  @Suppress("unused")
+  class Flights(
+    val data: List<Flight>,
+    val currency: String
+  ) {
+
+    class Flight(
+      val id: String,
+      val price: Int
+    )
+  }
+
+  @Suppress("unused")
+  class FlightsArguments(
+    val providers: List<Provider> = listOf(Provider.KIWI),
+    val parameters: Parameters = Parameters()
+  ) {
+
+    class Parameters(
+      val flyFrom: String = "DEN",
+      val limit: Int = 5
+    )
+  }
+
+  // endregion Private Types
+
+  // region Private Properties
+
+  private val document = Document(RequestBuilder())
+
+  // endregion Private Properties
+
+  // region Public Methods
+
+  @Test
+  fun whenRenderedIntoAppendable_thenSameAsToString() {
+    // given
+
+    val operation = Operation(document, Operation.Type.QUERY, "flights")
+      .objectField("get_flights")
+      .fieldsOf<Flights>()
+      .argumentsOf(FlightsArguments())
+      .finish()
+    val writer = StringWriter()
+
+    // when
+
+    operation.accept(QueryRenderer(writer))
+
+    // then
+
+    assertThat(writer.toString())
+      .isEqualTo(operation.toString())
+      .isEqualTo(
+        // @formatter:off
+        "query flights { " +
+          "get_flights(providers: [ KIWI ], parameters: { flyFrom: \"DEN\", limit: 5 }) { " +
+            "data { id, price }, " +
+            "currency " +
+          "} " +
+        "}"
+        // @formatter:on
+      )
+  }
+
+  @Test
+  fun whenRenderedWithEstimate_thenWholeTreeRendered() {
+    // given
+
+    val operation = Operation(document)
+      .fieldsOf<Flights>()
+      .field("total")
+
+    // when
+
+    val rendered = QueryRenderer.render(operation::accept)
+
+    // then
+
+    assertThat(rendered)
+      .isEqualTo("query { data { id, price }, currency, total }")
+  }
+
+  // endregion Public Methods
+}
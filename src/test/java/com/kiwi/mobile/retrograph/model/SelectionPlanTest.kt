@@ -0,0 +1,109 @@
+package com.kiwi.mobile.retrograph.model
+
+import com.kiwi.mobile.retrograph.annotation.*
+
+import org.assertj.core.api.Assertions.*
+
+import org.junit.*
+
+import java.util.concurrent.*
+
+class SelectionPlanTest {
+
+  // region Private Types
+
+  @Suppress("unused")
+  class Foo(
+    val name: String,
+
+    @field:Alias("other_name")
+    val otherName: String
+  )
+
+  @Suppress("unused")
+  class Bar(
+    val foo: Foo,
+
+    @field:InlineFragment
+    val fragments: List<Foo>,
+
+    val ids: List<Int>
+  )
+
+  @Suppress("unused")
+  class Recursive(
+    val id: Int,
+    val parent: Recursive?
+  )
+
+  // endregion Private Types
+
+  // region Public Methods
+
+  @Test
+  fun whenPlanRequestedTwice_thenSameInstanceReturned() {
+    // when
+
+    val first = SelectionPlan.of(Bar::class.java)
+    val second = SelectionPlan.of(Bar::class.java)
+
+    // then
+
+    assertThat(first)
+      .isSameAs(second)
+  }
+
+  @Test
+  fun whenPlanRequestedConcurrently_thenSameTextReturned() {
+    // given
+
+    val executor = Executors.newFixedThreadPool(4)
+
+    // when
+
+    val texts = (1..16)
+      .map { executor.submit(Callable { SelectionPlan.of(Bar::class.java).text }) }
+      .map { it.get() }
+    executor.shutdown()
+
+    // then
+
+    assertThat(texts)
+      .containsOnly(
+        "foo { name, otherName: other_name }, " +
+          "fragments { ... on Foo { name, otherName: other_name } }, ids"
+      )
+  }
+
+  @Test
+  fun whenPlanCompiled_thenFieldsResolved() {
+    // when
+
+    val plan = SelectionPlan.of(Bar::class.java)
+
+    // then
+
+    assertThat(plan.fields.map { it.kind })
+      .containsExactly(
+        SelectionPlan.Kind.OBJECT,
+        SelectionPlan.Kind.INLINE_FRAGMENT,
+        SelectionPlan.Kind.PRIMITIVE
+      )
+    assertThat(plan.fields.map { it.type })
+      .containsExactly(Foo::class.java, Foo::class.java, Integer::class.java)
+  }
+
+  @Test
+  fun whenRecursiveModel_thenPlanCompiled() {
+    // when
+
+    val plan = SelectionPlan.of(Recursive::class.java)
+
+    // then
+
+    assertThat(plan.fields[1].plan)
+      .isSameAs(plan)
+  }
+
+  // endregion Public Methods
+}